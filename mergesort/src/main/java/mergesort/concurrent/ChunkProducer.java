@@ -0,0 +1,123 @@
+package mergesort.concurrent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import mergesort.concurrent.sort.LineChunk;
+
+/**
+ * Reads source stream sequentially once and cuts it into chunks on line
+ * boundaries. Every chunk is placed into a heap buffer which is handed to
+ * sink (sort task of {@link SplitterSorter}) as soon as it is read. Sink
+ * chooses length of every buffer before it is allocated, so it may block the
+ * producer until there is memory for the next chunk or shrink the chunk.
+ * Stream can be a pipe (stdin), its length is not needed.
+ *
+ * @version 0.4
+ */
+public class ChunkProducer {
+
+    /**
+     * Receiver of chunks.
+     */
+    public interface ChunkSink {
+
+        /**
+         * Is called before buffer of every chunk is allocated, the next
+         * call is after the chunk is accepted.
+         *
+         * @param chunkLength
+         *            - length of chunk of producer
+         * @return length of the next chunk, not less than 1
+         */
+        default long nextChunkLength(long chunkLength)
+                throws InterruptedException {
+            return chunkLength;
+        }
+
+        void accept(ByteBuffer chunk) throws InterruptedException;
+    }
+
+    private final InputStream in;
+
+    private final long chunkLength;
+
+    private final ChunkSink sink;
+
+    public ChunkProducer(InputStream in, long chunkLength, ChunkSink sink) {
+        if (chunkLength < 1 || chunkLength > LineChunk.MAX_ARENA_LENGTH)
+            throw new IllegalArgumentException(
+                    "Wrong length of chunk: " + chunkLength);
+        this.in = in;
+        this.chunkLength = chunkLength;
+        this.sink = sink;
+    }
+
+    /**
+     * Reads stream and passes chunks to sink.
+     *
+     * @return number of chunks
+     */
+    public int produce() throws IOException, InterruptedException {
+        int numberOfChunks = 0;
+        byte[] buffer = new byte[nextBufferLength()];
+        int length = 0;
+        try (InputStream input = in) {
+            while (true) {
+                int readBytes = input.read(buffer, length,
+                        buffer.length - length);
+                if (readBytes == -1)
+                    break;
+                length += readBytes;
+                if (length < buffer.length)
+                    continue;
+
+                int cut = length;
+                while (cut > 0 && buffer[cut - 1] != '\n')
+                    cut--;
+                if (cut == 0) {
+                    /*
+                     * Line is longer than chunk.
+                     */
+                    buffer = Arrays.copyOf(buffer,
+                            (int) Math.min(LineChunk.MAX_ARENA_LENGTH,
+                                    2L * buffer.length));
+                    if (buffer.length == length)
+                        throw new IOException(
+                                "Line is longer than maximum chunk");
+                    continue;
+                }
+
+                /*
+                 * Sink only reads accepted bytes, the rest of line is copied
+                 * from the same buffer.
+                 */
+                sink.accept(ByteBuffer.wrap(buffer, 0, cut));
+                numberOfChunks++;
+                int rest = length - cut;
+                int nextLength = nextBufferLength();
+                if (rest > nextLength)
+                    nextLength = rest * 2;
+                byte[] nextBuffer = new byte[nextLength];
+                System.arraycopy(buffer, cut, nextBuffer, 0, rest);
+                buffer = nextBuffer;
+                length = rest;
+            }
+        }
+        if (length > 0 || numberOfChunks == 0) {
+            sink.accept(ByteBuffer.wrap(buffer, 0, length));
+            numberOfChunks++;
+        }
+        return numberOfChunks;
+    }
+
+    private int nextBufferLength() throws InterruptedException {
+        long length = sink.nextChunkLength(chunkLength);
+        if (length < 1 || length > LineChunk.MAX_ARENA_LENGTH)
+            throw new IllegalStateException(
+                    "Wrong length of chunk: " + length);
+        return (int) length;
+    }
+}
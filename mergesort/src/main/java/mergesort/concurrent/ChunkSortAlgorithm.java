@@ -0,0 +1,38 @@
+package mergesort.concurrent;
+
+/**
+ * Algorithm used by {@link SplitterSorter} to sort a chunk in memory.
+ * 
+ * STRING decodes every line into a {@link String} and sorts them with
+ * {@link java.util.Collections#sort(java.util.List)}. BYTES keeps the chunk as
+ * raw bytes in one arena and sorts the line offsets with an unsigned byte
+ * comparator, which gives UTF-8 code point order. RADIX keeps the chunk as
+ * BYTES does and sorts the line offsets with MSD radix sort, order is the
+ * same as for BYTES.
+ * 
+ * @version 0.4
+ */
+public enum ChunkSortAlgorithm {
+
+    STRING, BYTES, RADIX;
+
+    /**
+     * @return true if lines are sorted as raw bytes without decoding
+     */
+    public boolean isByteLevel() {
+        return this != STRING;
+    }
+
+    /**
+     * @param name
+     *            - name of algorithm from the command line (case insensitive)
+     * @return algorithm or null if name is unknown
+     */
+    public static ChunkSortAlgorithm fromName(String name) {
+        for (ChunkSortAlgorithm algorithm : values()) {
+            if (algorithm.name().equalsIgnoreCase(name))
+                return algorithm;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,34 @@
+package mergesort.concurrent;
+
+/**
+ * Way of loading chunks of source file by {@link SplitterSorter} for byte
+ * level sorting algorithms.
+ * 
+ * READ copies every chunk into heap array. MMAP maps every chunk into memory
+ * with {@link java.nio.channels.FileChannel#map}, lines are sorted directly in
+ * page cache without copying. SEQUENTIAL reads source once by
+ * {@link ChunkProducer} and hands chunk buffers to sorters, split points are
+ * not computed in advance and source can be a pipe. SEQUENTIAL can be used
+ * with all sorting algorithms. AUTO is resolved by {@link SortJob} when it
+ * starts: SEQUENTIAL for source on rotational disk and for standard input,
+ * where concurrent sorters would seek between far regions, READ otherwise.
+ * 
+ * @version 0.4
+ */
+public enum InputMode {
+
+    READ, MMAP, SEQUENTIAL, AUTO;
+
+    /**
+     * @param name
+     *            - name of mode from the command line (case insensitive)
+     * @return mode or null if name is unknown
+     */
+    public static InputMode fromName(String name) {
+        for (InputMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(name))
+                return mode;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,66 @@
+package mergesort.concurrent;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor which runs not more than limit tasks at the same time in the
+ * shared executor, other tasks wait in the queue. It allows to share one
+ * pool of -x threads between sorters (-p) and mergers (-r). Waiting tasks
+ * don't occupy threads of the pool.
+ *
+ * @version 0.4
+ */
+public class LimitedExecutor implements Executor {
+
+    private final Executor executor;
+
+    private final int limit;
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger running = new AtomicInteger(0);
+
+    public LimitedExecutor(Executor executor, int limit) {
+        if (limit < 1)
+            throw new IllegalArgumentException(
+                    "Limit should be greater than 0");
+        this.executor = executor;
+        this.limit = limit;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+        dispatch();
+    }
+
+    /*
+     * Takes a slot and starts the next task while there are free slots and
+     * waiting tasks.
+     */
+    private void dispatch() {
+        while (true) {
+            int current = running.get();
+            if (current >= limit || tasks.isEmpty())
+                return;
+            if (!running.compareAndSet(current, current + 1))
+                continue;
+            final Runnable task = tasks.poll();
+            if (task == null) {
+                running.decrementAndGet();
+                continue;
+            }
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    running.decrementAndGet();
+                    dispatch();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package mergesort.concurrent;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import mergesort.concurrent.io.DuplicateFilter;
+import mergesort.concurrent.io.LineCursor;
+import mergesort.concurrent.io.SharedPrefixCursor;
+import mergesort.concurrent.sort.UnsignedBytes;
+
+/**
+ * Tournament tree of losers for k-way merge of sorted cursors. Every internal
+ * node keeps the index of the cursor which lost the match in this node, root
+ * winner is kept separately. After the winner is written and advanced only
+ * matches on the path from its leaf to the root are replayed, so a line costs
+ * about log2(k) comparisons and no allocations. Lines are compared as
+ * unsigned bytes.
+ * 
+ * If all cursors are {@link SharedPrefixCursor}s (front coded runs), every
+ * node also keeps the length of the common prefix of its loser and the line
+ * which won in this node. A new line of the winner cursor knows its common
+ * prefix with the previous winner, so most matches are decided by comparing
+ * two prefix lengths and the rest compare bytes only after the known common
+ * prefix.
+ *
+ * @version 0.4
+ */
+public class LoserTree {
+
+    private final LineCursor[] cursors;
+
+    private final boolean[] exhausted;
+
+    /*
+     * tree[0] is the winner, tree[1..k-1] are losers of internal nodes. Leaf
+     * of cursor i is node k + i.
+     */
+    private final int[] tree;
+
+    /*
+     * lcp[node] is the length of the common prefix of the loser tree[node]
+     * and the winner of the node, null if cursors don't know shared prefixes.
+     */
+    private final int[] lcp;
+
+    /*
+     * Length of the common prefix of the winner and the line compared with
+     * it by the last call of match.
+     */
+    private int matchLcp;
+
+    public LoserTree(LineCursor[] cursors) throws IOException {
+        if (cursors.length == 0)
+            throw new IllegalArgumentException("There are no cursors");
+        this.cursors = cursors;
+        exhausted = new boolean[cursors.length];
+        tree = new int[cursors.length];
+        boolean sharedPrefixes = true;
+        for (int i = 0; i < cursors.length; i++) {
+            exhausted[i] = !cursors[i].next();
+            sharedPrefixes &= cursors[i] instanceof SharedPrefixCursor;
+        }
+        lcp = sharedPrefixes ? new int[cursors.length] : null;
+        tree[0] = build(1);
+    }
+
+    private int build(int node) {
+        int k = cursors.length;
+        if (node >= k)
+            return node - k;
+        int left = build(2 * node);
+        int right = build(2 * node + 1);
+        if (lcp != null) {
+            boolean rightWins = match(right, left, 0);
+            lcp[node] = matchLcp;
+            if (rightWins) {
+                tree[node] = left;
+                return right;
+            }
+            tree[node] = right;
+            return left;
+        }
+        if (less(right, left)) {
+            tree[node] = left;
+            return right;
+        }
+        tree[node] = right;
+        return left;
+    }
+
+    /*
+     * Compares lines of cursors i and j, first from bytes are known to be
+     * equal. Common prefix length is stored in matchLcp.
+     * 
+     * @return true if line of i is less than line of j
+     */
+    private boolean match(int i, int j, int from) {
+        if (exhausted[i] || exhausted[j]) {
+            matchLcp = 0;
+            return less(i, j);
+        }
+        LineCursor a = cursors[i];
+        LineCursor b = cursors[j];
+        int m = UnsignedBytes.mismatch(a.getBuffer(), a.getOffset(),
+                a.getLength(), b.getBuffer(), b.getOffset(), b.getLength(),
+                from);
+        matchLcp = m;
+        if (m == a.getLength())
+            return m < b.getLength();
+        if (m == b.getLength())
+            return false;
+        return (a.getBuffer()[a.getOffset() + m] & 0xFF) < (b.getBuffer()[b
+                .getOffset() + m] & 0xFF);
+    }
+
+    /*
+     * Exhausted cursors are greater than any line.
+     */
+    private boolean less(int i, int j) {
+        if (exhausted[i])
+            return false;
+        if (exhausted[j])
+            return true;
+        LineCursor a = cursors[i];
+        LineCursor b = cursors[j];
+        return UnsignedBytes.compare(a.getBuffer(), a.getOffset(),
+                a.getLength(), b.getBuffer(), b.getOffset(), b.getLength()) < 0;
+    }
+
+    /**
+     * @return true if winner has current line
+     */
+    public boolean hasNext() {
+        return !exhausted[tree[0]];
+    }
+
+    /**
+     * @return cursor which contains the least current line
+     */
+    public LineCursor peek() {
+        return cursors[tree[0]];
+    }
+
+    /**
+     * Advances the winner cursor and replays matches on its path to root.
+     */
+    public void advance() throws IOException {
+        if (lcp != null) {
+            advanceWithSharedPrefixes();
+            return;
+        }
+        int winner = tree[0];
+        exhausted[winner] = !cursors[winner].next();
+        for (int node = (winner + cursors.length) >>> 1; node > 0; node >>>= 1) {
+            if (less(tree[node], winner)) {
+                int loser = winner;
+                winner = tree[node];
+                tree[node] = loser;
+            }
+        }
+        tree[0] = winner;
+    }
+
+    /*
+     * Every loser on the path of the previous winner is not less than it and
+     * lcp of the node is their common prefix. The candidate is not less than
+     * the previous winner too and h is their common prefix. If h is greater
+     * than lcp of the node the candidate wins, if it is less the loser wins,
+     * bytes are compared only if they are equal.
+     */
+    private void advanceWithSharedPrefixes() throws IOException {
+        int winner = tree[0];
+        exhausted[winner] = !cursors[winner].next();
+        int h = exhausted[winner] ? 0
+                : ((SharedPrefixCursor) cursors[winner]).getSharedLength();
+        for (int node = (winner + cursors.length) >>> 1; node > 0; node >>>= 1) {
+            int loser = tree[node];
+            if (exhausted[loser])
+                continue;
+            if (exhausted[winner] || h < lcp[node]) {
+                tree[node] = winner;
+                int loserLcp = lcp[node];
+                lcp[node] = h;
+                winner = loser;
+                h = loserLcp;
+            } else if (h == lcp[node]) {
+                if (match(loser, winner, h)) {
+                    tree[node] = winner;
+                    winner = loser;
+                }
+                lcp[node] = matchLcp;
+            }
+        }
+        tree[0] = winner;
+    }
+
+    /**
+     * Writes all lines of all cursors in unsigned byte order. Every line is
+     * terminated by '\n'.
+     */
+    public void mergeTo(OutputStream out) throws IOException {
+        mergeTo(out, null);
+    }
+
+    /**
+     * Writes lines of all cursors in unsigned byte order and drops lines
+     * which are equal to the previous written line (-u).
+     *
+     * @param duplicates
+     *            - filter of equal lines, every line is written if it is
+     *            null
+     */
+    public void mergeTo(OutputStream out, DuplicateFilter duplicates)
+            throws IOException {
+        while (hasNext()) {
+            LineCursor cursor = peek();
+            if (duplicates == null || !duplicates.isDuplicate(
+                    cursor.getBuffer(), cursor.getOffset(),
+                    cursor.getLength())) {
+                out.write(cursor.getBuffer(), cursor.getOffset(),
+                        cursor.getLength());
+                out.write('\n');
+            }
+            advance();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package mergesort.concurrent;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Budget of heap memory which is shared by sort jobs. Sort tasks reserve
+ * memory for chunks, merge tasks reserve memory for input, output and
+ * read-ahead buffers. Request is granted when there is at least its minimum,
+ * it gets as much as possible up to preferred size. Requests are granted in
+ * order of arrival, so big request is not starved by small ones.
+ *
+ * Reservation is granted asynchronously, task waits for memory without a
+ * thread of pool. Owner of reservation resizes it to the real size of
+ * allocated memory when it is known, real size can exceed budget, then next
+ * requests wait until it is released.
+ *
+ * @version 0.4
+ */
+public class MemoryBroker {
+
+    private final long budget;
+
+    /*
+     * Reserved bytes, can be greater than budget after resize.
+     */
+    private long reserved;
+
+    private long peakReserved;
+
+    private int numberOfWaits;
+
+    private final Queue<Request> requests = new ArrayDeque<>();
+
+    public MemoryBroker(long budget) {
+        if (budget < 1)
+            throw new IllegalArgumentException(
+                    "Wrong memory budget: " + budget);
+        this.budget = budget;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    public synchronized long getReserved() {
+        return reserved;
+    }
+
+    /**
+     * @return maximum of reserved bytes since broker is created
+     */
+    public synchronized long getPeakReserved() {
+        return peakReserved;
+    }
+
+    /**
+     * @return number of requests which waited for memory
+     */
+    public synchronized int getNumberOfWaits() {
+        return numberOfWaits;
+    }
+
+    /**
+     * Reserves exactly bytes.
+     *
+     * @see #reserve(long, long)
+     */
+    public CompletableFuture<Reservation> reserve(long bytes) {
+        return reserve(bytes, bytes);
+    }
+
+    /**
+     * Reserves memory. Minimum which exceeds budget is decreased to budget,
+     * such request waits until all memory is released.
+     *
+     * @param minimum
+     *            - request is not granted with less bytes
+     * @param preferred
+     *            - request is not granted with more bytes
+     * @return future of reservation, it is completed by thread which
+     *         releases memory if there is not enough memory now
+     */
+    public CompletableFuture<Reservation> reserve(long minimum,
+            long preferred) {
+        if (minimum < 0 || preferred < minimum)
+            throw new IllegalArgumentException(
+                    "Wrong request: " + minimum + " " + preferred);
+        Request request = new Request(Math.min(minimum, budget),
+                Math.min(preferred, budget));
+        List<Request> granted;
+        synchronized (this) {
+            requests.add(request);
+            granted = grant();
+            if (request.reservation == null)
+                numberOfWaits++;
+        }
+        complete(granted);
+        return request.future;
+    }
+
+    /*
+     * Grants the first requests of queue while there is enough memory.
+     */
+    private List<Request> grant() {
+        List<Request> granted = new ArrayList<>();
+        Request request;
+        while ((request = requests.peek()) != null
+                && budget - reserved >= request.minimum) {
+            requests.poll();
+            long bytes = Math.min(request.preferred, budget - reserved);
+            add(bytes);
+            granted.add(request.grant(bytes));
+        }
+        return granted;
+    }
+
+    private void add(long bytes) {
+        reserved += bytes;
+        peakReserved = Math.max(peakReserved, reserved);
+    }
+
+    /*
+     * Futures are completed outside of lock, dependent tasks can reserve
+     * memory again.
+     */
+    private void complete(List<Request> granted) {
+        for (Request request : granted) {
+            request.future.complete(request.reservation);
+        }
+    }
+
+    private void resize(Reservation reservation, long bytes) {
+        List<Request> granted;
+        synchronized (this) {
+            add(bytes - reservation.bytes);
+            reservation.bytes = bytes;
+            granted = grant();
+        }
+        complete(granted);
+    }
+
+    private final class Request {
+
+        private final long minimum;
+
+        private final long preferred;
+
+        private final CompletableFuture<Reservation> future = new CompletableFuture<>();
+
+        private Reservation reservation;
+
+        private Request(long minimum, long preferred) {
+            this.minimum = minimum;
+            this.preferred = preferred;
+        }
+
+        private Request grant(long bytes) {
+            reservation = new Reservation(bytes);
+            return this;
+        }
+    }
+
+    /**
+     * Reserved memory. It should be closed when memory is freed.
+     */
+    public final class Reservation implements AutoCloseable {
+
+        private long bytes;
+
+        private Reservation(long bytes) {
+            this.bytes = bytes;
+        }
+
+        public long getBytes() {
+            synchronized (MemoryBroker.this) {
+                return bytes;
+            }
+        }
+
+        /**
+         * Changes size of reservation to the size of allocated memory. It
+         * does not wait: memory is already allocated.
+         */
+        public void resize(long bytes) {
+            if (bytes < 0)
+                throw new IllegalArgumentException(
+                        "Wrong size of reservation: " + bytes);
+            MemoryBroker.this.resize(this, bytes);
+        }
+
+        /**
+         * Releases memory, it can be called several times.
+         */
+        @Override
+        public void close() {
+            resize(0);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package mergesort.concurrent;
+
+/**
+ * Engine used by {@link Merger} for k-way merge of sorted chunks.
+ * 
+ * PRIORITY_QUEUE reads lines with {@link java.io.BufferedReader} and selects
+ * the least string with {@link java.util.PriorityQueue}. LOSER_TREE reads
+ * lines as bytes and selects the least one with {@link LoserTree}, lines are
+ * compared as unsigned bytes as in {@link ChunkSortAlgorithm#BYTES}. Engine
+ * should merge in the order of {@link ChunkSortAlgorithm} of chunks: runs
+ * sorted by bytes are not sorted as strings if there are characters out of
+ * Basic Multilingual Plane.
+ * 
+ * @version 0.4
+ */
+public enum MergeEngine {
+
+    PRIORITY_QUEUE, LOSER_TREE;
+
+    /**
+     * @param name
+     *            - name of engine from the command line (case insensitive,
+     *            without underscores)
+     * @return engine or null if name is unknown
+     */
+    public static MergeEngine fromName(String name) {
+        for (MergeEngine engine : values()) {
+            if (engine.name().replace("_", "").equalsIgnoreCase(name))
+                return engine;
+        }
+        return null;
+    }
+
+    /**
+     * @return true if lines are compared as raw bytes without decoding
+     */
+    public boolean isByteLevel() {
+        return this == LOSER_TREE;
+    }
+
+    public String getName() {
+        return name().replace("_", "").toLowerCase();
+    }
+}
@@ -0,0 +1,158 @@
+package mergesort.concurrent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Merge tree with the minimum total length of merged runs (optimal merge
+ * pattern, Huffman tree of degree c). Runs are merged by c at a time,
+ * shortest first. If the number of runs n doesn't give full merges, that is
+ * (n - 1) mod (c - 1) != 0, dummy runs of zero length are added, so the
+ * first merge takes less runs and every other merge takes c runs.
+ * 
+ * Nodes of the tree are numbered: runs are 0..n-1 in the given order, step
+ * i of the plan makes node n + i. Steps are ordered so that inputs of every
+ * step are made by preceding steps, the last step is the final merge.
+ * 
+ * @version 0.4
+ */
+public class MergePlan {
+
+    /**
+     * One merge of the plan.
+     */
+    public static final class Step {
+
+        private final int node;
+
+        private final int[] inputs;
+
+        private final long length;
+
+        Step(int node, int[] inputs, long length) {
+            this.node = node;
+            this.inputs = inputs;
+            this.length = length;
+        }
+
+        /**
+         * @return node which is made by this merge
+         */
+        public int getNode() {
+            return node;
+        }
+
+        /**
+         * @return nodes which are merged
+         */
+        public int[] getInputs() {
+            return inputs.clone();
+        }
+
+        /**
+         * @return planned length of the merged run
+         */
+        public long getLength() {
+            return length;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(node).append(" <- [");
+            for (int i = 0; i < inputs.length; i++) {
+                if (i > 0)
+                    sb.append(", ");
+                sb.append(inputs[i]);
+            }
+            return sb.append("] ").append(length).toString();
+        }
+    }
+
+    private final int numberOfRuns;
+
+    private final List<Step> steps;
+
+    private MergePlan(int numberOfRuns, List<Step> steps) {
+        this.numberOfRuns = numberOfRuns;
+        this.steps = Collections.unmodifiableList(steps);
+    }
+
+    /**
+     * @param runLengths
+     *            - lengths of runs in bytes
+     * @param fanIn
+     *            - maximum number of runs in one merge (-c)
+     */
+    public static MergePlan build(long[] runLengths, int fanIn) {
+        if (fanIn < 2)
+            throw new IllegalArgumentException(
+                    "Number of merged runs should be greater than 1");
+        int n = runLengths.length;
+        List<Step> steps = new ArrayList<>();
+        /*
+         * {length, node}, nodes of equal length are taken in order of
+         * numbers.
+         */
+        PriorityQueue<long[]> queue = new PriorityQueue<>(Math.max(1, n),
+                (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0])
+                        : Long.compare(a[1], b[1]));
+        for (int i = 0; i < n; i++) {
+            queue.add(new long[] { runLengths[i], i });
+        }
+        int inputs = fanIn - numberOfDummyRuns(n, fanIn);
+        while (queue.size() > 1) {
+            int count = Math.min(inputs, queue.size());
+            int[] nodes = new int[count];
+            long length = 0;
+            for (int i = 0; i < count; i++) {
+                long[] entry = queue.poll();
+                length += entry[0];
+                nodes[i] = (int) entry[1];
+            }
+            int node = n + steps.size();
+            steps.add(new Step(node, nodes, length));
+            queue.add(new long[] { length, node });
+            inputs = fanIn;
+        }
+        return new MergePlan(n, steps);
+    }
+
+    /**
+     * @return number of zero length runs which should be added to n runs, so
+     *         that every merge takes c runs
+     */
+    static int numberOfDummyRuns(int numberOfRuns, int fanIn) {
+        if (numberOfRuns <= 1)
+            return 0;
+        return (fanIn - 1 - (numberOfRuns - 1) % (fanIn - 1)) % (fanIn - 1);
+    }
+
+    public int getNumberOfRuns() {
+        return numberOfRuns;
+    }
+
+    public List<Step> getSteps() {
+        return steps;
+    }
+
+    /**
+     * @return total length of runs made by merges, it is the number of bytes
+     *         which are written (and read again) by merges
+     */
+    public long getPlannedBytes() {
+        long bytes = 0;
+        for (Step step : steps) {
+            bytes += step.length;
+        }
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "runs: " + numberOfRuns + ", steps: " + steps
+                + ", planned bytes: " + getPlannedBytes();
+    }
+}
@@ -1,14 +1,14 @@
 package mergesort.concurrent;
 
 import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.Queue;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.PriorityBlockingQueue;
+
+import mergesort.concurrent.sort.LineChunk;
 
 /**
  * Модуль реализует одну из разновидностей сортировки слиянием (merge sort). При
@@ -30,27 +30,145 @@ import java.util.concurrent.PriorityBlockingQueue;
  * 
  * Параметры выполнения:
  * 
- * java -jar mergesort.jar [-V] [-c <number_of_concurrently_merged_chunks> ]
- * [-h] -i <input file> [-m <RAM_per_one_sorter_thread_MBytes>] -o
- * <output_file> [-p <number_of_splitter_threads>] [-r
- * <number_of_merger_threads>] [-t <directory for temporary files>] [-v] [-x
- * <maximum_number_of_concurrently_working_threads>]
+ * java -jar mergesort.jar [-V] [-a <chunk_sort_algorithm>] [-b
+ * <read_ahead_budget_MBytes>] [-c
+ * <number_of_concurrently_merged_chunks> ] [-D] [-e <merge_engine>] [-f
+ * <number_of_final_merge_partitions>] [-F] [-g <run_generation>] [-h] [-H] [-I <input_mode>] -i <input file> [-L] [-m <RAM_per_one_sorter_thread_MBytes>] [-M
+ * <memory_budget_MBytes>] -o <output_file> [-O] [-p <number_of_splitter_threads>] [-r
+ * <number_of_merger_threads>] [-s <number_of_sorter_threads>] [-t <directories for temporary files>] [-u] [-v] [-w] [-x
+ * <maximum_number_of_concurrently_working_threads>] [-z <run_compression>]
  * 
  * Параметры командной строки: -V - вывод дополнительная информации о работе
- * программы; -c - максимальное количество одновременно объединяемых файлов
- * одним мержером (20); -h - вывод краткой справки и информации об основных
- * рабочих параметрах; -i - исходный файл; -m - примерный объем доступной
- * оперативной памяти в мегабайтах на один сортировщик (50); -o -
- * отсортированный файл; -p - максимальное число одновременно работающих
+ * программы; -a - алгоритм сортировки частей файла в оперативной памяти:
+ * string - строки декодируются в String и сортируются Collections.sort, bytes
+ * - строки остаются в виде байтов UTF-8 в одном массиве и сортируются по
+ * беззнаковым значениям байтов, что соответствует порядку кодовых точек
+ * Unicode, рядом со смещением строки хранятся ее первые 8 байтов в виде long,
+ * так что большинство сравнений не обращается к байтам строк, radix - строки
+ * хранятся как в режиме bytes, но смещения сортируются поразрядной сортировкой
+ * MSD (American flag sort) по байтам строк, небольшие группы сортируются
+ * вставками, порядок тот же, что и в режиме bytes, режим выгоден для ключей с
+ * длинными общими началами (номера с ведущими нулями, даты ISO 8601) (string);
+ * -b - объем памяти в мегабайтах для опережающего чтения сливаемых файлов:
+ * каждый файл читается через два буфера, один из которых заполняется
+ * фоновым потоком, пока мержер обрабатывает другой, объем делится поровну
+ * между всеми одновременно читаемыми файлами (c * r), так что можно выбирать
+ * между количеством сливаемых файлов и размером буферов, размер буфера не
+ * меньше 64 Кбайт и не больше 64 Мбайт, 0 - опережающее чтение отключено (0); -c - максимальное количество одновременно объединяемых файлов
+ * одним мержером (20); -D - временные файлы записываются и читаются
+ * прямым вводом-выводом (O_DIRECT, ExtendedOpenOption.DIRECT, Java 10 и
+ * выше) через выровненные по размеру блока буферы по 1 Мбайт, минуя
+ * страничный кэш, так что запись и чтение временных файлов не вытесняют из
+ * кэша другие файлы; если файловая система (например, tmpfs) или JDK не
+ * поддерживают прямой ввод-вывод, файлы директория пишутся и читаются через
+ * кэш, отложенная запись (-w) не используется для файлов с прямой записью;
+ * -e - алгоритм слияния частей файла: priorityqueue -
+ * строки читаются BufferedReader и выбираются с помощью PriorityQueue,
+ * losertree - строки читаются как байты и выбираются с помощью дерева
+ * проигравших (tournament tree), на одну строку выполняется log2(c) сравнений,
+ * строки сравниваются по беззнаковым значениям байтов, как в режиме -a bytes;
+ * priorityqueue используется только с -a string, losertree - только с
+ * -a bytes и -a radix, так как порядок строк String отличается от порядка
+ * байтов UTF-8 для символов вне Basic Multilingual Plane (losertree с
+ * -a bytes и -a radix, иначе priorityqueue); -f - количество частей (и потоков) для последнего
+ * слияния: по выборке строк из сливаемых файлов пространство ключей делится
+ * на части, каждая часть сливается отдельным потоком и записывается сразу на
+ * свое место в результирующем файле, строки сравниваются по беззнаковым
+ * значениям байтов, поэтому последнее слияние выполняется несколькими
+ * потоками только с -a bytes и -a radix (1); -F - временные файлы
+ * записываются в двоичном формате с общими префиксами (front coding): для каждой строки хранится
+ * длина общего с предыдущей строкой начала и остаток строки, каждая 16-я
+ * строка хранится целиком; мержер с деревом проигравших сравнивает длины
+ * общих начал и не сравнивает заведомо равные байты; -g - способ получения начальных отсортированных
+ * частей: chunk - исходный файл делится на части длиной -m, каждая часть
+ * сортируется в памяти, replacement - исходный файл читается одним потоком
+ * методом замещающего выбора (replacement selection) с кучей строк объемом
+ * -m, на случайных данных части получаются примерно вдвое длиннее памяти, а
+ * почти упорядоченный файл дает одну часть, что уменьшает число слияний,
+ * используется только с -I read (chunk); -h - вывод краткой справки и информации об основных
+ * рабочих параметрах; -H - части файла загружаются не в кучу, а в прямые
+ * буферы (ByteBuffer.allocateDirect) из пула, буфер после записи части
+ * используется для следующей части, так что байты частей не копируются
+ * сборщиком мусора, куча может быть небольшой, а объем памяти процесса
+ * примерно равен -p * -m плюс индексы строк, которые остаются в куче;
+ * используется только с -I read и -a bytes или -a radix; -I - способ загрузки частей исходного файла для
+ * сортировки по байтам (-a bytes или -a radix): read - часть файла копируется в массив в
+ * куче, mmap - часть файла отображается в память (FileChannel.map) кусками
+ * меньше 2 Гбайт, строки сортируются прямо в страничном кэше без копирования,
+ * sequential - исходный файл один раз последовательно читается отдельным
+ * потоком, который режет его на части по границам строк и передает их
+ * сортировщикам через ограниченную очередь, точки разделения заранее не
+ * вычисляются, сортировка начинается сразу после чтения первой части, этот
+ * режим можно использовать с любым алгоритмом сортировки и для чтения
+ * стандартного ввода, auto - режим выбирается при запуске сортировки:
+ * sequential, если исходный файл находится на вращающемся диске (по
+ * /sys/class/block/<устройство>/queue/rotational) или читается стандартный
+ * ввод, так как одновременное чтение далеких участков файла несколькими
+ * сортировщиками заставляет диск постоянно перемещать головки, read в
+ * остальных случаях и с ключами -H, -L и -g replacement (read); -i - исходный файл, "-" - стандартный ввод
+ * (только с -I sequential или -g replacement); -L - конвейерная
+ * сортировка частей: один поток загружает следующую часть, как только
+ * загружена предыдущая, не больше -p потоков сортируют загруженные части,
+ * один поток записывает отсортированные, так что диск и процессор работают
+ * одновременно, в памяти не больше -p + 2 частей, каждая из которых держит
+ * свой резерв памяти (-M) от загрузки до конца записи, не используется с
+ * -I sequential и -g replacement; -m - примерный объем доступной оперативной памяти в мегабайтах на один сортировщик (50); -M - общий
+ * объем памяти в мегабайтах для частей файла и буферов слияний: перед
+ * загрузкой части сортировщик резервирует память для нее, перед слиянием
+ * мержер резервирует память для буферов чтения, опережающего чтения и
+ * записи, задача ждет, пока память не освободится, но не занимает поток
+ * пула; после загрузки резерв уточняется по фактическому размеру массива
+ * части и ее индекса; при -I sequential и -g replacement часть уменьшается
+ * до четверти -m, если памяти не хватает; не больше максимального размера
+ * кучи (3/4 максимального размера кучи); -o -
+ * отсортированный файл, последнее слияние пишет результат во временный файл
+ * `.<имя файла>.mrgsrt_<suffix>` в каталоге этого файла, который затем
+ * атомарно переименовывается; -O - слияние по оптимальному плану: после
+ * сортировки всех частей по их длинам строится дерево слияний с минимальным
+ * суммарным объемом перезаписываемых данных (кратчайшие части сливаются
+ * первыми по c штук, при необходимости первое слияние берет меньше частей,
+ * как при добавлении пустых фиктивных частей), слияние передается мержеру,
+ * как только готовы все его части, с ключом -V выводятся план и
+ * запланированный и фактический объем перезаписанных данных; -p - максимальное число одновременно работающих
  * сплиттеров (5); -r - максимальное количество одновременно работающих мержеров
- * (1); -t - директорий для размещения временных файлов (желательно с большими
+ * (1); -s - количество потоков общего для всех сплиттеров пула fork/join, в
+ * котором сортируется одна часть: части индекса сортируются параллельно и
+ * затем сливаются, так что ядра не простаивают, когда частей меньше, чем ядер,
+ * не больше -x (1); -t - директорий для размещения временных файлов (желательно с большими
  * IO/s), по умолчанию используется директорий получаемый из системной проперти
- * "java.io.tmpdir". Во время работы в этом директории размещаюся файлы с вида
- * `mrgsrt_s_<number>_<suffix>` на этапе разделения и упорядочения частей
+ * "java.io.tmpdir"; можно задать несколько директориев (например, на разных
+ * дисках) через разделитель путей (':' в Unix) или повторением ключа, тогда
+ * каждый новый файл создается в директории с наименьшим числом записываемых
+ * файлов, а затем с наименьшим объемом записи, результат слияния - по
+ * возможности не в директориях сливаемых файлов, а мержер берет файлы из
+ * разных директориев, так что чтение и запись идут на несколько дисков
+ * одновременно; с ключом -V в конце для каждого директория выводятся объем и
+ * скорость записи и чтения. Во время работы в этом директории размещаюся файлы с вида
+ * `mrgsrt_s_<number>_<suffix>` (`mrgsrt_r_<number>_<suffix>` при -g replacement) на этапе разделения и упорядочения частей
  * исходного файла и `mrgsrt_m_<number>_ <suffix>` на этапах слияния, где `
  * <number>` - это порядковый номер операции, `<suffix>` - это
- * системногенерируемый суффикс для временных файлов; -v - вывод версии
- * программы; -x - максимальное количество одновременно исполняемых тредов (5).
+ * системногенерируемый суффикс для временных файлов; -u - в результат
+ * записывается только одна строка из нескольких равных: равные соседние
+ * строки отбрасываются уже при записи каждой отсортированной части и затем
+ * при каждом слиянии, так что на сильно повторяющихся данных временные файлы
+ * меньше, а следующие слияния перезаписывают меньше данных; с ключом -V в
+ * конце выводится количество отброшенных строк, последнее слияние
+ * выполняется одним потоком независимо от -f; -v - вывод версии
+ * программы; -w - отложенная запись временных файлов: заполненные буферы по
+ * 1 Мбайт через ограниченную очередь передаются отдельному потоку записи,
+ * который пишет их в файл через FileChannel, так что сортировка и слияние
+ * выполняются одновременно с записью на диск, с ключом -V в конце выводится
+ * суммарное время ожидания свободного буфера, записи и завершения записи при
+ * закрытии файлов; -x - максимальное количество одновременно исполняемых тредов:
+ * размер общего пула, в котором выполняются задачи сортировки частей (не
+ * больше -p одновременно) и задачи слияния (не больше -r), слияние начинается
+ * сразу, как только набралось -c отсортированных частей (5);
+ * -z - сжатие временных файлов блоками по 256 Кбайт: none - без сжатия,
+ * deflate - Deflater с наибольшей скоростью, lz4 - быстрый компрессор LZ4;
+ * сжатие уменьшает объем записи и чтения временных файлов ценой времени
+ * процессора, результат не сжимается; в конце сжатого файла записывается
+ * индекс блоков, поэтому последнее слияние сжатых файлов тоже делится на
+ * части -f, каждая часть читается с блока, в котором она начинается (none).
  *
  * В скобках указаны значения по умолчанию. Ключи должны отделяться друг от
  * друга и от параметров пробелами.
@@ -61,43 +179,143 @@ import java.util.concurrent.PriorityBlockingQueue;
 
 public class MergeSort {
 
+    /*
+     * Name of source file for reading from standard input.
+     */
+    public static final String STDIN_NAME = "-";
+
     public static void main(String[] args) {
 
         long startTime = System.currentTimeMillis();
 
-        int maxNumOfMergingChunks = Utils.getMaxNumOfMergingChunks();
+        SortConfig config = new SortConfig();
+
+        int maxNumOfMergingChunks = config.getMaxNumOfMergingChunks();
         String maxNumOfMergingChunksString = Integer
                 .toString(maxNumOfMergingChunks);
 
         /*
          * RAM memory (MBytes) per one sorter thread by default
          */
-        long ramValue = Utils.getMaxChunkFileLength();
+        long ramValue = config.getMaxChunkFileLength();
         String ramValueString = Long.toString(ramValue / 1024 / 1024);
 
         /*
          * Number of concurrent readers of source file
          */
-        int maxSplitterThreads = Utils.getMaxSplitterThreads();
+        int maxSplitterThreads = config.getMaxSplitterThreads();
         String maxSplitterThreadsString = Integer.toString(maxSplitterThreads);
 
+        /*
+         * Memory for read-ahead buffers of merged runs
+         */
+        long readAheadBudget = config.getReadAheadBudget();
+        String readAheadBudgetString = Long
+                .toString(readAheadBudget / 1024 / 1024);
+
+        /*
+         * Runs are written by write-behind writers
+         */
+        boolean writeBehind = config.isWriteBehind();
+
+        /*
+         * Runs are merged by optimal merge plan
+         */
+        boolean plannedMerge = config.isPlannedMerge();
+
+        /*
+         * Temporary runs are front coded
+         */
+        boolean frontCoding = config.isFrontCoding();
+
+        /*
+         * Arenas of chunks are out of heap
+         */
+        boolean offHeap = config.isOffHeap();
+
+        /*
+         * Loading, sorting and writing of chunks are pipelined
+         */
+        boolean pipelined = config.isPipelined();
+
+        /*
+         * Temporary runs bypass page cache
+         */
+        boolean directIo = config.isDirectIo();
+
+        /*
+         * Equal lines are written once
+         */
+        boolean unique = config.isUnique();
+
+        /*
+         * Number of threads for sorting of one chunk
+         */
+        int sorterThreads = config.getSorterThreads();
+        String sorterThreadsString = Integer.toString(sorterThreads);
+
         /*
          * Number of concurrent mergers
          */
-        int maxMergerThreads = Utils.getMaxMergerThreads();
+        int maxMergerThreads = config.getMaxMergerThreads();
         String maxMergerThreadsString = Integer.toString(maxMergerThreads);
 
         /*
          * Maximum number of concurrently working threads
          */
-        int maxNumberOfConcurrentThreads = Utils
+        int maxNumberOfConcurrentThreads = config
                 .getMaxNumberOfConcurrentThreads();
         String maxNumberOfConcurrentThreadsString = Integer
                 .toString(maxNumberOfConcurrentThreads);
+        /*
+         * Algorithm for sorting chunks in memory
+         */
+        ChunkSortAlgorithm chunkSortAlgorithm = config.getChunkSortAlgorithm();
+        String chunkSortAlgorithmString = chunkSortAlgorithm.name()
+                .toLowerCase();
+
+        /*
+         * Engine for merging of sorted chunks, null - engine which merges in
+         * the order of chunk sort algorithm
+         */
+        MergeEngine mergeEngine = null;
+        String mergeEngineString = "";
+
+        /*
+         * Number of partitions for the final merge
+         */
+        int finalMergePartitions = config.getFinalMergePartitions();
+        String finalMergePartitionsString = Integer
+                .toString(finalMergePartitions);
+
+        /*
+         * Way of loading chunks for byte level sorting
+         */
+        InputMode inputMode = config.getInputMode();
+        String inputModeString = inputMode.name().toLowerCase();
+
+        /*
+         * Way of producing initial sorted runs
+         */
+        RunGeneration runGeneration = config.getRunGeneration();
+        String runGenerationString = runGeneration.name().toLowerCase();
+
+        /*
+         * Compression of temporary files
+         */
+        RunCompression runCompression = config.getRunCompression();
+        String runCompressionString = runCompression.name().toLowerCase();
+
+        /*
+         * Memory for chunks and buffers of merges
+         */
+        long memoryBudget = Utils.getDefaultMemoryBudget();
+        String memoryBudgetString = Long.toString(memoryBudget / 1024 / 1024);
+
         /*
          * Available memory
          */
-        long maxMemory = Runtime.getRuntime().totalMemory();
+        long maxMemory = Runtime.getRuntime().maxMemory();
 
         String sourceString = "";
         File sourceFile = null;
@@ -105,7 +323,7 @@ public class MergeSort {
         String output = "";
 
         String tmpDirString = "";
-        File tmpDirFile = null;
+        List<File> tmpDirFiles = new ArrayList<>(config.getTmpDirFiles());
 
         int k = 0;
         int resultOfCommadLineParsing = 0;
@@ -114,7 +332,24 @@ public class MergeSort {
 
             switch (args[k++]) {
             case "-V":
-                Utils.setVerbose(true);
+                config.setVerbose(true);
+                break;
+            case "-a":
+                chunkSortAlgorithmString = args[k++];
+                chunkSortAlgorithm = ChunkSortAlgorithm
+                        .fromName(chunkSortAlgorithmString);
+                if (chunkSortAlgorithm == null) {
+                    resultOfCommadLineParsing |= 0x4000;
+                }
+                break;
+            case "-b":
+                try {
+                    readAheadBudgetString = args[k++];
+                    readAheadBudget = Long.parseLong(readAheadBudgetString)
+                            * 1024 * 1024;
+                } catch (NumberFormatException nfe) {
+                    resultOfCommadLineParsing |= 0x80000;
+                }
                 break;
             case "-c": // c; d; v
                 try {
@@ -125,21 +360,67 @@ public class MergeSort {
                     resultOfCommadLineParsing |= 0x10;
                 }
                 break;
+            case "-D":
+                directIo = true;
+                break;
+            case "-e":
+                mergeEngineString = args[k++];
+                mergeEngine = MergeEngine.fromName(mergeEngineString);
+                if (mergeEngine == null) {
+                    resultOfCommadLineParsing |= 0x8000;
+                }
+                break;
+            case "-f":
+                try {
+                    finalMergePartitionsString = args[k++];
+                    finalMergePartitions = Integer
+                            .parseInt(finalMergePartitionsString);
+                } catch (NumberFormatException nfe) {
+                    resultOfCommadLineParsing |= 0x10000;
+                }
+                break;
+            case "-F":
+                frontCoding = true;
+                break;
+            case "-g":
+                runGenerationString = args[k++];
+                runGeneration = RunGeneration.fromName(runGenerationString);
+                if (runGeneration == null) {
+                    resultOfCommadLineParsing |= 0x40000;
+                }
+                break;
+            case "-H":
+                offHeap = true;
+                break;
             case "-h":
                 System.out.println(
-                        "java -jar mergesort.jar  [-V] [-h] -i <input file> [-m <RAM_per_one_sorter_thread_MBytes>] -o <output_file> [-p <number_of_splitter_threads>] [-r <number_of_merger_threads>]  [-s <number_of_sorter_threads>] [-t <directory for temporary files>] [-v] [-x <maximum_number_of_concurrently_working_threads>]");
+                        "java -jar mergesort.jar  [-V] [-a <string|bytes|radix>] [-b <read_ahead_budget_MBytes>] [-c <number_of_concurrently_merged_chunks>] [-D] [-e <priorityqueue|losertree>] [-f <number_of_final_merge_partitions>] [-F] [-g <chunk|replacement>] [-h] [-H] [-I <read|mmap|sequential|auto>] -i <input file|-> [-L] [-m <RAM_per_one_sorter_thread_MBytes>] [-M <memory_budget_MBytes>] -o <output_file> [-O] [-p <number_of_splitter_threads>] [-r <number_of_merger_threads>]  [-s <number_of_sorter_threads>] [-t <directories for temporary files>] [-u] [-v] [-w] [-x <maximum_number_of_concurrently_working_threads>] [-z <none|deflate|lz4>]");
                 break;
             case "-i": // c; d; v
                 sourceString = args[k++];
+                if (STDIN_NAME.equals(sourceString)) {
+                    sourceFile = null;
+                    break;
+                }
                 sourceFile = new File(sourceString);
                 if (!sourceFile.exists()) {
                     resultOfCommadLineParsing |= 0x20;
                 }
                 break;
+            case "-I":
+                inputModeString = args[k++];
+                inputMode = InputMode.fromName(inputModeString);
+                if (inputMode == null) {
+                    resultOfCommadLineParsing |= 0x20000;
+                }
+                break;
+            case "-L":
+                pipelined = true;
+                break;
             case "-m":
                 try {
                     ramValueString = args[k++];
-                    ramValue = Integer.parseInt(ramValueString) * 1024 * 1024;
+                    ramValue = Long.parseLong(ramValueString) * 1024 * 1024;
                 } catch (NumberFormatException nfe) {
                     resultOfCommadLineParsing |= 0x40;
                 }
@@ -147,6 +428,18 @@ public class MergeSort {
             case "-o":
                 output = args[k++];
                 break;
+            case "-M":
+                try {
+                    memoryBudgetString = args[k++];
+                    memoryBudget = Long.parseLong(memoryBudgetString) * 1024
+                            * 1024;
+                } catch (NumberFormatException nfe) {
+                    resultOfCommadLineParsing |= 0x200000;
+                }
+                break;
+            case "-O":
+                plannedMerge = true;
+                break;
             case "-p":
                 try {
                     maxSplitterThreadsString = args[k++];
@@ -164,17 +457,36 @@ public class MergeSort {
                     resultOfCommadLineParsing |= 0x200;
                 }
                 break;
+            case "-s":
+                try {
+                    sorterThreadsString = args[k++];
+                    sorterThreads = Integer.parseInt(sorterThreadsString);
+                } catch (NumberFormatException nfe) {
+                    resultOfCommadLineParsing |= 0x400;
+                }
+                break;
             case "-t":
-                tmpDirString = args[k++];
-                tmpDirFile = new File(tmpDirString);
-                if (!tmpDirFile.exists()) {
-                    resultOfCommadLineParsing |= 0x800;
+                String tmpDirsString = args[k++];
+                tmpDirString += (tmpDirString.isEmpty() ? ""
+                        : File.pathSeparator) + tmpDirsString;
+                for (String directory : tmpDirsString
+                        .split(File.pathSeparator)) {
+                    File tmpDirFile = new File(directory);
+                    if (directory.isEmpty() || !tmpDirFile.isDirectory()) {
+                        resultOfCommadLineParsing |= 0x800;
+                    }
+                    tmpDirFiles.add(tmpDirFile);
                 }
-                Utils.setTmpDirFile(tmpDirFile);
+                break;
+            case "-u":
+                unique = true;
                 break;
             case "-v":
                 System.out.println("mergesort version: " + Utils.VERSION);
                 break;
+            case "-w":
+                writeBehind = true;
+                break;
             // maxNumberOfConcurrentThreadsString
             case "-x":
                 try {
@@ -186,6 +498,14 @@ public class MergeSort {
                 }
                 break;
 
+            case "-z":
+                runCompressionString = args[k++];
+                runCompression = RunCompression.fromName(runCompressionString);
+                if (runCompression == null) {
+                    resultOfCommadLineParsing |= 0x100000;
+                }
+                break;
+
             default:
                 System.out.println("ERROR: Unknown key: " + args[k - 1]);
                 resultOfCommadLineParsing |= 0x2000;
@@ -193,6 +513,35 @@ public class MergeSort {
         }
 
         /***************************** Diagnostics ***************************/
+        if ((resultOfCommadLineParsing & 0x4000) != 0) {
+            System.out.println(
+                    "ERROR: Illegal <chunk_sort_algorithm>. Should be string, bytes or radix: "
+                            + chunkSortAlgorithmString);
+        }
+
+        if ((resultOfCommadLineParsing & 0x8000) != 0) {
+            System.out.println(
+                    "ERROR: Illegal <merge_engine>. Should be priorityqueue or losertree: "
+                            + mergeEngineString);
+        } else if (mergeEngine != null && chunkSortAlgorithm != null
+                && chunkSortAlgorithm.isByteLevel() != mergeEngine
+                        .isByteLevel()) {
+            System.out.println("ERROR: Merge engine " + mergeEngineString
+                    + (mergeEngine.isByteLevel() ? " compares bytes"
+                            : " compares strings")
+                    + " and can't merge chunks sorted by chunk sort algorithm "
+                    + chunkSortAlgorithmString);
+            resultOfCommadLineParsing |= 0x8000;
+        }
+
+        if (readAheadBudget < 0
+                || ((resultOfCommadLineParsing & 0x80000) != 0)) {
+            System.out.println(
+                    "ERROR: Illegal format for <read_ahead_budget_MBytes>. Should be non-negative integer: "
+                            + readAheadBudgetString);
+            resultOfCommadLineParsing |= 0x80000;
+        }
+
         if (maxNumOfMergingChunks < 2
                 || ((resultOfCommadLineParsing & 0x10) != 0)) {
             System.out.println(
@@ -201,9 +550,71 @@ public class MergeSort {
             resultOfCommadLineParsing |= 0x10;
         }
 
+        if (finalMergePartitions < 1
+                || ((resultOfCommadLineParsing & 0x10000) != 0)) {
+            System.out.println(
+                    "ERROR: Illegal format for <number_of_final_merge_partitions>. Should be positive integer: "
+                            + finalMergePartitionsString);
+            resultOfCommadLineParsing |= 0x10000;
+        }
+
+        if ((resultOfCommadLineParsing & 0x20000) != 0) {
+            System.out.println(
+                    "ERROR: Illegal <input_mode>. Should be read, mmap, sequential or auto: "
+                            + inputModeString);
+        } else if (inputMode == InputMode.MMAP
+                && chunkSortAlgorithm == ChunkSortAlgorithm.STRING) {
+            System.out.println(
+                    "ERROR: Input mode mmap can't be used with chunk sort algorithm string");
+            resultOfCommadLineParsing |= 0x20000;
+        } else if (inputMode == InputMode.SEQUENTIAL
+                && ramValue > LineChunk.MAX_ARENA_LENGTH) {
+            System.out.println(
+                    "ERROR: Input mode sequential can't be used with chunks greater than 2 GBytes");
+            resultOfCommadLineParsing |= 0x20000;
+        }
+
+        if ((resultOfCommadLineParsing & 0x20000) == 0 && offHeap
+                && ((inputMode != InputMode.READ
+                        && inputMode != InputMode.AUTO)
+                        || chunkSortAlgorithm == ChunkSortAlgorithm.STRING
+                        || runGeneration == RunGeneration.REPLACEMENT)) {
+            System.out.println(
+                    "ERROR: Off-heap arenas can be used only with input mode read, chunk sort algorithm bytes or radix and run generation chunk");
+            resultOfCommadLineParsing |= 0x20000;
+        }
+
+        if ((resultOfCommadLineParsing & 0x20000) == 0 && pipelined
+                && (inputMode == InputMode.SEQUENTIAL
+                        || runGeneration == RunGeneration.REPLACEMENT)) {
+            System.out.println(
+                    "ERROR: Pipelined sorting can't be used with input mode sequential or run generation replacement, they read source by one thread");
+            resultOfCommadLineParsing |= 0x20000;
+        }
+
+        if ((resultOfCommadLineParsing & 0x40000) != 0) {
+            System.out.println(
+                    "ERROR: Illegal <run_generation>. Should be chunk or replacement: "
+                            + runGenerationString);
+        } else if (runGeneration == RunGeneration.REPLACEMENT
+                && inputMode != InputMode.READ
+                && inputMode != InputMode.AUTO) {
+            System.out.println(
+                    "ERROR: Run generation replacement reads source itself and can't be used with input mode "
+                            + inputModeString);
+            resultOfCommadLineParsing |= 0x40000;
+        }
+
         if (sourceString.isEmpty() || (resultOfCommadLineParsing & 0x20) != 0) {
             System.out.println("ERROR: Wrong source file: " + sourceString);
             resultOfCommadLineParsing |= 0x20;
+        } else if (STDIN_NAME.equals(sourceString)
+                && inputMode != InputMode.SEQUENTIAL
+                && !(inputMode == InputMode.AUTO && !offHeap && !pipelined)
+                && runGeneration != RunGeneration.REPLACEMENT) {
+            System.out.println(
+                    "ERROR: Standard input can be sorted only in sequential or auto input mode or with replacement run generation");
+            resultOfCommadLineParsing |= 0x20;
         }
 
         if (output.isEmpty()) {
@@ -233,15 +644,21 @@ public class MergeSort {
                             + tmpDirString);
         }
 
-        if ((ramValue * maxSplitterThreads < 1)
-                || (ramValue * maxSplitterThreads > maxMemory)
-                || ((resultOfCommadLineParsing & 0x40) != 0)) {
+        if (ramValue < 1 || ((resultOfCommadLineParsing & 0x40) != 0)) {
             System.out.println(
                     "ERROR: Illegal format for <RAM_per_one_sorter_thread_MBytes>. Should be positive integer: "
                             + ramValueString);
             resultOfCommadLineParsing |= 0x40;
         }
 
+        if (memoryBudget < 1 || memoryBudget > maxMemory
+                || ((resultOfCommadLineParsing & 0x200000) != 0)) {
+            System.out.println(
+                    "ERROR: Illegal format for <memory_budget_MBytes>. Should be positive integer not greater than maximum heap: "
+                            + memoryBudgetString);
+            resultOfCommadLineParsing |= 0x200000;
+        }
+
         if (maxNumberOfConcurrentThreads < 1
                 || ((resultOfCommadLineParsing & 0x1000) != 0)) {
             System.out.println(
@@ -250,21 +667,66 @@ public class MergeSort {
             resultOfCommadLineParsing |= 0x1000;
         }
 
+        if (sorterThreads < 1 || sorterThreads > maxNumberOfConcurrentThreads
+                || ((resultOfCommadLineParsing & 0x400) != 0)) {
+            System.out.println(
+                    "ERROR: Illegal format for <number_of_sorter_threads>. Should be positive integer not greater than <maximum_number_of_concurrently_working_threads>: "
+                            + sorterThreadsString);
+            resultOfCommadLineParsing |= 0x400;
+        }
+
+        if ((resultOfCommadLineParsing & 0x100000) != 0) {
+            System.out.println(
+                    "ERROR: Illegal <run_compression>. Should be none, deflate or lz4: "
+                            + runCompressionString);
+        }
+
         /***************************** Diagnostics ***************************/
 
         /***************************** Verbose *******************************/
 
-        if (Utils.isVerbose()) {
+        if (config.isVerbose()) {
+            System.out.println("Chunk sort algorithm: "
+                    + chunkSortAlgorithmString
+                    + ((resultOfCommadLineParsing & 0x4000) == 0 ? " correct"
+                            : " incorrect"));
+            System.out.println("Read-ahead budget (MB): "
+                    + readAheadBudgetString
+                    + ((resultOfCommadLineParsing & 0x80000) == 0 ? " correct"
+                            : " incorrect"));
             System.out.println("Number of concurrent merging chunks: "
                     + maxNumOfMergingChunksString
                     + ((resultOfCommadLineParsing & 0x10) == 0 ? " correct"
                             : " incorrect"));
+            System.out.println("Merge engine: "
+                    + (mergeEngine == null ? "default" : mergeEngineString)
+                    + ((resultOfCommadLineParsing & 0x8000) == 0 ? " correct"
+                            : " incorrect"));
+            System.out.println("Number of final merge partitions: "
+                    + finalMergePartitionsString
+                    + ((resultOfCommadLineParsing & 0x10000) == 0 ? " correct"
+                            : " incorrect"));
+            System.out.println("Input mode: " + inputModeString
+                    + ((resultOfCommadLineParsing & 0x20000) == 0 ? " correct"
+                            : " incorrect"));
+            System.out.println("Front coded runs: " + frontCoding);
+            System.out.println("Off-heap arenas: " + offHeap);
+            System.out.println("Pipelined sorting: " + pipelined);
+            System.out.println("Direct I/O of temporary files: " + directIo);
+            System.out.println("Unique lines: " + unique);
+            System.out.println("Run generation: " + runGenerationString
+                    + ((resultOfCommadLineParsing & 0x40000) == 0 ? " correct"
+                            : " incorrect"));
             System.out.println("Source file: " + sourceString
                     + ((resultOfCommadLineParsing & 0x20) == 0 ? " correct"
                             : " incorrect"));
             System.out.println("Memory per sorter(MB): " + ramValueString
                     + ((resultOfCommadLineParsing & 0x40) == 0 ? " correct"
                             : " incorrect"));
+            System.out.println("Memory budget (MB): " + memoryBudgetString
+                    + ((resultOfCommadLineParsing & 0x200000) == 0
+                            ? " correct" : " incorrect"));
+            System.out.println("Planned merge: " + plannedMerge);
             System.out.println("Output file: " + output
                     + ((resultOfCommadLineParsing & 0x80) == 0 ? " correct"
                             : " incorrect"));
@@ -277,16 +739,23 @@ public class MergeSort {
                     + maxMergerThreadsString
                     + ((resultOfCommadLineParsing & 0x200) == 0 ? " correct"
                             : " incorrect"));
+            System.out.println("Number of threads for sorting of one chunk: "
+                    + sorterThreadsString
+                    + ((resultOfCommadLineParsing & 0x400) == 0 ? " correct"
+                            : " incorrect"));
             System.out.println("Directory for temporary files: " + tmpDirString
                     + ((resultOfCommadLineParsing & 0x800) == 0 ? " correct"
                             : " incorrect"));
+            System.out.println("Write-behind: " + writeBehind);
             System.out.println("Number of concurrent threads: "
                     + maxNumberOfConcurrentThreadsString
                     + ((resultOfCommadLineParsing & 0x1000) == 0 ? " correct"
                             : " incorrect"));
+            System.out.println("Compression of temporary files: "
+                    + runCompressionString
+                    + ((resultOfCommadLineParsing & 0x100000) == 0 ? " correct"
+                            : " incorrect"));
 
-            System.out.println("Requested memory (MB): "
-                    + maxSplitterThreads * ramValue / 1024 / 1024);
             System.out
                     .println("Availabel RAM (MB): " + maxMemory / 1024 / 1024);
             if (resultOfCommadLineParsing != 0) {
@@ -297,128 +766,108 @@ public class MergeSort {
         /***************************** Verbose *******************************/
 
         if (resultOfCommadLineParsing != 0) {
-            System.exit(resultOfCommadLineParsing);
+            /*
+             * Exit status is truncated to 8 bits, high error bits give 1.
+             */
+            System.exit((resultOfCommadLineParsing & 0xFF) != 0
+                    ? resultOfCommadLineParsing & 0xFF : 1);
         }
 
-        Utils.setMaxNumOfMergingChunks(maxNumOfMergingChunks); // -c
+        config.setChunkSortAlgorithm(chunkSortAlgorithm); // -a
+        config.setReadAheadBudget(readAheadBudget); // -b
+        config.setMaxNumOfMergingChunks(maxNumOfMergingChunks); // -c
+        config.setMergeEngine(mergeEngine); // -e
+        config.setFinalMergePartitions(finalMergePartitions); // -f
+        config.setFrontCoding(frontCoding); // -F
+        config.setRunGeneration(runGeneration); // -g
+        config.setOffHeap(offHeap); // -H
+
+        config.setInputMode(inputMode); // -I
+        config.setSourceFile(sourceFile); // -i
+        config.setPipelined(pipelined); // -L
+        config.setDirectIo(directIo); // -D
+        config.setUnique(unique); // -u
+        config.setChunkFileLength(ramValue); // -m
+        config.setMemoryBroker(new MemoryBroker(memoryBudget)); // -M
+        config.setOutputFile(new File(output)); // -o
+        config.setPlannedMerge(plannedMerge); // -O
+        config.setMaxSplitterThreads(maxSplitterThreads); // -p
+        config.setMaxMergerThreads(maxMergerThreads); // -r
+        config.setSorterThreads(sorterThreads); // -s
+
+        config.setTmpDirFiles(tmpDirFiles); // -t
+        config.setWriteBehind(writeBehind); // -w
+        config.setMaxNumberOfConcurrentThreads(maxNumberOfConcurrentThreads); // -x
+        config.setRunCompression(runCompression); // -z
+
+        SortJob job = new SortJob(config);
 
-        Utils.setSourceFile(sourceFile); // -i
-        Utils.setChunkFileLength(ramValue); // -m
-                                            // -o
-        Utils.setMaxSplitterThreads(maxSplitterThreads); // -p
-        Utils.setMaxMergerThreads(maxMergerThreads); // -r
-
-        Utils.setTmpDirFile(tmpDirFile); // -t
-        Utils.setMaxNumberOfConcurrentThreads(maxNumberOfConcurrentThreads); // -x
-
-        if (Utils.isVerbose())
-            System.out.println(
-                    "mergesort: " + new Date() + " : Start splitting points");
-
-        SplitterSorter splitterSorter = new SplitterSorter();
-
-        int numberOfSplittingIntervals = SplitterSorter.makePointsForSplitting(
-                sourceFile, Utils.getMaxChunkFileLength(),
-                Utils.getPointsForSplittingQueue());
-        Utils.numberOfSplittingIntervals.set(numberOfSplittingIntervals);
-
-        Utils.setSortedChunksQueue(new PriorityBlockingQueue<File>(
-                numberOfSplittingIntervals, new FileLengthComparator()));
-
-        if (Utils.isVerbose())
-            System.out.println(
-                    "mergesort: " + new Date() + " : Splitting points: "
-                            + Utils.getPointsForSplittingQueue());
-
-        MergerSortThreadFactory mergerSortThreadFactory = new MergerSortThreadFactory();
+        /*
+         * Sort and merge tasks share one pool, job limits number of its
+         * concurrent tasks (-p, -r).
+         */
         ExecutorService executorService = Executors.newFixedThreadPool(
-                maxNumberOfConcurrentThreads, mergerSortThreadFactory);
-
-        if (Utils.isVerbose())
-            System.out.println("mergesort: " + new Date()
-                    + " : Start splitting and sorting file");
-        for (int i = 0; i < maxSplitterThreads; i++) {
-            executorService.execute(splitterSorter);
-        }
-
-        if (Utils.isVerbose())
-            System.out.println(
-                    "mergesort: " + new Date() + " : Start merging file");
-        Merger merger = new Merger();
-        for (int i = 0; i < maxMergerThreads; i++) {
-            executorService.execute(merger);
-        }
+                maxNumberOfConcurrentThreads, new MergerSortThreadFactory());
 
         try {
-            Utils.checkSemaphoreAndHelth(
-                    splitterSorter.getAllChanksSortedSemaphore(),
-                    splitterSorter.getThreadSet(), "Sorting");
-
-            if (Utils.isVerbose())
-                System.out.println("mergesort: " + new Date()
-                        + " : Ack end of sorting file");
-
-            Utils.checkSemaphoreAndHelth(merger.getAllChanksMergedSemaphore(),
-                    merger.getThreadSet(), "Merging");
-
-            if (Utils.isVerbose())
-                System.out.println("mergesort: " + new Date()
-                        + " : Ack end of merging file");
-
-        } catch (InternalInconsistencyException e) {
+            job.start(executorService).get();
+        } catch (ExecutionException e) {
             e.printStackTrace();
-            System.out.println("mergesort: " + new Date() + " : ERROR : Inconsistency error.");
+            if (e.getCause() instanceof InternalInconsistencyException) {
+                System.out.println("mergesort: " + new Date() + " : ERROR : Severe internal error.");
+                System.exit(255);
+            }
+            System.out.println("mergesort: " + new Date() + " : ERROR : Internal error.");
             System.exit(254);
         } catch (Exception e) {
             e.printStackTrace();
             System.out.println("mergesort: " + new Date() + " : ERROR : Internal error.");
             System.exit(254);
         }
+        executorService.shutdown();
 
-        int chunks = Utils.getMaxNumOfMergingChunks();
-        int numberOfMerges = 0;
-        if (numberOfSplittingIntervals > 1) {
-            int nextRound = numberOfSplittingIntervals;
-            do {
-                int rounds = (nextRound / chunks);
-                numberOfMerges += rounds;
-                int mod = nextRound % chunks;
-                nextRound = rounds + mod;
-            } while (nextRound >= chunks);
-            if (nextRound > 1) numberOfMerges++;
-        }
-
-        Queue<File> sortedChunksQueue = Utils.getSortedChunksQueue();
-
-        File mergedFile = sortedChunksQueue.poll();
-        if (Utils.isVerbose())
-            System.out.println("mergesort: " + new Date() + " : result file: "
-                    + mergedFile);
-        if (numberOfSplittingIntervals != splitterSorter
-                .getNumberOfSortedChunks()
-                || Utils.numberOfChunksForMerging.get() != 1
-                || sortedChunksQueue.size() != 0 || mergedFile == null
-                || numberOfMerges != Merger.getMergeNumber()) {
-            System.out.println("mergesort: " + new Date() + " : ERROR : Severe internal error.");
-            System.exit(255);
-        }
-
-        File outputFile = new File(output);
-
-        if (Utils.isVerbose())
-            System.out.println(
-                    "mergesort: " + new Date() + " : Start moving file");
-
-        try {
-            Files.move(mergedFile.toPath(), outputFile.toPath(),
-                    StandardCopyOption.REPLACE_EXISTING);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        if (Utils.isVerbose())
-            System.out
-                    .println("mergesort: " + new Date() + " : End moving file");
-        if (Utils.isVerbose())
+        if (config.isVerbose())
+            System.out.println("mergesort: " + new Date()
+                    + " : Bytes rewritten by merges: "
+                    + (plannedMerge ? "planned "
+                            + job.getPlan().getPlannedBytes()
+                            + ", actual " : "")
+                    + job.getBytesRewritten());
+        if (config.isVerbose() && unique)
+            System.out.println("mergesort: " + new Date()
+                    + " : Duplicate lines dropped: " + job.getDuplicates());
+        if (config.isVerbose())
+            System.out.println("mergesort: " + new Date()
+                    + " : Memory budget (MB): "
+                    + config.getMemoryBroker().getBudget() / 1024 / 1024
+                    + ", peak reserved (MB): "
+                    + config.getMemoryBroker().getPeakReserved() / 1024 / 1024
+                    + ", waits for memory: "
+                    + config.getMemoryBroker().getNumberOfWaits());
+        if (config.isVerbose())
+            for (TempDirectories.Directory directory : job.getRunFiles()
+                    .getTempDirectories().getDirectories())
+                System.out.println("mergesort: " + new Date()
+                        + " : Temporary directory " + directory.getFile()
+                        + ": runs " + directory.getNumberOfRuns()
+                        + ", written (MB) "
+                        + directory.getWritten().getBytes() / 1024 / 1024
+                        + String.format(" at %.1f MB/s",
+                                directory.getWritten().getThroughput() / 1024
+                                        / 1024)
+                        + ", read (MB) "
+                        + directory.getRead().getBytes() / 1024 / 1024
+                        + String.format(" at %.1f MB/s",
+                                directory.getRead().getThroughput() / 1024
+                                        / 1024)
+                        + (!config.isDirectIo() ? ""
+                                : directory.isDirectIoRejected()
+                                        ? ", direct I/O is not supported"
+                                        : ", direct I/O"));
+        if (config.isVerbose() && config.isWriteBehind())
+            System.out.println("mergesort: " + new Date() + " : "
+                    + job.getRunFiles().getWriteBehindStatistics());
+        if (config.isVerbose())
             System.out.println("Sorting duration (s) : "
                     + (((double) System.currentTimeMillis()) - startTime)
                             / 1000);
@@ -3,9 +3,10 @@ package mergesort.concurrent;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
@@ -14,60 +15,388 @@ import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Queue;
-import java.util.Set;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Semaphore;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import mergesort.concurrent.io.DuplicateFilter;
+import mergesort.concurrent.io.LineCursor;
 
 /**
+ * Merges sorted runs as soon as they are added: when there are -c runs
+ * waiting for merging, the shortest of them are merged by separate task.
+ * Merged run is added back, the final merge starts when all runs are added
+ * and there are not more than -c runs. Every merge waits for memory of its
+ * buffers from {@link MemoryBroker}. Runs of one merge are taken from
+ * different temporary directories if it is possible.
+ *
  * @author Nikolay Kirdin 2016-07-17
  * @version 0.3
  */
 
-public class Merger implements Runnable {
+public class Merger {
+
+    private final SortJob job;
+
+    private final SortConfig config;
+
+    private final RunFiles runFiles;
+
+    private final Executor executor;
+
+    /*
+     * Shared executor of the job for partitions of the final merge.
+     */
+    private final Executor partitionExecutor;
+
+    /*
+     * Runs which are waiting for merging, the shortest run is the first.
+     */
+    private final Queue<File> pendingRuns = new PriorityQueue<>(11,
+            new FileLengthComparator());
+
+    private int runningMerges;
+
+    private boolean allRunsAdded;
+
+    private int numberOfMerges;
+
+    private final CompletableFuture<File> result = new CompletableFuture<>();
 
-    private static final AtomicInteger mergeNumber = new AtomicInteger(0);
+    /**
+     * @param executor
+     *            - executor for merge tasks, at most -r merges are running at
+     *            the same time, partitions of the final merge (-f) are merged
+     *            in it too
+     */
+    public Merger(SortJob job, Executor executor) {
+        checkMergeOrder(job.getConfig());
+        this.job = job;
+        this.config = job.getConfig();
+        this.runFiles = job.getRunFiles();
+        this.executor = new LimitedExecutor(executor,
+                config.getMaxMergerThreads());
+        this.partitionExecutor = executor;
+    }
+
+    /**
+     * Merger which merges runs in the calling thread, partitions of the final
+     * merge are merged in the calling thread too.
+     */
+    public Merger(SortJob job) {
+        checkMergeOrder(job.getConfig());
+        this.job = job;
+        this.config = job.getConfig();
+        this.runFiles = job.getRunFiles();
+        this.executor = Runnable::run;
+        this.partitionExecutor = Runnable::run;
+    }
 
-    private static final AtomicInteger numberOfMergingChunks = new AtomicInteger(
-            0);
-    
     /*
-     * Set with threads for controlling state and health of threads.
+     * Priority queue compares strings and loser tree compares bytes, so each
+     * of them merges only runs which are sorted in its order: the orders
+     * differ for characters out of Basic Multilingual Plane.
+     */
+    private static void checkMergeOrder(SortConfig config) {
+        if (config.getChunkSortAlgorithm().isByteLevel() != config
+                .getMergeEngine().isByteLevel())
+            throw new IllegalArgumentException("Merge engine "
+                    + config.getMergeEngine().getName()
+                    + " can't merge chunks sorted by "
+                    + config.getChunkSortAlgorithm());
+    }
+
+    /**
+     * @return number of merges which were started by this merger
+     */
+    public synchronized int getNumberOfMerges() {
+        return numberOfMerges;
+    }
+
+    /**
+     * @return future of the merged run, it is completed when all runs are
+     *         added and merged, or exceptionally if one of merges fails
+     */
+    public CompletableFuture<File> getResult() {
+        return result;
+    }
+
+    /**
+     * Adds sorted run for merging.
+     */
+    public void addRun(File run) {
+        List<Tuple<Boolean, List<File>>> merges;
+        synchronized (this) {
+            pendingRuns.offer(run);
+            merges = nextMerges();
+        }
+        start(merges);
+    }
+
+    /**
+     * Indicates that there will be no more runs besides merged ones.
      */
-    private final Set<Thread> threadSet = ConcurrentHashMap
-            .<Thread> newKeySet();
+    public void allRunsAdded() {
+        List<Tuple<Boolean, List<File>>> merges;
+        synchronized (this) {
+            allRunsAdded = true;
+            merges = nextMerges();
+        }
+        start(merges);
+    }
+
+    private void mergeCompleted(File mergedChunkOfFile) {
+        List<Tuple<Boolean, List<File>>> merges;
+        synchronized (this) {
+            runningMerges--;
+            pendingRuns.offer(mergedChunkOfFile);
+            merges = nextMerges();
+        }
+        start(merges);
+    }
 
     /*
-     * Semaphore for indicating that all chunks merged.
+     * Takes runs for merges which can be started now, a merge is the final
+     * one if there are no other runs. Merges are started outside of lock, so
+     * merger which merges in the calling thread adds merged run back to
+     * consistent state.
      */
-    private final Semaphore allChanksMergedSemaphore = new Semaphore(0);
+    private List<Tuple<Boolean, List<File>>> nextMerges() {
+        List<Tuple<Boolean, List<File>>> merges = new ArrayList<>();
+        if (result.isDone())
+            return merges;
+        int maxNumOfMergingChunks = config.getMaxNumOfMergingChunks();
+        while (pendingRuns.size() >= maxNumOfMergingChunks
+                && !(allRunsAdded && runningMerges == 0
+                        && pendingRuns.size() == maxNumOfMergingChunks)) {
+            merges.add(new Tuple<Boolean, List<File>>(false,
+                    pollRuns(maxNumOfMergingChunks)));
+        }
+        if (allRunsAdded && runningMerges == 0) {
+            if (pendingRuns.size() > 1)
+                merges.add(new Tuple<Boolean, List<File>>(true,
+                        pollRuns(pendingRuns.size())));
+            else if (pendingRuns.size() == 1)
+                result.complete(pendingRuns.poll());
+            else
+                result.completeExceptionally(
+                        new IllegalStateException("There are no runs"));
+        }
+        return merges;
+    }
 
-    public Semaphore getAllChanksMergedSemaphore() {
-        return allChanksMergedSemaphore;
+    /*
+     * Takes the shortest runs. If runs are striped across several temporary
+     * directories, runs are taken from the 2 * numberOfRuns shortest ones so
+     * that directories give equal numbers of runs, then merge reads several
+     * devices at the same time.
+     */
+    private List<File> pollRuns(int numberOfRuns) {
+        List<File> mergingChunks = new ArrayList<>(numberOfRuns);
+        TempDirectories tempDirectories = runFiles.getTempDirectories();
+        if (tempDirectories.getDirectories().size() == 1
+                || pendingRuns.size() == numberOfRuns) {
+            for (int i = 0; i < numberOfRuns; i++) {
+                mergingChunks.add(pendingRuns.poll());
+            }
+        } else {
+            List<File> candidates = new ArrayList<>();
+            int numberOfCandidates = Math.min(pendingRuns.size(),
+                    2 * numberOfRuns);
+            for (int i = 0; i < numberOfCandidates; i++) {
+                candidates.add(pendingRuns.poll());
+            }
+            Map<TempDirectories.Directory, Integer> taken = new HashMap<>();
+            while (mergingChunks.size() < numberOfRuns) {
+                File chosen = null;
+                int chosenTaken = Integer.MAX_VALUE;
+                for (File candidate : candidates) {
+                    Integer count = taken
+                            .get(tempDirectories.directoryOf(candidate));
+                    int candidateTaken = count == null ? 0 : count;
+                    if (candidateTaken < chosenTaken) {
+                        chosen = candidate;
+                        chosenTaken = candidateTaken;
+                    }
+                }
+                candidates.remove(chosen);
+                mergingChunks.add(chosen);
+                taken.put(tempDirectories.directoryOf(chosen),
+                        chosenTaken + 1);
+            }
+            pendingRuns.addAll(candidates);
+        }
+        runningMerges++;
+        numberOfMerges++;
+        return mergingChunks;
     }
 
-    public Set<Thread> getThreadSet() {
-        return threadSet;
+    private void start(List<Tuple<Boolean, List<File>>> merges) {
+        for (Tuple<Boolean, List<File>> merge : merges) {
+            boolean finalMerge = merge.getT1();
+            List<File> mergingChunks = merge.getT2();
+            config.getMemoryBroker()
+                    .reserve(mergeMemory(mergingChunks.size(), finalMerge))
+                    .thenApplyAsync(reservation -> {
+                        if (config.isVerbose())
+                            System.out.println("mergesort: " + new Date()
+                                    + " : Merger begin to merge: "
+                                    + mergingChunks);
+                        try {
+                            return mergeRuns(mergingChunks, finalMerge);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        } finally {
+                            reservation.close();
+                        }
+                    }, executor).whenComplete((mergedChunkOfFile, e) -> {
+                if (e != null) {
+                    result.completeExceptionally(e);
+                    return;
+                }
+                if (config.isVerbose())
+                    System.out.println("mergesort: " + new Date() + " : "
+                            + Thread.currentThread()
+                            + " : Merger merged chunks: " + mergingChunks
+                            + " in " + mergedChunkOfFile);
+                if (finalMerge)
+                    result.complete(mergedChunkOfFile);
+                else
+                    mergeCompleted(mergedChunkOfFile);
+            });
+        }
     }
 
-    public static int getMergeNumber() {
-        return mergeNumber.get();
+    /**
+     * @return memory of buffers of merge: input buffers and read-ahead
+     *         buffers of every run and output buffers, their sizes depend on
+     *         options (see {@link RunFiles#inputBufferSize()}). Partitioned
+     *         final merge has them for every partition.
+     */
+    public long mergeMemory(int numberOfRuns, boolean finalMerge) {
+        int partitions = finalMerge ? finalMergePartitions() : 1;
+        int streams = numberOfRuns * partitions;
+        long memory = streams * runFiles.inputBufferSize()
+                + partitions * runFiles.outputBufferSize(!finalMerge);
+        if (config.getReadAheadBudget() > 0)
+            memory += 2L * streams * runFiles.readAheadBufferSize(
+                    partitions > 1 ? streams
+                            : numberOfRuns * config.getMaxMergerThreads());
+        return memory;
+    }
+
+    /*
+     * Final merge is partitioned (-f) only if runs are sorted by bytes, as
+     * partitioned merger compares lines, stored as plain text or in blocks
+     * with index (-z), so it can seek in them, and duplicates are kept, so
+     * partitions are written at offsets of merged bytes.
+     */
+    private int finalMergePartitions() {
+        if (!config.getChunkSortAlgorithm().isByteLevel() || config.isUnique()
+                || config.isFrontCoding())
+            return 1;
+        return config.getFinalMergePartitions();
+    }
+
+    /**
+     * Merges runs into new temporary file and deletes them. The final merge
+     * writes plain result next to the output file, if it is set, and is
+     * partitioned if it is set (-f) and runs can be partitioned: they are
+     * sorted by bytes, not front coded and duplicates are kept.
+     * 
+     * @return merged run
+     */
+    public File mergeRuns(List<File> mergingChunks, boolean finalMerge)
+            throws IOException {
+        int number = job.nextMergeNumber();
+        File mergedChunkOfFile = finalMerge && config.getOutputFile() != null
+                ? runFiles.createResultFile(config.getOutputFile())
+                : runFiles.createRun("mrgsrt" + "_m_" + number + "_",
+                        mergingChunks);
+        if (finalMerge && finalMergePartitions() > 1
+                && allSeekable(mergingChunks))
+            new PartitionedMerger(job, partitionExecutor,
+                    finalMergePartitions())
+                    .merge(mergingChunks, mergedChunkOfFile);
+        else
+            merge(mergingChunks, mergedChunkOfFile, !finalMerge);
+        job.addBytesRewritten(mergedChunkOfFile.length());
+        return mergedChunkOfFile;
     }
 
     public void merge(List<File> mergingChunks, File mergedChunkOfFile)
             throws IOException {
+        merge(mergingChunks, mergedChunkOfFile, false);
+    }
+
+    /**
+     * Lines which are equal to the previous merged line are dropped if it is
+     * set (-u).
+     *
+     * @param temporary
+     *            - merged run is temporary, it is front coded (-F) and
+     *            compressed (-z) if it is set
+     */
+    public void merge(List<File> mergingChunks, File mergedChunkOfFile,
+            boolean temporary) throws IOException {
+        if (config.getMergeEngine() == MergeEngine.LOSER_TREE)
+            mergeWithLoserTree(mergingChunks, mergedChunkOfFile, temporary);
+        else
+            mergeWithPriorityQueue(mergingChunks, mergedChunkOfFile,
+                    temporary);
+    }
+
+    private void mergeWithLoserTree(List<File> mergingChunks,
+            File mergedChunkOfFile, boolean temporary) throws IOException {
+
+        LineCursor[] cursors = new LineCursor[mergingChunks.size()];
+
+        try {
+            for (int i = 0; i < cursors.length; i++) {
+                cursors[i] = runFiles.openCursor(mergingChunks.get(i),
+                        mergingChunks.size() * config.getMaxMergerThreads());
+            }
+
+            DuplicateFilter duplicates = config.isUnique()
+                    ? new DuplicateFilter() : null;
+            try (OutputStream bos = runFiles.openOutput(mergedChunkOfFile,
+                    temporary)) {
+                new LoserTree(cursors).mergeTo(bos, duplicates);
+            }
+            if (duplicates != null)
+                job.addDuplicates(duplicates.getDuplicates());
+        } finally {
+            for (LineCursor cursor : cursors) {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+        }
+
+        for (File mergingFile : mergingChunks) {
+            mergingFile.delete();
+            runFiles.forget(mergingFile);
+        }
+    }
+
+    private void mergeWithPriorityQueue(List<File> mergingChunks,
+            File mergedChunkOfFile, boolean temporary) throws IOException {
 
         Map<BufferedReader, File> brMap = new HashMap<>();
 
         Queue<Tuple<String, BufferedReader>> priorityQueue = new PriorityQueue<>();
 
-        try (BufferedWriter bw = new BufferedWriter(
-                new FileWriter(mergedChunkOfFile))) {
+        String previous = null;
+
+        long duplicates = 0;
+
+        try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(
+                runFiles.openOutput(mergedChunkOfFile, temporary)))) {
 
             for (File mergingFile : mergingChunks) {
-                brMap.put(new BufferedReader(new FileReader(mergingFile)),
+                brMap.put(
+                        new BufferedReader(new InputStreamReader(runFiles.openInput(
+                                mergingFile, mergingChunks.size()
+                                        * config.getMaxMergerThreads()))),
                         mergingFile);
             }
 
@@ -81,6 +410,7 @@ public class Merger implements Runnable {
                     File file = entry.getValue();
                     brIterator.remove();
                     file.delete();
+                    runFiles.forget(file);
                     continue;
                 }
                 priorityQueue.offer(
@@ -90,8 +420,13 @@ public class Merger implements Runnable {
             while (!brMap.isEmpty()) {
 
                 Tuple<String, BufferedReader> tuple = priorityQueue.poll();
-                bw.write(tuple.getT1());
-                bw.newLine();
+                if (config.isUnique() && tuple.getT1().equals(previous)) {
+                    duplicates++;
+                } else {
+                    bw.write(tuple.getT1());
+                    bw.newLine();
+                    previous = tuple.getT1();
+                }
 
                 BufferedReader br = tuple.getT2();
                 String inputLine = br.readLine();
@@ -100,6 +435,7 @@ public class Merger implements Runnable {
                     File file = brMap.get(br);
                     brMap.remove(br);
                     file.delete();
+                    runFiles.forget(file);
                     continue;
                 }
                 tuple.setT1(inputLine);
@@ -114,113 +450,18 @@ public class Merger implements Runnable {
                 }
             }
         }
+        job.addDuplicates(duplicates);
     }
 
-    @Override
-    public void run() {
-
-        Thread thread = Thread.currentThread();
-        synchronized (threadSet) {
-            threadSet.add(thread);
-        }
-
-        Semaphore setOfChunksReadySemaphore = Utils.getSetofchunksreadysemaphore();
-        
-        int maxNumOfMergingChunks = Utils.getMaxNumOfMergingChunks();
-
-        BlockingQueue<File> sortedChunksQueue = Utils.getSortedChunksQueue();
-
-        List<File> mergingChunks = new ArrayList<>(maxNumOfMergingChunks);
-
-        while (!Utils.allChunksSorted.get()
-                || Utils.numberOfChunksForMerging.get() != 1) {
-
-            mergingChunks.clear();
-
-            File chunkOfFile = null;
-
-            synchronized(this) {
-                if (!Utils.allChunksSorted.get()
-                        && (Utils.numberOfChunksForMerging.get()
-                                - numberOfMergingChunks
-                                        .get() >= maxNumOfMergingChunks)
-                        || Utils.allChunksSorted.get()
-                                && (Utils.numberOfChunksForMerging.get()
-                                        - numberOfMergingChunks
-                                                .get() > 1)) {
-                    while (Utils.numberOfChunksForMerging.get()
-                            - mergingChunks.size() > 0
-                            && mergingChunks.size() < maxNumOfMergingChunks) {
-                        try {
-                            chunkOfFile = sortedChunksQueue.poll(120,
-                                    TimeUnit.SECONDS);
-                        } catch (InterruptedException e1) {
-                        }
-                        if (chunkOfFile != null) {
-                            mergingChunks.add(chunkOfFile);
-                            numberOfMergingChunks.getAndIncrement();
-                        } else if (Utils.allChunksSorted.get())
-                            break;
-                    }
-                }
-            }
-
-            if (mergingChunks.size() > 1) {
-                File mergedChunkOfFile;
-                if (Utils.isVerbose())
-                    System.out.println("mergesort: " + new Date()
-                            + " : Merger begin to merge: " + mergingChunks);
-                try {
-                    mergedChunkOfFile = File.createTempFile("mrgsrt" + "_m_"
-                            + mergeNumber.getAndIncrement() + "_", null,
-                            Utils.getTmpDirFile());
-                    merge(mergingChunks, mergedChunkOfFile);
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-                sortedChunksQueue.offer(mergedChunkOfFile);
-                Utils.numberOfChunksForMerging
-                        .getAndAdd(1 - mergingChunks.size());
-                numberOfMergingChunks.getAndAdd(-mergingChunks.size());
-
-                Utils.updateSetOfChunksSemaphore();
-
-                if (Utils.isVerbose())
-                    System.out.println("mergesort: " + new Date() + " : "
-                            + Thread.currentThread()
-                            + " : Merger merged chunks: " + mergingChunks
-                            + " in " + mergedChunkOfFile);
-
-            } else if (mergingChunks.size() == 1) {
-                sortedChunksQueue.offer(mergingChunks.get(0));
-                numberOfMergingChunks.getAndDecrement();
-                
-                Utils.updateSetOfChunksSemaphore();
-
-                if (Utils.isVerbose())
-                    System.out.println("mergesort: " + new Date()
-                            + " : Merger return chunk: " + mergingChunks.get(0)
-                            + " in mergingChunks");
-            } else {
-                try {
-                    setOfChunksReadySemaphore.tryAcquire(120, TimeUnit.SECONDS);
-                } catch (InterruptedException e) {
-                }
-            }
-        }
-
-        if ((Utils.allChunksSorted.get()
-                && Utils.numberOfChunksForMerging.get() == 1)
-                && Utils.allChunksMerged.compareAndSet(false, true)) {
-            allChanksMergedSemaphore.release();
-            if (Utils.isVerbose())
-                System.out.println("mergesort: " + new Date()
-                        + " : Merger merge all chunks: ");
-        }
-
-        synchronized (threadSet) {
-            threadSet.remove(threadSet);
+    /*
+     * Partitioned merge seeks in runs by byte positions, so it can read plain
+     * and compressed runs, but not front coded ones.
+     */
+    private boolean allSeekable(List<File> mergingChunks) {
+        for (File mergingFile : mergingChunks) {
+            if (runFiles.isFrontCoded(mergingFile))
+                return false;
         }
-
+        return true;
     }
 }
@@ -0,0 +1,470 @@
+package mergesort.concurrent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import mergesort.concurrent.io.BlockCompressedReader;
+import mergesort.concurrent.io.FileRegionInputStream;
+import mergesort.concurrent.io.LineCursor;
+import mergesort.concurrent.io.RunReader;
+import mergesort.concurrent.sort.UnsignedBytes;
+
+/**
+ * Merges sorted chunks with several threads. Lines are sampled from all
+ * chunks, samples are sorted and splitters are chosen, so that key space is
+ * divided into partitions of about equal size. Every chunk is cut on the
+ * first line which is not less than splitter (found by binary search on
+ * positions in file), then each partition is merged with {@link LoserTree}
+ * by separate task. Merge does not change bytes of lines, so output offset of
+ * each partition is known in advance and all partitions are written directly
+ * to their regions of merged file.
+ *
+ * Partitions are merged in threads of the shared executor of the job, so
+ * they are counted in -x. The calling thread merges partitions which were
+ * not started by the executor, so merge finishes even if all threads of the
+ * executor are busy.
+ *
+ * Lines are compared as unsigned bytes. Every chunk should end with '\n',
+ * otherwise chunks are merged by one thread. Compressed chunks (-z) are read
+ * by {@link BlockCompressedReader}: positions are positions of uncompressed
+ * data, lines are sampled and searched by decoding of single blocks and
+ * partition is read from the block which contains its start.
+ *
+ * @version 0.4
+ */
+public class PartitionedMerger {
+
+    /*
+     * Number of samples per partition. More samples give more even
+     * partitions.
+     */
+    public static final int SAMPLES_PER_PARTITION = 32;
+
+    /*
+     * Size of block for reading lines while sampling and searching.
+     */
+    private static final int SEARCH_BLOCK_SIZE = 4 * 1024;
+
+    private static final Comparator<byte[]> UNSIGNED_BYTES_COMPARATOR = new Comparator<byte[]>() {
+        @Override
+        public int compare(byte[] o1, byte[] o2) {
+            return UnsignedBytes.compare(o1, 0, o1.length, o2, 0, o2.length);
+        }
+    };
+
+    private final SortConfig config;
+
+    private final RunFiles runFiles;
+
+    private final Executor executor;
+
+    private final int numberOfPartitions;
+
+    /**
+     * @param executor
+     *            - shared executor, partitions are merged by at most
+     *            numberOfPartitions - 1 of its threads and the calling thread
+     */
+    public PartitionedMerger(SortJob job, Executor executor,
+            int numberOfPartitions) {
+        if (numberOfPartitions < 1)
+            throw new IllegalArgumentException(
+                    "Number of partitions should be greater than 0");
+        this.config = job.getConfig();
+        this.runFiles = job.getRunFiles();
+        this.executor = executor;
+        this.numberOfPartitions = numberOfPartitions;
+    }
+
+    /**
+     * Merges plain or compressed chunks, but not front coded ones, and
+     * deletes them.
+     */
+    public void merge(List<File> mergingChunks, File mergedChunkOfFile)
+            throws IOException {
+        int numberOfChunks = mergingChunks.size();
+        FileChannel[] channels = new FileChannel[numberOfChunks];
+        try {
+            Chunk[] chunks = new Chunk[numberOfChunks];
+            long[] lengths = new long[numberOfChunks];
+            boolean terminated = true;
+            for (int i = 0; i < numberOfChunks; i++) {
+                File chunkFile = mergingChunks.get(i);
+                channels[i] = FileChannel.open(chunkFile.toPath(),
+                        StandardOpenOption.READ);
+                chunks[i] = runFiles.isCompressed(chunkFile)
+                        ? new CompressedChunk(channels[i])
+                        : new PlainChunk(channels[i]);
+                lengths[i] = chunks[i].length();
+                terminated &= lengths[i] == 0
+                        || readByte(chunks[i], lengths[i] - 1) == '\n';
+            }
+
+            byte[][] splitters = terminated
+                    ? chooseSplitters(chunks, lengths) : new byte[0][];
+
+            /*
+             * bounds[i][p] is the start of partition p in chunk i.
+             */
+            long[][] bounds = new long[numberOfChunks][splitters.length + 2];
+            for (int i = 0; i < numberOfChunks; i++) {
+                for (int p = 0; p < splitters.length; p++) {
+                    bounds[i][p + 1] = lowerBound(chunks[i], lengths[i],
+                            splitters[p]);
+                }
+                bounds[i][splitters.length + 1] = lengths[i];
+            }
+
+            if (config.isVerbose())
+                System.out.println("mergesort: " + new Date()
+                        + " : PartitionedMerger partitions: "
+                        + (splitters.length + 1) + " chunks: "
+                        + mergingChunks);
+
+            mergePartitions(chunks, bounds, mergedChunkOfFile);
+        } finally {
+            for (FileChannel channel : channels) {
+                if (channel != null) {
+                    channel.close();
+                }
+            }
+        }
+
+        for (File mergingFile : mergingChunks) {
+            mergingFile.delete();
+            runFiles.forget(mergingFile);
+        }
+    }
+
+    /*
+     * Chunk which is read by positions of its lines.
+     */
+    private interface Chunk {
+
+        long length();
+
+        /*
+         * Reads bytes from position as FileChannel.read does.
+         */
+        int read(ByteBuffer destination, long position) throws IOException;
+
+        /*
+         * Opens stream of region from start (inclusive) to end (exclusive).
+         */
+        InputStream openRegion(long start, long end, int numberOfStreams)
+                throws IOException;
+    }
+
+    private final class PlainChunk implements Chunk {
+
+        private final FileChannel channel;
+
+        private final long length;
+
+        private PlainChunk(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.length = channel.size();
+        }
+
+        @Override
+        public long length() {
+            return length;
+        }
+
+        @Override
+        public int read(ByteBuffer destination, long position)
+                throws IOException {
+            return channel.read(destination, position);
+        }
+
+        @Override
+        public InputStream openRegion(long start, long end,
+                int numberOfStreams) {
+            return runFiles.openInput(
+                    new FileRegionInputStream(channel, start, end),
+                    numberOfStreams);
+        }
+    }
+
+    private final class CompressedChunk implements Chunk {
+
+        private final BlockCompressedReader reader;
+
+        private CompressedChunk(FileChannel channel) throws IOException {
+            reader = new BlockCompressedReader(channel,
+                    config.getRunCompression().newCodec());
+        }
+
+        @Override
+        public long length() {
+            return reader.length();
+        }
+
+        @Override
+        public int read(ByteBuffer destination, long position)
+                throws IOException {
+            return reader.read(destination, position);
+        }
+
+        /*
+         * Every stream decodes its blocks with its own codec.
+         */
+        @Override
+        public InputStream openRegion(long start, long end,
+                int numberOfStreams) throws IOException {
+            return reader.openRegion(start, end,
+                    config.getRunCompression().newCodec(),
+                    in -> runFiles.openInput(in, numberOfStreams));
+        }
+    }
+
+    private void mergePartitions(final Chunk[] chunks,
+            final long[][] bounds, File mergedChunkOfFile) throws IOException {
+        final int partitions = bounds[0].length - 1;
+        long[] outputPositions = new long[partitions + 1];
+        for (int p = 0; p < partitions; p++) {
+            outputPositions[p + 1] = outputPositions[p];
+            for (long[] chunkBounds : bounds) {
+                outputPositions[p + 1] += chunkBounds[p + 1] - chunkBounds[p];
+            }
+        }
+
+        try (final FileChannel output = FileChannel.open(
+                mergedChunkOfFile.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            if (partitions == 1) {
+                mergePartition(chunks, bounds, 0, output, 0L);
+                return;
+            }
+
+            List<PartitionTask> tasks = new ArrayList<>(partitions);
+            for (int p = 0; p < partitions; p++) {
+                tasks.add(new PartitionTask(chunks, bounds, p, output,
+                        outputPositions[p]));
+            }
+            Executor partitionExecutor = new LimitedExecutor(executor,
+                    partitions - 1);
+            for (PartitionTask task : tasks) {
+                partitionExecutor.execute(task);
+            }
+            try {
+                for (PartitionTask task : tasks) {
+                    task.run();
+                    if (task.merged.isCompletedExceptionally())
+                        break;
+                }
+                for (PartitionTask task : tasks) {
+                    task.cancel();
+                    task.merged.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException)
+                    throw (IOException) e.getCause();
+                throw new RuntimeException(e.getCause());
+            } finally {
+                for (PartitionTask task : tasks) {
+                    task.cancel();
+                }
+            }
+        }
+    }
+
+    /*
+     * Partition is merged by the thread which starts it first: a thread of
+     * the executor or the calling thread. Cancelled partition is not merged.
+     */
+    private final class PartitionTask implements Runnable {
+
+        private final Chunk[] chunks;
+
+        private final long[][] bounds;
+
+        private final int partition;
+
+        private final FileChannel output;
+
+        private final long outputPosition;
+
+        private final AtomicBoolean started = new AtomicBoolean();
+
+        private final CompletableFuture<Void> merged = new CompletableFuture<>();
+
+        private PartitionTask(Chunk[] chunks, long[][] bounds,
+                int partition, FileChannel output, long outputPosition) {
+            this.chunks = chunks;
+            this.bounds = bounds;
+            this.partition = partition;
+            this.output = output;
+            this.outputPosition = outputPosition;
+        }
+
+        @Override
+        public void run() {
+            if (!started.compareAndSet(false, true))
+                return;
+            try {
+                mergePartition(chunks, bounds, partition, output,
+                        outputPosition);
+                merged.complete(null);
+            } catch (IOException | RuntimeException e) {
+                merged.completeExceptionally(e);
+            }
+        }
+
+        private void cancel() {
+            if (started.compareAndSet(false, true))
+                merged.cancel(false);
+        }
+    }
+
+    private void mergePartition(Chunk[] chunks, long[][] bounds,
+            int partition, FileChannel output, long outputPosition)
+            throws IOException {
+        LineCursor[] cursors = new LineCursor[chunks.length];
+        for (int i = 0; i < chunks.length; i++) {
+            cursors[i] = new RunReader(chunks[i].openRegion(
+                    bounds[i][partition], bounds[i][partition + 1],
+                    chunks.length * (bounds[i].length - 1)));
+        }
+        try (OutputStream out = runFiles.openOutput(output,
+                outputPosition)) {
+            new LoserTree(cursors).mergeTo(out);
+        }
+    }
+
+    /*
+     * Samples are taken from evenly spaced positions, number of samples from
+     * chunk is proportional to its length.
+     */
+    private byte[][] chooseSplitters(Chunk[] chunks, long[] lengths)
+            throws IOException {
+        long totalLength = 0;
+        for (long length : lengths) {
+            totalLength += length;
+        }
+        if (numberOfPartitions == 1 || totalLength == 0)
+            return new byte[0][];
+
+        int totalSamples = numberOfPartitions * SAMPLES_PER_PARTITION;
+        List<byte[]> samples = new ArrayList<>(totalSamples);
+        for (int i = 0; i < chunks.length; i++) {
+            if (lengths[i] == 0)
+                continue;
+            int chunkSamples = (int) Math.max(1,
+                    totalSamples * lengths[i] / totalLength);
+            for (int s = 0; s < chunkSamples; s++) {
+                long position = nextLineStart(chunks[i], lengths[i],
+                        lengths[i] * s / chunkSamples);
+                if (position < lengths[i])
+                    samples.add(readLine(chunks[i], lengths[i], position));
+            }
+        }
+        byte[][] sortedSamples = samples.toArray(new byte[0][]);
+        Arrays.sort(sortedSamples, UNSIGNED_BYTES_COMPARATOR);
+
+        List<byte[]> splitters = new ArrayList<>(numberOfPartitions - 1);
+        for (int p = 1; p < numberOfPartitions; p++) {
+            byte[] splitter = sortedSamples[p * sortedSamples.length
+                    / numberOfPartitions];
+            if (splitters.isEmpty() || UNSIGNED_BYTES_COMPARATOR
+                    .compare(splitters.get(splitters.size() - 1), splitter) < 0)
+                splitters.add(splitter);
+        }
+        return splitters.toArray(new byte[0][]);
+    }
+
+    /*
+     * Returns start of the first line in chunk which is not less than
+     * splitter. Start of line which follows position is monotonic function of
+     * position, so binary search on positions is used.
+     */
+    private static long lowerBound(Chunk chunk, long length,
+            byte[] splitter) throws IOException {
+        long low = 0;
+        long high = length;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            long lineStart = nextLineStart(chunk, length, middle);
+            if (lineStart == length || UNSIGNED_BYTES_COMPARATOR.compare(
+                    readLine(chunk, length, lineStart), splitter) >= 0)
+                high = middle;
+            else
+                low = middle + 1;
+        }
+        return nextLineStart(chunk, length, low);
+    }
+
+    /*
+     * Returns position if line starts there, otherwise start of next line or
+     * length of chunk if there is no next line.
+     */
+    private static long nextLineStart(Chunk chunk, long length,
+            long position) throws IOException {
+        if (position == 0)
+            return 0;
+        ByteBuffer buffer = ByteBuffer.allocate(SEARCH_BLOCK_SIZE);
+        long blockPosition = position - 1;
+        while (blockPosition < length) {
+            buffer.clear();
+            int readBytes = chunk.read(buffer, blockPosition);
+            if (readBytes <= 0)
+                break;
+            for (int i = 0; i < readBytes; i++) {
+                if (buffer.get(i) == '\n')
+                    return blockPosition + i + 1;
+            }
+            blockPosition += readBytes;
+        }
+        return length;
+    }
+
+    private static byte[] readLine(Chunk chunk, long length,
+            long position) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(SEARCH_BLOCK_SIZE);
+        long blockPosition = position;
+        while (blockPosition < length) {
+            buffer.clear();
+            int readBytes = chunk.read(buffer, blockPosition);
+            if (readBytes <= 0)
+                break;
+            for (int i = 0; i < readBytes; i++) {
+                if (buffer.get(i) == '\n') {
+                    line.write(buffer.array(), 0, i);
+                    return line.toByteArray();
+                }
+            }
+            line.write(buffer.array(), 0, readBytes);
+            blockPosition += readBytes;
+        }
+        return line.toByteArray();
+    }
+
+    private static int readByte(Chunk chunk, long position)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1);
+        if (chunk.read(buffer, position) != 1)
+            throw new IOException("Can't read byte at position: " + position);
+        return buffer.get(0);
+    }
+}
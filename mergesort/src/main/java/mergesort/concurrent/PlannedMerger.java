@@ -0,0 +1,124 @@
+package mergesort.concurrent;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Merges all sorted runs by {@link MergePlan} with the minimum total length
+ * of merged runs. Plan is built when all runs are sorted and their lengths
+ * are known. Merge is given to one of merger threads as soon as all its
+ * inputs are merged and there is memory for its buffers.
+ *
+ * @version 0.4
+ */
+public class PlannedMerger {
+
+    private final SortConfig config;
+
+    private final Executor executor;
+
+    private final Merger merger;
+
+    private MergePlan plan;
+
+    /**
+     * @param executor
+     *            - executor for merge tasks, at most -r merges are running at
+     *            the same time
+     */
+    public PlannedMerger(SortJob job, Executor executor) {
+        this.config = job.getConfig();
+        this.executor = new LimitedExecutor(executor,
+                config.getMaxMergerThreads());
+        /*
+         * Merges are started here, merger only merges runs and partitions of
+         * the final merge in the shared executor.
+         */
+        this.merger = new Merger(job, executor);
+    }
+
+    /**
+     * @return plan of the last merge or null
+     */
+    public MergePlan getPlan() {
+        return plan;
+    }
+
+    /**
+     * Starts merges of runs, runs are deleted when they are merged.
+     * 
+     * @return future of merged run, the only run is returned as is
+     */
+    public CompletableFuture<File> merge(List<File> runs) {
+        if (runs.isEmpty())
+            throw new IllegalArgumentException("There are no runs");
+        int numberOfRuns = runs.size();
+        long[] runLengths = new long[numberOfRuns];
+        for (int i = 0; i < numberOfRuns; i++) {
+            runLengths[i] = runs.get(i).length();
+        }
+        plan = MergePlan.build(runLengths, config.getMaxNumOfMergingChunks());
+        if (config.isVerbose())
+            System.out.println("mergesort: " + new Date()
+                    + " : PlannedMerger plan: " + plan);
+
+        List<MergePlan.Step> steps = plan.getSteps();
+        /*
+         * Step is started as soon as all its inputs are merged.
+         */
+        List<CompletableFuture<File>> nodes = new ArrayList<>();
+        for (File run : runs) {
+            nodes.add(CompletableFuture.completedFuture(run));
+        }
+        for (int i = 0; i < steps.size(); i++) {
+            MergePlan.Step step = steps.get(i);
+            boolean finalMerge = i == steps.size() - 1;
+            List<CompletableFuture<File>> inputs = new ArrayList<>();
+            for (int input : step.getInputs()) {
+                inputs.add(nodes.get(input));
+            }
+            long memory = merger.mergeMemory(inputs.size(), finalMerge);
+            nodes.add(CompletableFuture
+                    .allOf(inputs.toArray(new CompletableFuture<?>[0]))
+                    .thenCompose(
+                            v -> config.getMemoryBroker().reserve(memory))
+                    .thenApplyAsync(reservation -> {
+                        try {
+                            return merge(step, inputs, finalMerge);
+                        } finally {
+                            reservation.close();
+                        }
+                    }, executor));
+        }
+        return nodes.get(nodes.size() - 1);
+    }
+
+    private File merge(MergePlan.Step step,
+            List<CompletableFuture<File>> inputFutures, boolean finalMerge) {
+        List<File> inputs = new ArrayList<>();
+        for (CompletableFuture<File> input : inputFutures) {
+            inputs.add(input.join());
+        }
+        if (config.isVerbose())
+            System.out.println("mergesort: " + new Date()
+                    + " : PlannedMerger begin to merge: " + step + " "
+                    + inputs);
+        File merged;
+        try {
+            merged = merger.mergeRuns(inputs, finalMerge);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (config.isVerbose())
+            System.out.println("mergesort: " + new Date() + " : "
+                    + Thread.currentThread() + " : PlannedMerger merged: "
+                    + step + " in " + merged + " (" + merged.length()
+                    + " bytes)");
+        return merged;
+    }
+}
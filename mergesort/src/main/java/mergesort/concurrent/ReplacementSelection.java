@@ -0,0 +1,199 @@
+package mergesort.concurrent;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+import mergesort.concurrent.io.RunReader;
+import mergesort.concurrent.sort.UnsignedBytes;
+
+/**
+ * Generates sorted runs by replacement selection. Lines are kept in a heap
+ * ordered by number of run and then by line. The smallest line of current run
+ * is written out and replaced by the next line of source. If the new line is
+ * less than the last written line it can't be placed into current run and is
+ * marked for the next one. On random data runs are about twice longer than
+ * memory, nearly sorted source gives one run.
+ *
+ * Lines are compared as unsigned bytes (-a bytes, -a radix) or as decoded
+ * strings (-a string), so that runs are ordered in the same way as chunks.
+ *
+ * @version 0.4
+ */
+public class ReplacementSelection {
+
+    /*
+     * Supposed memory used by heap entry besides bytes of line.
+     */
+    static final int ENTRY_OVERHEAD_IN_BYTES = 64;
+
+    private static final Comparator<Entry> BYTES_COMPARATOR = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry o1, Entry o2) {
+            if (o1.run != o2.run)
+                return o1.run < o2.run ? -1 : 1;
+            return UnsignedBytes.compare(o1.line, 0, o1.line.length, o2.line,
+                    0, o2.line.length);
+        }
+    };
+
+    private static final Comparator<Entry> STRING_COMPARATOR = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry o1, Entry o2) {
+            if (o1.run != o2.run)
+                return o1.run < o2.run ? -1 : 1;
+            return o1.string.compareTo(o2.string);
+        }
+    };
+
+    private static final class Entry {
+
+        private final int run;
+
+        private final byte[] line;
+
+        /*
+         * Decoded line, only for string comparison.
+         */
+        private final String string;
+
+        private Entry(int run, byte[] line, String string) {
+            this.run = run;
+            this.line = line;
+            this.string = string;
+        }
+
+        private long memory() {
+            return ENTRY_OVERHEAD_IN_BYTES + line.length
+                    + (string == null ? 0 : 2L * string.length());
+        }
+    }
+
+    private final long memory;
+
+    private final ChunkSortAlgorithm algorithm;
+
+    private final boolean unique;
+
+    private long duplicates;
+
+    private final RunFiles runFiles;
+
+    private int runNumber;
+
+    /**
+     * @param memory
+     *            - approximate memory for lines in heap in bytes
+     * @param algorithm
+     *            - defines order of lines
+     * @param unique
+     *            - line which is equal to the previous line of run is not
+     *            written
+     * @param runFiles
+     *            - creates runs in temporary directories and opens them for
+     *            writing
+     */
+    public ReplacementSelection(long memory, ChunkSortAlgorithm algorithm,
+            boolean unique, RunFiles runFiles) {
+        if (memory < 1)
+            throw new IllegalArgumentException(
+                    "Memory should be greater than 0");
+        this.memory = memory;
+        this.algorithm = algorithm;
+        this.unique = unique;
+        this.runFiles = runFiles;
+    }
+
+    /**
+     * Reads source to the end and passes every finished run to runConsumer.
+     * Empty source gives one empty run.
+     *
+     * @return number of runs
+     */
+    public int generateRuns(InputStream in, Consumer<File> runConsumer)
+            throws IOException {
+        PriorityQueue<Entry> heap = new PriorityQueue<>(
+                algorithm.isByteLevel() ? BYTES_COMPARATOR
+                        : STRING_COMPARATOR);
+        int numberOfRuns = 0;
+        try (RunReader reader = new RunReader(in)) {
+            long usedMemory = 0;
+            boolean endOfSource = false;
+            while (usedMemory < memory && !(endOfSource = !reader.next())) {
+                Entry entry = newEntry(0, reader);
+                heap.add(entry);
+                usedMemory += entry.memory();
+            }
+
+            int currentRun = 0;
+            byte[] previous = null;
+            File runFile = createRunFile();
+            OutputStream out = runFiles.openOutput(runFile, true);
+            try {
+                while (!heap.isEmpty()) {
+                    Entry smallest = heap.poll();
+                    usedMemory -= smallest.memory();
+                    if (smallest.run != currentRun) {
+                        out.close();
+                        runConsumer.accept(runFile);
+                        numberOfRuns++;
+                        currentRun = smallest.run;
+                        previous = null;
+                        runFile = createRunFile();
+                        out = runFiles.openOutput(runFile, true);
+                    }
+                    if (unique && Arrays.equals(smallest.line, previous)) {
+                        duplicates++;
+                    } else {
+                        out.write(smallest.line);
+                        out.write('\n');
+                        previous = smallest.line;
+                    }
+
+                    /*
+                     * Lines have different lengths, so written line is
+                     * replaced by as many lines as fit into its memory.
+                     */
+                    while (usedMemory < memory && !endOfSource
+                            && !(endOfSource = !reader.next())) {
+                        Entry next = newEntry(currentRun, reader);
+                        if (heap.comparator().compare(next, smallest) < 0)
+                            next = new Entry(currentRun + 1, next.line,
+                                    next.string);
+                        heap.add(next);
+                        usedMemory += next.memory();
+                    }
+                }
+            } finally {
+                out.close();
+            }
+            runConsumer.accept(runFile);
+            numberOfRuns++;
+        }
+        return numberOfRuns;
+    }
+
+    /**
+     * @return number of lines which were not written as duplicates
+     */
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    private Entry newEntry(int run, RunReader reader) {
+        byte[] line = Arrays.copyOfRange(reader.getBuffer(),
+                reader.getOffset(), reader.getOffset() + reader.getLength());
+        return new Entry(run, line,
+                algorithm.isByteLevel() ? null
+                        : new String(line));
+    }
+
+    private File createRunFile() throws IOException {
+        return runFiles.createRun("mrgsrt" + "_r_" + runNumber++ + "_");
+    }
+}
@@ -0,0 +1,49 @@
+package mergesort.concurrent;
+
+import mergesort.concurrent.io.BlockCodec;
+import mergesort.concurrent.io.DeflateCodec;
+import mergesort.concurrent.io.Lz4Codec;
+
+/**
+ * Compression of temporary files (sorted runs).
+ * 
+ * NONE writes runs as is. DEFLATE compresses blocks of runs with
+ * {@link java.util.zip.Deflater} at the best speed, LZ4 compresses them with
+ * fast LZ4 block compressor, it compresses text worse than DEFLATE but
+ * several times faster.
+ * 
+ * @version 0.4
+ */
+public enum RunCompression {
+
+    NONE, DEFLATE, LZ4;
+
+    /**
+     * @param name
+     *            - name of compression from the command line (case
+     *            insensitive)
+     * @return compression or null if name is unknown
+     */
+    public static RunCompression fromName(String name) {
+        for (RunCompression runCompression : values()) {
+            if (runCompression.name().equalsIgnoreCase(name))
+                return runCompression;
+        }
+        return null;
+    }
+
+    /**
+     * @return new codec for one stream or null for NONE, codecs are not
+     *         thread safe
+     */
+    public BlockCodec newCodec() {
+        switch (this) {
+        case DEFLATE:
+            return new DeflateCodec();
+        case LZ4:
+            return new Lz4Codec();
+        default:
+            return null;
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package mergesort.concurrent;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import mergesort.concurrent.io.BlockCompressedInputStream;
+import mergesort.concurrent.io.BlockCompressedOutputStream;
+import mergesort.concurrent.io.DirectInputStream;
+import mergesort.concurrent.io.DirectOutputStream;
+import mergesort.concurrent.io.FileRegionOutputStream;
+import mergesort.concurrent.io.FrontCodedOutputStream;
+import mergesort.concurrent.io.FrontCodedRunReader;
+import mergesort.concurrent.io.LineCursor;
+import mergesort.concurrent.io.LineCursorInputStream;
+import mergesort.concurrent.io.ReadAheadInputStream;
+import mergesort.concurrent.io.RunReader;
+import mergesort.concurrent.io.WriteBehindOutputStream;
+import mergesort.concurrent.io.WriteBehindStatistics;
+
+/**
+ * Opens streams of sorted runs (temporary files) according to options: runs
+ * are read with read-ahead buffers (-b), written by write-behind writer (-w),
+ * front coded (-F) and compressed (-z). Formats of runs are remembered, so
+ * they are decoded while reading whatever options are set. Runs are created
+ * in {@link TempDirectories} of options (-t) which count reads and writes,
+ * they bypass page cache if direct I/O is set (-D) and file system supports
+ * it. Every {@link SortJob} has its own instance.
+ *
+ * @version 0.4
+ */
+public class RunFiles {
+
+    /*
+     * Buffer size in bytes.
+     */
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    /*
+     * Maximum size of one read-ahead buffer in bytes.
+     */
+    public static final int MAX_READ_AHEAD_BUFFER_SIZE = 64 * 1024 * 1024;
+
+    /*
+     * Size of aligned buffer of direct I/O in bytes.
+     */
+    public static final int DIRECT_BUFFER_SIZE = 1024 * 1024;
+
+    /*
+     * Buffers of compressed stream (-z): block and compressed block, which is
+     * not much longer than block with any codec.
+     */
+    public static final int COMPRESSION_BUFFER_SIZE = 2
+            * BlockCompressedOutputStream.BLOCK_SIZE
+            + BlockCompressedOutputStream.BLOCK_SIZE / 64;
+
+    /*
+     * Runs which were written compressed.
+     */
+    private final Set<File> compressedRuns = ConcurrentHashMap.newKeySet();
+
+    /*
+     * Runs which were written in front coded format.
+     */
+    private final Set<File> frontCodedRuns = ConcurrentHashMap.newKeySet();
+
+    private final SortConfig config;
+
+    private final TempDirectories tempDirectories;
+
+    private final WriteBehindStatistics writeBehindStatistics = new WriteBehindStatistics();
+
+    public RunFiles(SortConfig config) {
+        this.config = config;
+        this.tempDirectories = new TempDirectories(config.getTmpDirFiles());
+    }
+
+    public TempDirectories getTempDirectories() {
+        return tempDirectories;
+    }
+
+    /**
+     * @return statistics of write-behind streams (-w) of the job
+     */
+    public WriteBehindStatistics getWriteBehindStatistics() {
+        return writeBehindStatistics;
+    }
+
+    /**
+     * Creates empty temporary run in one of temporary directories.
+     */
+    public File createRun(String prefix) throws IOException {
+        return tempDirectories.createTempFile(prefix);
+    }
+
+    /**
+     * Creates empty temporary run for merge of inputs, preferably on other
+     * device than inputs.
+     */
+    public File createRun(String prefix, Collection<File> inputs)
+            throws IOException {
+        return tempDirectories.createTempFile(prefix, inputs);
+    }
+
+    /**
+     * @return true if run is plain text, that is it was not compressed or
+     *         front coded
+     */
+    public boolean isPlain(File run) {
+        return !compressedRuns.contains(run) && !frontCodedRuns.contains(run);
+    }
+
+    /**
+     * @return true if run was written compressed (-z)
+     */
+    public boolean isCompressed(File run) {
+        return compressedRuns.contains(run);
+    }
+
+    /**
+     * @return true if run was written front coded (-F)
+     */
+    public boolean isFrontCoded(File run) {
+        return frontCodedRuns.contains(run);
+    }
+
+    /**
+     * Forgets format of run, it is called when run is deleted or moved.
+     */
+    public void forget(File run) {
+        compressedRuns.remove(run);
+        frontCodedRuns.remove(run);
+    }
+
+    /**
+     * Creates temporary file for the result in the directory of the output
+     * file, so it can be renamed to the output file without copying.
+     */
+    public File createResultFile(File output) throws IOException {
+        return File.createTempFile("." + output.getName() + ".mrgsrt_", null,
+                output.getAbsoluteFile().getParentFile());
+    }
+
+    /**
+     * Replaces output file by the result atomically. Result which is not
+     * plain is decoded and result from other file system is copied to
+     * temporary file next to the output file at first.
+     */
+    public void moveResult(File result, File output)
+            throws IOException {
+        if (!isPlain(result)) {
+            File decoded = createResultFile(output);
+            try (InputStream in = openInput(result, 1)) {
+                Files.copy(in, decoded.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            result.delete();
+            forget(result);
+            result = decoded;
+        }
+        try {
+            Files.move(result.toPath(), output.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            File copy = createResultFile(output);
+            Files.copy(result.toPath(), copy.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            Files.move(copy.toPath(), output.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+            result.delete();
+        }
+    }
+
+    /**
+     * @return memory of buffers of one stream which reads run written with
+     *         the current options, without read-ahead buffers (-b): buffer of
+     *         reader, aligned buffer of direct I/O (-D) and buffers of
+     *         compression (-z)
+     */
+    public long inputBufferSize() {
+        long size = BUFFER_SIZE;
+        if (config.isDirectIo())
+            size += DIRECT_BUFFER_SIZE;
+        if (config.getRunCompression() != RunCompression.NONE)
+            size += COMPRESSION_BUFFER_SIZE;
+        return size;
+    }
+
+    /**
+     * @return memory of buffers of one stream which is opened by
+     *         {@link #openOutput(File, boolean)}: write-behind stream (-w)
+     *         has queue of buffers, direct I/O (-D) has aligned buffer and
+     *         temporary run is compressed (-z) in blocks
+     */
+    public long outputBufferSize(boolean temporary) {
+        long size;
+        if (temporary && config.isDirectIo())
+            size = BUFFER_SIZE + DIRECT_BUFFER_SIZE;
+        else if (config.isWriteBehind())
+            size = (WriteBehindOutputStream.QUEUE_CAPACITY + 1L)
+                    * WriteBehindOutputStream.BUFFER_SIZE;
+        else
+            size = BUFFER_SIZE;
+        if (temporary && config.getRunCompression() != RunCompression.NONE)
+            size += COMPRESSION_BUFFER_SIZE;
+        return size;
+    }
+
+    /**
+     * Opens sorted run for merging as text. If read-ahead budget is set, run
+     * is read by {@link ReadAheadInputStream} with two buffers.
+     *
+     * @param numberOfStreams
+     *            - number of runs which are read at the same time, budget is
+     *            divided between them
+     */
+    public InputStream openInput(File run, int numberOfStreams)
+            throws IOException {
+        InputStream in = openStoredInput(run, numberOfStreams);
+        if (!frontCodedRuns.contains(run))
+            return in;
+        return new LineCursorInputStream(new FrontCodedRunReader(in));
+    }
+
+    /**
+     * Opens sorted run for merging by lines, front coded run is read by
+     * {@link FrontCodedRunReader} which knows shared prefixes of lines.
+     *
+     * @param numberOfStreams
+     *            - number of runs which are read at the same time
+     */
+    public LineCursor openCursor(File run, int numberOfStreams)
+            throws IOException {
+        InputStream in = openStoredInput(run, numberOfStreams);
+        if (frontCodedRuns.contains(run))
+            return new FrontCodedRunReader(in);
+        return new RunReader(in);
+    }
+
+    /*
+     * Opens run and decompresses it if it was compressed.
+     */
+    private InputStream openStoredInput(File run, int numberOfStreams)
+            throws IOException {
+        InputStream in = openInput(openFileInput(run), numberOfStreams);
+        if (!compressedRuns.contains(run))
+            return in;
+        return new BlockCompressedInputStream(in,
+                config.getRunCompression().newCodec());
+    }
+
+    /*
+     * Temporary run is read with direct I/O if it is set and file system of
+     * its directory does not reject it.
+     */
+    private InputStream openFileInput(File run) throws IOException {
+        if (config.isDirectIo() && tempDirectories.isDirectIoAllowed(run)) {
+            try {
+                return tempDirectories.meter(run,
+                        new DirectInputStream(run.toPath(),
+                                DIRECT_BUFFER_SIZE));
+            } catch (IOException | UnsupportedOperationException e) {
+                tempDirectories.rejectDirectIo(run);
+            }
+        }
+        return tempDirectories.meter(run, new FileInputStream(run));
+    }
+
+    public InputStream openInput(InputStream in, int numberOfStreams) {
+        if (config.getReadAheadBudget() == 0)
+            return in;
+        return new ReadAheadInputStream(in,
+                readAheadBufferSize(numberOfStreams),
+                Utils.getReadAheadExecutor());
+    }
+
+    /*
+     * Every stream has two buffers. Buffer is not less than BUFFER_SIZE and
+     * not greater than MAX_READ_AHEAD_BUFFER_SIZE.
+     */
+    int readAheadBufferSize(int numberOfStreams) {
+        long size = config.getReadAheadBudget() / (2L * numberOfStreams);
+        return (int) Math.max(BUFFER_SIZE,
+                Math.min(MAX_READ_AHEAD_BUFFER_SIZE, size));
+    }
+
+    /**
+     * Creates or truncates run and opens buffered stream for writing, run is
+     * written as text.
+     */
+    public OutputStream openOutput(File run) throws IOException {
+        return openOutput(run, false);
+    }
+
+    /**
+     * Creates or truncates run and opens buffered stream for writing of
+     * lines terminated by '\n'.
+     *
+     * @param temporary
+     *            - run is front coded and compressed if it is set, it is used
+     *            for temporary runs, but not for the result of the final
+     *            merge
+     */
+    public OutputStream openOutput(File run, boolean temporary)
+            throws IOException {
+        forget(run);
+        OutputStream out = openFileOutput(run, temporary);
+        if (!temporary)
+            return out;
+        if (config.getRunCompression() != RunCompression.NONE) {
+            compressedRuns.add(run);
+            out = new BlockCompressedOutputStream(out,
+                    config.getRunCompression().newCodec());
+        }
+        if (config.isFrontCoding()) {
+            frontCodedRuns.add(run);
+            out = new FrontCodedOutputStream(out);
+        }
+        return out;
+    }
+
+    /*
+     * Temporary run is written with direct I/O if it is set and file system
+     * of its directory does not reject it, such run is written by the
+     * calling thread even if write-behind is set.
+     */
+    private OutputStream openFileOutput(File run, boolean temporary)
+            throws IOException {
+        if (temporary && config.isDirectIo()
+                && tempDirectories.isDirectIoAllowed(run)) {
+            try {
+                return new BufferedOutputStream(tempDirectories.meter(run,
+                        new DirectOutputStream(run.toPath(),
+                                DIRECT_BUFFER_SIZE)),
+                        BUFFER_SIZE);
+            } catch (IOException | UnsupportedOperationException e) {
+                tempDirectories.rejectDirectIo(run);
+            }
+        }
+        if (config.isWriteBehind())
+            return tempDirectories.meter(run, new WriteBehindOutputStream(run,
+                    Utils.getWriteBehindExecutor(), writeBehindStatistics));
+        return new BufferedOutputStream(
+                tempDirectories.meter(run, new FileOutputStream(run)),
+                BUFFER_SIZE);
+    }
+
+    /**
+     * Opens buffered stream for writing to channel from position. Stream
+     * does not close channel.
+     */
+    public OutputStream openOutput(FileChannel channel, long position) {
+        if (config.isWriteBehind())
+            return new WriteBehindOutputStream(channel, position,
+                    Utils.getWriteBehindExecutor(), writeBehindStatistics);
+        return new BufferedOutputStream(
+                new FileRegionOutputStream(channel, position, BUFFER_SIZE),
+                BUFFER_SIZE);
+    }
+}
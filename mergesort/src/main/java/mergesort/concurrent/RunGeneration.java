@@ -0,0 +1,30 @@
+package mergesort.concurrent;
+
+/**
+ * Way of producing initial sorted runs.
+ * 
+ * CHUNK cuts source into chunks of fixed length, every chunk is sorted in
+ * memory and becomes one run. REPLACEMENT reads source once with
+ * {@link ReplacementSelection}, runs are about twice longer than memory on
+ * random data and nearly sorted source gives one run.
+ * 
+ * @version 0.4
+ */
+public enum RunGeneration {
+
+    CHUNK, REPLACEMENT;
+
+    /**
+     * @param name
+     *            - name of run generation from the command line (case
+     *            insensitive)
+     * @return run generation or null if name is unknown
+     */
+    public static RunGeneration fromName(String name) {
+        for (RunGeneration runGeneration : values()) {
+            if (runGeneration.name().equalsIgnoreCase(name))
+                return runGeneration;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,369 @@
+package mergesort.concurrent;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Options of one sort, see command line parameters of {@link MergeSort}.
+ * Every {@link SortJob} has its own configuration, so several jobs with
+ * different options can run in one JVM. Configuration should not be changed
+ * while job is running.
+ *
+ * @version 0.4
+ */
+public class SortConfig {
+
+    /*
+     * Key for output additional information while working.
+     */
+    private boolean verbose = false;
+
+    /*
+     * Source file.
+     */
+    private File sourceFile;
+
+    /*
+     * Sorted file, the final merge writes next to it.
+     */
+    private File outputFile;
+
+    /*
+     * Directories for temporary files, system temporary directory is used if
+     * it is empty.
+     */
+    private List<File> tmpDirFiles = Collections.emptyList();
+
+    /*
+     * Maximum chunk file length.
+     */
+    private long maxChunkFileLength = 50 * 1024 * 1024;
+
+    private int maxNumOfMergingChunks = 20;
+
+    private int maxSplitterThreads = 5;
+
+    private int maxMergerThreads = 1;
+
+    private int maxNumberOfConcurrentThreads = 5;
+
+    /*
+     * Algorithm for sorting chunks in memory.
+     */
+    private ChunkSortAlgorithm chunkSortAlgorithm = ChunkSortAlgorithm.STRING;
+
+    /*
+     * Engine for merging of sorted chunks, null means engine which merges in
+     * the order of chunk sort algorithm.
+     */
+    private MergeEngine mergeEngine;
+
+    /*
+     * Number of partitions (and threads) for the final merge.
+     */
+    private int finalMergePartitions = 1;
+
+    /*
+     * Way of loading chunks for byte level sorting.
+     */
+    private InputMode inputMode = InputMode.READ;
+
+    /*
+     * Way of producing initial sorted runs.
+     */
+    private RunGeneration runGeneration = RunGeneration.CHUNK;
+
+    /*
+     * Number of threads for sorting of one chunk.
+     */
+    private int sorterThreads = 1;
+
+    /*
+     * Memory for read-ahead buffers of merged runs in bytes, 0 - read-ahead
+     * is off.
+     */
+    private long readAheadBudget = 0;
+
+    /*
+     * Runs are written by write-behind writers.
+     */
+    private boolean writeBehind = false;
+
+    /*
+     * Compression of temporary files.
+     */
+    private RunCompression runCompression = RunCompression.NONE;
+
+    /*
+     * Runs are merged by optimal merge plan when all of them are sorted.
+     */
+    private boolean plannedMerge = false;
+
+    /*
+     * Temporary runs are written in front coded format.
+     */
+    private boolean frontCoding = false;
+
+    /*
+     * Arenas of chunks are direct buffers out of heap.
+     */
+    private boolean offHeap = false;
+
+    /*
+     * Loading, sorting and writing of chunks are pipelined.
+     */
+    private boolean pipelined = false;
+
+    /*
+     * Temporary runs are written and read with direct I/O.
+     */
+    private boolean directIo = false;
+
+    /*
+     * Equal lines are written once.
+     */
+    private boolean unique = false;
+
+    /*
+     * Budget of memory for chunks and buffers of merges, it can be shared
+     * by several jobs.
+     */
+    private MemoryBroker memoryBroker = Utils.getMemoryBroker();
+
+    public int getMaxSplitterThreads() {
+        return maxSplitterThreads;
+    }
+
+    public int getMaxMergerThreads() {
+        return maxMergerThreads;
+    }
+
+    public void setMaxMergerThreads(int maxMergerThreads) {
+        this.maxMergerThreads = maxMergerThreads;
+    }
+
+    public void setMaxSplitterThreads(int maxSplitterThreads) {
+        this.maxSplitterThreads = maxSplitterThreads;
+    }
+
+    public int getMaxNumOfMergingChunks() {
+        return maxNumOfMergingChunks;
+    }
+
+    public void setMaxNumOfMergingChunks(int maxNumOfMergingChunks) {
+        this.maxNumOfMergingChunks = maxNumOfMergingChunks;
+    }
+
+    public File getSourceFile() {
+        return sourceFile;
+    }
+
+    public void setSourceFile(File sourceFile) {
+        this.sourceFile = sourceFile;
+    }
+
+    public File getOutputFile() {
+        return outputFile;
+    }
+
+    public void setOutputFile(File outputFile) {
+        this.outputFile = outputFile;
+    }
+
+    public long getMaxChunkFileLength() {
+        return maxChunkFileLength;
+    }
+
+    public void setChunkFileLength(long maxChunkFileLength) {
+        this.maxChunkFileLength = maxChunkFileLength;
+    }
+
+    /**
+     * Sets the only directory for temporary files, null means system
+     * temporary directory.
+     */
+    public void setTmpDirFile(File tmpDirFile) {
+        this.tmpDirFiles = tmpDirFile == null ? Collections.<File> emptyList()
+                : Collections.singletonList(tmpDirFile);
+    }
+
+    /**
+     * @return the first directory for temporary files or null
+     */
+    public File getTmpDirFile() {
+        return tmpDirFiles.isEmpty() ? null : tmpDirFiles.get(0);
+    }
+
+    /**
+     * Sets directories for temporary files, runs are striped across them.
+     */
+    public void setTmpDirFiles(List<File> tmpDirFiles) {
+        this.tmpDirFiles = Collections
+                .unmodifiableList(new ArrayList<>(tmpDirFiles));
+    }
+
+    public List<File> getTmpDirFiles() {
+        return tmpDirFiles;
+    }
+
+    public int getMaxNumberOfConcurrentThreads() {
+        return maxNumberOfConcurrentThreads;
+    }
+
+    public void setMaxNumberOfConcurrentThreads(
+            int maxNumberOfConcurrentThreads) {
+        this.maxNumberOfConcurrentThreads = maxNumberOfConcurrentThreads;
+    }
+
+    public ChunkSortAlgorithm getChunkSortAlgorithm() {
+        return chunkSortAlgorithm;
+    }
+
+    public void setChunkSortAlgorithm(
+            ChunkSortAlgorithm chunkSortAlgorithm) {
+        this.chunkSortAlgorithm = chunkSortAlgorithm;
+    }
+
+    /**
+     * @return engine for merging, by default loser tree for byte level chunk
+     *         sort algorithms and priority queue for string one
+     */
+    public MergeEngine getMergeEngine() {
+        if (mergeEngine != null)
+            return mergeEngine;
+        return chunkSortAlgorithm.isByteLevel() ? MergeEngine.LOSER_TREE
+                : MergeEngine.PRIORITY_QUEUE;
+    }
+
+    /**
+     * @param mergeEngine
+     *            - engine for merging, null means engine which merges in the
+     *            order of chunk sort algorithm
+     */
+    public void setMergeEngine(MergeEngine mergeEngine) {
+        this.mergeEngine = mergeEngine;
+    }
+
+    public int getFinalMergePartitions() {
+        return finalMergePartitions;
+    }
+
+    public void setFinalMergePartitions(int finalMergePartitions) {
+        this.finalMergePartitions = finalMergePartitions;
+    }
+
+    public InputMode getInputMode() {
+        return inputMode;
+    }
+
+    public void setInputMode(InputMode inputMode) {
+        this.inputMode = inputMode;
+    }
+
+    public long getReadAheadBudget() {
+        return readAheadBudget;
+    }
+
+    public void setReadAheadBudget(long readAheadBudget) {
+        this.readAheadBudget = readAheadBudget;
+    }
+
+    public boolean isWriteBehind() {
+        return writeBehind;
+    }
+
+    public void setWriteBehind(boolean writeBehind) {
+        this.writeBehind = writeBehind;
+    }
+
+    public RunCompression getRunCompression() {
+        return runCompression;
+    }
+
+    public void setRunCompression(RunCompression runCompression) {
+        this.runCompression = runCompression;
+    }
+
+    public boolean isPlannedMerge() {
+        return plannedMerge;
+    }
+
+    public void setPlannedMerge(boolean plannedMerge) {
+        this.plannedMerge = plannedMerge;
+    }
+
+    public boolean isFrontCoding() {
+        return frontCoding;
+    }
+
+    public void setFrontCoding(boolean frontCoding) {
+        this.frontCoding = frontCoding;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    public void setOffHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    public boolean isDirectIo() {
+        return directIo;
+    }
+
+    public void setDirectIo(boolean directIo) {
+        this.directIo = directIo;
+    }
+
+    public boolean isUnique() {
+        return unique;
+    }
+
+    public void setUnique(boolean unique) {
+        this.unique = unique;
+    }
+
+    public MemoryBroker getMemoryBroker() {
+        return memoryBroker;
+    }
+
+    public void setMemoryBroker(MemoryBroker memoryBroker) {
+        this.memoryBroker = memoryBroker;
+    }
+
+    public int getSorterThreads() {
+        return sorterThreads;
+    }
+
+    public void setSorterThreads(int sorterThreads) {
+        this.sorterThreads = sorterThreads;
+    }
+
+    public RunGeneration getRunGeneration() {
+        return runGeneration;
+    }
+
+    public void setRunGeneration(RunGeneration runGeneration) {
+        this.runGeneration = runGeneration;
+    }
+
+    public boolean isVerbose() {
+        return verbose;
+    }
+
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+}
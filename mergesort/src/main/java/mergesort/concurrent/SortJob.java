@@ -0,0 +1,308 @@
+package mergesort.concurrent;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import mergesort.concurrent.io.BlockDevice;
+import mergesort.concurrent.sort.LineChunk;
+
+/**
+ * Sort of one file. Job owns all state of the sort: splitting points, formats
+ * of temporary runs and counters of merges, so several jobs can run in one
+ * JVM at the same time and share one pool of threads. Every job runs not
+ * more than -p sort tasks and -r merge tasks at the same time, memory of all
+ * tasks is limited by {@link MemoryBroker} of configuration.
+ *
+ * @version 0.4
+ */
+public class SortJob {
+
+    private final SortConfig config;
+
+    private final RunFiles runFiles;
+
+    /*
+     * Queue with tuples which contain start and end positions of chunks in
+     * source file
+     */
+    private final BlockingQueue<Tuple<Long, Long>> pointsForSplittingQueue = new LinkedBlockingQueue<>();
+
+    /*
+     * Number of splitting intervals of source file.
+     */
+    private final AtomicInteger numberOfSplittingIntervals = new AtomicInteger();
+
+    private final AtomicInteger mergeNumber = new AtomicInteger(0);
+
+    /*
+     * Total length of merged runs, bytes which were rewritten by merges.
+     */
+    private final AtomicLong bytesRewritten = new AtomicLong(0);
+
+    /*
+     * Lines which were dropped as duplicates by sorts and merges (-u).
+     */
+    private final AtomicLong duplicates = new AtomicLong(0);
+
+    private final SplitterSorter splitterSorter;
+
+    /*
+     * Input mode which is resolved when job starts, options are not changed,
+     * so they can be shared by jobs.
+     */
+    private volatile InputMode inputMode;
+
+    private Merger merger;
+
+    private PlannedMerger plannedMerger;
+
+    public SortJob(SortConfig config) {
+        this.config = config;
+        this.runFiles = new RunFiles(config);
+        this.splitterSorter = new SplitterSorter(this);
+    }
+
+    public SortConfig getConfig() {
+        return config;
+    }
+
+    public RunFiles getRunFiles() {
+        return runFiles;
+    }
+
+    public BlockingQueue<Tuple<Long, Long>> getPointsForSplittingQueue() {
+        return pointsForSplittingQueue;
+    }
+
+    public int getNumberOfSplittingIntervals() {
+        return numberOfSplittingIntervals.get();
+    }
+
+    public void setNumberOfSplittingIntervals(int numberOfSplittingIntervals) {
+        this.numberOfSplittingIntervals.set(numberOfSplittingIntervals);
+    }
+
+    /**
+     * @return number of the next merge
+     */
+    int nextMergeNumber() {
+        return mergeNumber.getAndIncrement();
+    }
+
+    /**
+     * @return number of merges which were started
+     */
+    public int getMergeNumber() {
+        return mergeNumber.get();
+    }
+
+    /**
+     * Every merge but the final one takes maxNumOfMergingChunks runs, the
+     * final merge takes the rest (from 2 to maxNumOfMergingChunks runs), so
+     * both mergers make the same number of merges: every merge decreases the
+     * number of runs by the number of its inputs - 1.
+     * 
+     * @return number of merges of numberOfRuns runs
+     */
+    static int numberOfMerges(int numberOfRuns, int maxNumOfMergingChunks) {
+        if (numberOfRuns <= 1)
+            return 0;
+        return (numberOfRuns - 2) / (maxNumOfMergingChunks - 1) + 1;
+    }
+
+    void addBytesRewritten(long bytes) {
+        bytesRewritten.addAndGet(bytes);
+    }
+
+    public long getBytesRewritten() {
+        return bytesRewritten.get();
+    }
+
+    void addDuplicates(long lines) {
+        duplicates.addAndGet(lines);
+    }
+
+    /**
+     * @return number of lines which were dropped as duplicates, a line can
+     *         be dropped by run generation or by one of merges
+     */
+    public long getDuplicates() {
+        return duplicates.get();
+    }
+
+    /**
+     * @return input mode of the job, auto mode of options is resolved when
+     *         job is started
+     */
+    public InputMode getInputMode() {
+        InputMode inputMode = this.inputMode;
+        return inputMode != null ? inputMode : config.getInputMode();
+    }
+
+    public SplitterSorter getSplitterSorter() {
+        return splitterSorter;
+    }
+
+    /**
+     * @return plan of merges if merge is planned (-O) and all runs are
+     *         sorted, otherwise null
+     */
+    public MergePlan getPlan() {
+        return plannedMerger == null ? null : plannedMerger.getPlan();
+    }
+
+    /**
+     * Starts sorting of source file into output file. Job can be started only
+     * once.
+     *
+     * @param executor
+     *            - executor for sort and merge tasks, it can be shared by
+     *            several jobs
+     * @return future of sorted file: output file or merged run if output file
+     *         is not set. It is completed exceptionally with
+     *         {@link InternalInconsistencyException} if numbers of sorted
+     *         chunks or merges are wrong.
+     */
+    public synchronized CompletableFuture<File> start(Executor executor) {
+        if (merger != null || plannedMerger != null)
+            throw new IllegalStateException("Job is already started");
+
+        inputMode = config.getInputMode();
+        if (inputMode == InputMode.AUTO) {
+            inputMode = chooseInputMode();
+            if (config.isVerbose())
+                System.out.println("mergesort: " + new Date()
+                        + " : Input mode: " + inputMode);
+        }
+
+        if (config.getRunGeneration() == RunGeneration.CHUNK
+                && inputMode != InputMode.SEQUENTIAL) {
+            numberOfSplittingIntervals.set(SplitterSorter
+                    .makePointsForSplitting(config.getSourceFile(),
+                            chunkLength(), pointsForSplittingQueue));
+            if (config.isVerbose())
+                System.out.println("mergesort: " + new Date()
+                        + " : Splitting points: " + pointsForSplittingQueue);
+        }
+
+        if (config.isVerbose())
+            System.out.println("mergesort: " + new Date()
+                    + " : Start splitting and sorting file");
+
+        CompletableFuture<File> result;
+        if (config.isPlannedMerge()) {
+            /*
+             * Merges start when lengths of all runs are known.
+             */
+            PlannedMerger plannedMerger = new PlannedMerger(this, executor);
+            this.plannedMerger = plannedMerger;
+            List<File> runs = Collections.synchronizedList(new ArrayList<>());
+            result = splitterSorter.sortAll(executor, runs::add)
+                    .thenCompose(v -> {
+                        if (config.isVerbose())
+                            System.out.println("mergesort: " + new Date()
+                                    + " : Ack end of sorting file");
+                        return plannedMerger.merge(runs);
+                    });
+        } else {
+            Merger merger = new Merger(this, executor);
+            this.merger = merger;
+            splitterSorter.sortAll(executor, merger::addRun)
+                    .whenComplete((v, e) -> {
+                        if (e != null) {
+                            merger.getResult().completeExceptionally(e);
+                            return;
+                        }
+                        if (config.isVerbose())
+                            System.out.println("mergesort: " + new Date()
+                                    + " : Ack end of sorting file");
+                        merger.allRunsAdded();
+                    });
+            result = merger.getResult();
+        }
+        return result.thenApply(this::finish);
+    }
+
+    /*
+     * Sorters which read far regions of source at the same time make
+     * rotational disk seek, so such source is read by one sequential reader.
+     * Off-heap arenas (-H), pipeline (-L) and replacement selection read
+     * source by themselves.
+     */
+    private InputMode chooseInputMode() {
+        File source = config.getSourceFile();
+        if (config.isOffHeap() || config.isPipelined()
+                || config.getRunGeneration() == RunGeneration.REPLACEMENT
+                || config.getMaxChunkFileLength() > LineChunk.MAX_ARENA_LENGTH)
+            return InputMode.READ;
+        if (source == null || BlockDevice.isRotational(source))
+            return InputMode.SEQUENTIAL;
+        return InputMode.READ;
+    }
+
+    /*
+     * Chunk is shortened if its memory exceeds budget, otherwise it would wait
+     * for all memory of broker.
+     */
+    private long chunkLength() {
+        long chunkLength = config.getMaxChunkFileLength();
+        long memory = splitterSorter.chunkMemory(chunkLength);
+        long budget = config.getMemoryBroker().getBudget();
+        if (memory <= budget)
+            return chunkLength;
+        chunkLength = Math.max(1,
+                (long) ((double) chunkLength * budget / memory));
+        if (config.isVerbose())
+            System.out.println("mergesort: " + new Date()
+                    + " : Chunk is shortened to memory budget: "
+                    + chunkLength);
+        return chunkLength;
+    }
+
+    /*
+     * Checks numbers of sorted chunks and merges and moves merged run to the
+     * output file.
+     */
+    private File finish(File mergedFile) {
+        if (config.isVerbose())
+            System.out.println("mergesort: " + new Date()
+                    + " : Ack end of merging file, result file: "
+                    + mergedFile);
+        int numberOfMerges = numberOfMerges(numberOfSplittingIntervals.get(),
+                config.getMaxNumOfMergingChunks());
+        if (numberOfSplittingIntervals.get() != splitterSorter
+                .getNumberOfSortedChunks()
+                || numberOfMerges != mergeNumber.get())
+            throw new CompletionException(new InternalInconsistencyException(
+                    "Sorted chunks: " + splitterSorter.getNumberOfSortedChunks()
+                            + " of " + numberOfSplittingIntervals.get()
+                            + ", merges: " + mergeNumber.get() + " of "
+                            + numberOfMerges));
+        if (config.getOutputFile() == null)
+            return mergedFile;
+
+        if (config.isVerbose())
+            System.out.println(
+                    "mergesort: " + new Date() + " : Start moving file");
+        try {
+            runFiles.moveResult(mergedFile, config.getOutputFile());
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+        if (config.isVerbose())
+            System.out
+                    .println("mergesort: " + new Date() + " : End moving file");
+        return config.getOutputFile();
+    }
+}
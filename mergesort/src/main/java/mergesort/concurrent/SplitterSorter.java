@@ -3,44 +3,81 @@ package mergesort.concurrent;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileWriter;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 import java.util.Queue;
-import java.util.Set;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Semaphore;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
+import mergesort.concurrent.io.DuplicateFilter;
 import mergesort.concurrent.io.LimitedBufferedFilterInputStream;
+import mergesort.concurrent.io.LineCursor;
+import mergesort.concurrent.sort.DirectArenaPool;
+import mergesort.concurrent.sort.LineChunk;
+import mergesort.concurrent.sort.ParallelMergeSort;
 
 /**
+ * Makes sorted runs of source file. Every chunk is sorted by separate task,
+ * sorted run is passed to consumer (merger) as soon as it is written.
+ *
  * @author Nikolay Kirdin 2016-07-17
  * @version 0.3
  */
-public class SplitterSorter implements Runnable {
+public class SplitterSorter {
 
     public static final int SUPPOSED_AVERAGE_STRING_LENGTH_IN_BYTES = 80;
 
     /*
-     * Number of sorted chunks.
+     * Supposed bytes of memory per byte of chunk which is sorted as strings.
      */
-    private final AtomicInteger numberOfSortedChunks = new AtomicInteger(0);
+    public static final int STRING_MEMORY_FACTOR = 6;
+
+    /*
+     * Bytes of String object besides its characters: header of object and
+     * array, references from list and from sorted array.
+     */
+    public static final int STRING_OVERHEAD = 56;
 
     /*
-     * Semaphore for indicating that all chunks completely sorted.
+     * Chunk which is read from stream (-I sequential) is shrunk not less than
+     * to 1/MAX_CHUNK_SHRINK of its length if there is not enough memory.
      */
-    private final Semaphore allChanksSortedSemaphore = new Semaphore(0);
+    public static final int MAX_CHUNK_SHRINK = 4;
+
+    private final SortJob job;
 
-    public Semaphore getAllChanksSortedSemaphore() {
-        return allChanksSortedSemaphore;
+    private final SortConfig config;
+
+    private final RunFiles runFiles;
+
+    private final MemoryBroker memoryBroker;
+
+    public SplitterSorter(SortJob job) {
+        this.job = job;
+        this.config = job.getConfig();
+        this.runFiles = job.getRunFiles();
+        this.memoryBroker = config.getMemoryBroker();
     }
 
+    /*
+     * Number of sorted chunks.
+     */
+    private final AtomicInteger numberOfSortedChunks = new AtomicInteger(0);
+
     public int getNumberOfSortedChunks() {
         return numberOfSortedChunks.get();
     }
@@ -50,34 +87,200 @@ public class SplitterSorter implements Runnable {
      */
     public static final int BUFFER_SIZE = 16 * 1024;
 
+    /*
+     * Maximum length of one mapped piece of chunk. Pieces are sorted
+     * separately and merged while chunk is written.
+     */
+    public static final int MAX_MAPPED_PIECE_LENGTH = LineChunk.MAX_ARENA_LENGTH;
+
     /*
      * Number of splitted chunk.
      */
     private final AtomicInteger splitNumber = new AtomicInteger(0);
 
     /*
-     * Set with threads for controlling state and health of threads.
+     * Pool which is shared by all sorters for sorting of one chunk by several
+     * threads, so cores are not idle when there are less chunks than cores.
      */
-    private final Set<Thread> threadSet = ConcurrentHashMap
-            .<Thread> newKeySet();
+    private ForkJoinPool sortPool;
 
-    public Set<Thread> getThreadSet() {
-        return threadSet;
+    /*
+     * @return pool for sorting of chunk or null if chunk is sorted by one
+     * thread
+     */
+    private synchronized ForkJoinPool getSortPool() {
+        if (sortPool == null && config.getSorterThreads() > 1)
+            sortPool = new ForkJoinPool(config.getSorterThreads());
+        return sortPool;
     }
 
+    /*
+     * Threads of the pool are not needed when all chunks are sorted, they
+     * would stay in long running JVM. Free arenas are dropped too.
+     */
+    private synchronized void shutdownSortPool() {
+        if (sortPool != null)
+            sortPool.shutdown();
+        if (arenaPool != null)
+            arenaPool.clear();
+    }
+
+    /*
+     * Direct buffers for arenas of chunks (-H), they are reused by sorters.
+     */
+    private DirectArenaPool arenaPool;
+
+    private synchronized DirectArenaPool getArenaPool() {
+        if (arenaPool == null)
+            arenaPool = new DirectArenaPool((int) Math.min(
+                    LineChunk.MAX_ARENA_LENGTH,
+                    config.getMaxChunkFileLength() + BUFFER_SIZE));
+        return arenaPool;
+    }
+
+    /**
+     * @return supposed memory for sorting of chunk before it is loaded and
+     *         for buffers of its run (see {@link RunFiles#outputBufferSize})
+     */
+    public long chunkMemory(long length) {
+        long run = runFiles.outputBufferSize(true);
+        if (!config.getChunkSortAlgorithm().isByteLevel())
+            return STRING_MEMORY_FACTOR * length + run;
+        /*
+         * Two longs of index and two longs of buffer of merge sort per line.
+         */
+        long index = 32L * (length / SUPPOSED_AVERAGE_STRING_LENGTH_IN_BYTES
+                + 1);
+        return job.getInputMode() == InputMode.MMAP || config.isOffHeap()
+                ? index + run : length + index + run;
+    }
+
+    /**
+     * Sorts chunk of file, reservation is resized to memory of loaded chunk
+     * and buffers of its run.
+     */
     public File splitAndSortFile(File file, long startPosition,
-            long endPosition) throws IOException {
+            long endPosition, MemoryBroker.Reservation reservation)
+            throws IOException {
+        return write(sort(load(file, startPosition, endPosition,
+                reservation)));
+    }
 
-        Runtime rt = Runtime.getRuntime();
+    /**
+     * Sorts chunk which is already read into buffer (from position to limit
+     * of buffer), reservation is resized to memory of buffer, its lines and
+     * buffers of its run.
+     */
+    public File sortChunk(ByteBuffer buffer,
+            MemoryBroker.Reservation reservation) throws IOException {
+        LineChunk lineChunk = LineChunk.wrap(buffer);
+        if (config.getChunkSortAlgorithm().isByteLevel()) {
+            reservation.resize(lineChunk.getMemoryFootprint()
+                    + runFiles.outputBufferSize(true));
+            return write(sort(new LoadedChunk(
+                    Collections.singletonList(lineChunk), null)));
+        }
+
+        List<String> strings = new ArrayList<>(lineChunk.size());
+        long memory = buffer.capacity() + runFiles.outputBufferSize(true);
+        LineCursor cursor = lineChunk.cursor();
+        while (cursor.next()) {
+            String string = new String(cursor.getBuffer(), cursor.getOffset(),
+                    cursor.getLength());
+            strings.add(string);
+            memory += stringMemory(string);
+        }
+        reservation.resize(memory);
+        return write(sort(new LoadedChunk(strings)));
+    }
+
+    private static long stringMemory(String string) {
+        return STRING_OVERHEAD + 2L * string.length();
+    }
+
+    /*
+     * Chunk in memory: byte level pieces or strings. Chunk is loaded, sorted
+     * and written by separate steps, so steps of different chunks can run at
+     * the same time (-L).
+     */
+    private static final class LoadedChunk {
+
+        private final List<LineChunk> lineChunks;
+
+        private List<String> strings;
+
+        /*
+         * Direct arena of pool (-H), it is released when chunk is written.
+         */
+        private final ByteBuffer directArena;
+
+        private LoadedChunk(List<LineChunk> lineChunks,
+                ByteBuffer directArena) {
+            this.lineChunks = lineChunks;
+            this.directArena = directArena;
+        }
+
+        private LoadedChunk(List<String> strings) {
+            this.lineChunks = null;
+            this.strings = strings;
+            this.directArena = null;
+        }
+    }
+
+    /*
+     * Loads chunk of file, reservation is resized to memory of loaded chunk
+     * and buffers of its run, which is written later.
+     */
+    private LoadedChunk load(File file, long startPosition, long endPosition,
+            MemoryBroker.Reservation reservation) throws IOException {
+        if (config.getChunkSortAlgorithm().isByteLevel())
+            return loadBytes(file, startPosition, endPosition, reservation);
+        return loadStrings(file, startPosition, endPosition, reservation);
+    }
+
+    /*
+     * Lines are loaded into one byte arena (heap array, direct buffer of pool
+     * with -H or mapped region of file), offsets of lines are sorted and
+     * original bytes are written to chunk without decoding and encoding.
+     */
+    private LoadedChunk loadBytes(File file, long startPosition,
+            long endPosition, MemoryBroker.Reservation reservation)
+            throws IOException {
+        List<LineChunk> lineChunks;
+        ByteBuffer directArena = null;
+        if (config.isOffHeap()) {
+            directArena = getArenaPool()
+                    .acquire((int) (endPosition - startPosition));
+            try {
+                lineChunks = Collections.singletonList(LineChunk.read(file,
+                        startPosition, endPosition, directArena));
+            } catch (IOException | RuntimeException e) {
+                getArenaPool().release(directArena);
+                throw e;
+            }
+        } else if (job.getInputMode() == InputMode.MMAP)
+            lineChunks = LineChunk.map(file, startPosition, endPosition,
+                    MAX_MAPPED_PIECE_LENGTH);
+        else
+            lineChunks = Collections.singletonList(
+                    LineChunk.read(file, startPosition, endPosition));
+
+        long memory = runFiles.outputBufferSize(true);
+        for (LineChunk lineChunk : lineChunks) {
+            memory += lineChunk.getMemoryFootprint();
+        }
+        reservation.resize(memory);
+        return new LoadedChunk(lineChunks, directArena);
+    }
+
+    private LoadedChunk loadStrings(File file, long startPosition,
+            long endPosition, MemoryBroker.Reservation reservation)
+            throws IOException {
 
         List<String> strings = new ArrayList<>(
                 (int) ((endPosition - startPosition)
                         / SUPPOSED_AVERAGE_STRING_LENGTH_IN_BYTES));
 
-        File chunkOfFile = File.createTempFile(
-                "mrgsrt" + "_s_" + splitNumber.getAndIncrement() + "_", null,
-                Utils.getTmpDirFile());
-
         try (LimitedBufferedFilterInputStream lfis = new LimitedBufferedFilterInputStream(
                 new FileInputStream(file))) {
 
@@ -85,122 +288,481 @@ public class SplitterSorter implements Runnable {
             lfis.setEndOfStreamPosition(endPosition);
 
             String string;
+            long memory = runFiles.outputBufferSize(true);
 
             while ((string = lfis.readLine()) != null) {
                 strings.add(string);
+                memory += stringMemory(string);
             }
+            reservation.resize(memory);
         }
-        Collections.sort(strings);
+        return new LoadedChunk(strings);
+    }
+
+    private LoadedChunk sort(LoadedChunk chunk) {
+
+        Runtime rt = Runtime.getRuntime();
 
-        if (Utils.isVerbose()) {
+        if (chunk.lineChunks != null) {
+            for (LineChunk lineChunk : chunk.lineChunks) {
+                if (config.getChunkSortAlgorithm() == ChunkSortAlgorithm.RADIX)
+                    lineChunk.sortRadix();
+                else
+                    lineChunk.sort(getSortPool());
+            }
+        } else if (getSortPool() == null) {
+            Collections.sort(chunk.strings);
+        } else {
+            String[] array = chunk.strings
+                    .toArray(new String[chunk.strings.size()]);
+            ParallelMergeSort.sort(array, Comparator.naturalOrder(),
+                    getSortPool());
+            chunk.strings = Arrays.asList(array);
+        }
+
+        if (config.isVerbose()) {
             long usedMB = (rt.totalMemory() - rt.freeMemory()) / 1024 / 1024;
             System.out.println("mergesort: " + new Date()
                     + " : SplitterSorter. Memory used after sort (MB): "
                     + usedMB);
         }
+        return chunk;
+    }
 
-        try (BufferedWriter bw = new BufferedWriter(
-                new FileWriter(chunkOfFile))) {
-            for (int i = 0; i < strings.size(); i++) {
-                bw.write(strings.get(i));
-                bw.newLine();
-                strings.set(i, null);
-            }
+    /*
+     * Writes sorted chunk to new run, direct arena is returned to pool.
+     */
+    private File write(LoadedChunk chunk) throws IOException {
+        File chunkOfFile = runFiles.createRun(
+                "mrgsrt" + "_s_" + splitNumber.getAndIncrement() + "_");
+        try {
+            if (chunk.lineChunks != null)
+                writeLineChunks(chunk.lineChunks, chunkOfFile);
+            else
+                writeStrings(chunk.strings, chunkOfFile);
+        } finally {
+            if (chunk.directArena != null)
+                getArenaPool().release(chunk.directArena);
         }
-
         return chunkOfFile;
-
     }
 
-    @Override
-    public void run() {
-        Thread thread = Thread.currentThread();
-
-        synchronized (threadSet) {
-            threadSet.add(thread);
+    /*
+     * Equal neighbours of sorted lines are written once if it is set (-u).
+     */
+    private void writeLineChunks(List<LineChunk> lineChunks, File chunkOfFile)
+            throws IOException {
+        DuplicateFilter duplicates = config.isUnique() ? new DuplicateFilter()
+                : null;
+        try (OutputStream bos = runFiles.openOutput(chunkOfFile, true)) {
+            if (lineChunks.size() == 1 && duplicates == null) {
+                lineChunks.get(0).writeTo(bos);
+            } else if (lineChunks.size() >= 1) {
+                LineCursor[] cursors = new LineCursor[lineChunks.size()];
+                for (int i = 0; i < cursors.length; i++) {
+                    cursors[i] = lineChunks.get(i).cursor();
+                }
+                new LoserTree(cursors).mergeTo(bos, duplicates);
+            }
         }
+        if (duplicates != null)
+            job.addDuplicates(duplicates.getDuplicates());
+    }
 
-        synchronized (this) {
-            long freeMemory = Runtime.getRuntime().freeMemory();
-            long requestedMemory = Utils.getMaxChunkFileLength()
-                    * threadSet.size();
+    private void writeStrings(List<String> strings, File chunkOfFile)
+            throws IOException {
+        long duplicates = 0;
+        try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(
+                runFiles.openOutput(chunkOfFile, true)))) {
+            String previous = null;
+            for (int i = 0; i < strings.size(); i++) {
+                String line = strings.get(i);
+                strings.set(i, null);
+                if (config.isUnique() && line.equals(previous)) {
+                    duplicates++;
+                    continue;
+                }
+                bw.write(line);
+                bw.newLine();
+                previous = line;
+            }
+        }
+        job.addDuplicates(duplicates);
+    }
 
-            if (Utils.isVerbose()) {
-                System.out.println("mergesort: " + new Date()
-                        + " : SplitterSorter. freeMemory (Byte): " + freeMemory
-                        + " requested(Byte): " + +requestedMemory);
+    /**
+     * Starts sorting of all chunks of source file: chunks from
+     * {@link SortJob#getPointsForSplittingQueue()}, chunks which are read from
+     * source stream (-I sequential) or runs of replacement selection (-g
+     * replacement). Number of chunks is stored in job
+     * ({@link SortJob#getNumberOfSplittingIntervals()}) when all chunks are
+     * started. Every chunk waits for memory from {@link MemoryBroker} of
+     * configuration before it is loaded.
+     *
+     * @param executor
+     *            - executor for sort tasks, at most -p tasks are running at
+     *            the same time
+     * @param runConsumer
+     *            - receives every sorted run, it is called by sort task
+     * @return future which is completed when all runs are passed to consumer
+     *         or exceptionally as soon as one of tasks fails
+     */
+    public CompletableFuture<Void> sortAll(Executor executor,
+            Consumer<File> runConsumer) {
+        CompletableFuture<Void> sorted = new CompletableFuture<>();
+
+        if (config.getRunGeneration() == RunGeneration.REPLACEMENT) {
+            /*
+             * Source is read by one task, there is nothing for other sorters.
+             * Buffers of the current run are reserved besides the heap.
+             */
+            long memory = config.getMaxChunkFileLength();
+            long run = runFiles.outputBufferSize(true);
+            submit(executor, sorted,
+                    memoryBroker.reserve(memory / MAX_CHUNK_SHRINK + run,
+                            memory + run),
+                    reservation -> generateRuns(config.getSourceFile(),
+                            runConsumer,
+                            Math.max(memory / MAX_CHUNK_SHRINK,
+                                    reservation.getBytes() - run)))
+                    .thenRun(() -> complete(sorted, null));
+        } else if (job.getInputMode() == InputMode.SEQUENTIAL) {
+            new MergerSortThreadFactory().newThread(
+                    () -> produceChunks(executor, runConsumer, sorted))
+                    .start();
+        } else {
+            Queue<Tuple<Long, Long>> points = job
+                    .getPointsForSplittingQueue();
+            job.setNumberOfSplittingIntervals(points.size());
+            if (config.isPipelined()) {
+                new Pipeline(executor, points, runConsumer, sorted)
+                        .startLoad();
+                return sorted;
             }
-            if (requestedMemory * 6 > freeMemory) {
-                synchronized (threadSet) {
-                    if (threadSet.size() > 1) {
-                        if (Utils.isVerbose()) {
-                            System.out.println("mergesort: " + new Date()
-                                    + " : " + thread
-                                    + " : SplitterSorter stop execution");
-                        }
-                        threadSet.remove(thread);
-                        return;
-                    }
-                }
+            AtomicInteger unsortedChunks = new AtomicInteger(points.size());
+            for (int i = 0; i < config.getMaxSplitterThreads(); i++) {
+                sortNextInterval(executor, points, unsortedChunks,
+                        runConsumer, sorted);
             }
         }
+        return sorted;
+    }
 
-        Semaphore setOfChunksReadySemaphore = Utils
-                .getSetofchunksreadysemaphore();
+    /*
+     * Chunks of intervals go through three steps: one loader reads the next
+     * chunk as soon as the previous one is read, -p sorters sort loaded
+     * chunks and one writer writes sorted ones, so disk and cores work at the
+     * same time. Chunk holds its memory from loading to the end of writing,
+     * not more than -p + 2 chunks are in memory.
+     */
+    private final class Pipeline {
 
-        BlockingQueue<Tuple<Long, Long>> points = Utils
-                .getPointsForSplittingQueue();
+        private final Queue<Tuple<Long, Long>> points;
 
-        Queue<File> chunks = Utils.getSortedChunksQueue();
+        private final Consumer<File> runConsumer;
 
-        File file = Utils.getSourceFile();
+        private final CompletableFuture<Void> sorted;
 
-        while (Utils.numberOfSplittingIntervals.get() != numberOfSortedChunks
-                .get()) {
-            Tuple<Long, Long> point = null;
+        private final Executor loadExecutor;
 
-            try {
-                point = points.poll(10, TimeUnit.SECONDS);
-            } catch (InterruptedException e1) {
-            }
+        private final Executor sortExecutor;
+
+        private final Executor writeExecutor;
+
+        private final int maxChunksInMemory;
 
-            if (point != null) {
+        private boolean loading;
 
-                long start = point.getT1();
-                long end = point.getT2();
+        private int chunksInMemory;
 
-                File chunkOfFile;
+        private int unsortedChunks;
+
+        private Pipeline(Executor executor, Queue<Tuple<Long, Long>> points,
+                Consumer<File> runConsumer, CompletableFuture<Void> sorted) {
+            this.points = points;
+            this.runConsumer = runConsumer;
+            this.sorted = sorted;
+            this.loadExecutor = new LimitedExecutor(executor, 1);
+            this.sortExecutor = new LimitedExecutor(executor,
+                    config.getMaxSplitterThreads());
+            this.writeExecutor = new LimitedExecutor(executor, 1);
+            this.maxChunksInMemory = config.getMaxSplitterThreads() + 2;
+            this.unsortedChunks = points.size();
+        }
+
+        /*
+         * Starts loading of the next chunk if loader is free and there is
+         * place for chunk.
+         */
+        private void startLoad() {
+            Tuple<Long, Long> interval;
+            synchronized (this) {
+                if (loading || chunksInMemory >= maxChunksInMemory
+                        || sorted.isDone())
+                    return;
+                interval = points.poll();
+                if (interval == null)
+                    return;
+                loading = true;
+                chunksInMemory++;
+            }
+            File file = config.getSourceFile();
+            CompletableFuture<MemoryBroker.Reservation> memory = memoryBroker
+                    .reserve(chunkMemory(interval.getT2() - interval.getT1()));
+            memory.thenApplyAsync(reservation -> {
                 try {
-                    chunkOfFile = splitAndSortFile(file, start, end);
+                    return load(file, interval.getT1(), interval.getT2(),
+                            reservation);
                 } catch (IOException e) {
                     throw new RuntimeException(e);
                 }
-                chunks.offer(chunkOfFile);
-                Utils.numberOfChunksForMerging.getAndIncrement();
-                numberOfSortedChunks.getAndIncrement();
+            }, loadExecutor).whenComplete((chunk, e) -> {
+                synchronized (this) {
+                    loading = false;
+                }
+                if (e == null)
+                    startLoad();
+            }).thenApplyAsync(SplitterSorter.this::sort, sortExecutor)
+                    .thenApplyAsync(chunk -> {
+                        try {
+                            return write(chunk);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }, writeExecutor).whenComplete((run, e) -> {
+                        memory.thenAccept(MemoryBroker.Reservation::close);
+                        if (e != null) {
+                            complete(sorted, e);
+                            return;
+                        }
+                        publishChunk(run, interval.getT1() + " "
+                                + interval.getT2(), runConsumer);
+                        boolean lastChunk;
+                        synchronized (this) {
+                            chunksInMemory--;
+                            lastChunk = --unsortedChunks == 0;
+                        }
+                        if (lastChunk)
+                            complete(sorted, null);
+                        else
+                            startLoad();
+                    });
+        }
+    }
 
-                Utils.updateSetOfChunksSemaphore();
+    /*
+     * Every one of -p sorters takes the next interval when its chunk is
+     * sorted, so only chunks which are being sorted wait for memory.
+     */
+    private void sortNextInterval(Executor executor,
+            Queue<Tuple<Long, Long>> points, AtomicInteger unsortedChunks,
+            Consumer<File> runConsumer, CompletableFuture<Void> sorted) {
+        Tuple<Long, Long> interval = points.poll();
+        if (interval == null || sorted.isDone())
+            return;
+        File file = config.getSourceFile();
+        long memory = chunkMemory(interval.getT2() - interval.getT1());
+        submit(executor, sorted, memoryBroker.reserve(memory),
+                reservation -> {
+                    File run = splitAndSortFile(file, interval.getT1(),
+                            interval.getT2(), reservation);
+                    publishChunk(run, interval.getT1() + " "
+                            + interval.getT2(), runConsumer);
+                }).thenRun(() -> {
+                    if (unsortedChunks.decrementAndGet() == 0)
+                        complete(sorted, null);
+                    else
+                        sortNextInterval(executor, points, unsortedChunks,
+                                runConsumer, sorted);
+                });
+    }
+
+    /*
+     * Reads source stream by ChunkProducer in separate thread. Producer waits
+     * for memory before reading of the next chunk, so chunks which are
+     * waiting for sorters don't exceed memory budget.
+     */
+    private void produceChunks(Executor executor, Consumer<File> runConsumer,
+            CompletableFuture<Void> sorted) {
+        File file = config.getSourceFile();
+        ChunkSorter chunkSorter = new ChunkSorter(
+                new LimitedExecutor(executor, config.getMaxSplitterThreads()),
+                runConsumer, sorted);
+        Throwable failure = null;
+        try (InputStream in = openSource(file)) {
+            int numberOfChunks = new ChunkProducer(in,
+                    config.getMaxChunkFileLength(), chunkSorter).produce();
+            job.setNumberOfSplittingIntervals(numberOfChunks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = e;
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+        } finally {
+            chunkSorter.release();
+        }
+        /*
+         * Sorting fails after submitted chunks are sorted, so the sort pool
+         * is not shut down under them.
+         */
+        Throwable producerFailure = failure;
+        CompletableFuture
+                .allOf(chunkSorter.tasks.toArray(new CompletableFuture<?>[0]))
+                .whenComplete((result, e) -> complete(sorted,
+                        producerFailure != null ? producerFailure : e));
+    }
+
+    /*
+     * Opens source file or standard input if file is null. Standard input is
+     * not closed when returned stream is closed.
+     */
+    private static InputStream openSource(File file) throws IOException {
+        if (file != null)
+            return new FileInputStream(file);
+        return new FilterInputStream(System.in) {
 
-                if (Utils.isVerbose())
-                    System.out.println("mergesort: " + new Date()
-                            + " : SplitterSorter made and sorted chunk: "
-                            + start + " " + end + " " + chunkOfFile);
+            @Override
+            public void close() {
             }
+        };
+    }
+
+    /*
+     * Reserves memory for every chunk before it is read and sorts read
+     * chunks. Chunk is shorter than -m if there is not enough memory for it.
+     */
+    private final class ChunkSorter implements ChunkProducer.ChunkSink {
+
+        private final Executor sortExecutor;
+
+        private final Consumer<File> runConsumer;
+
+        private final CompletableFuture<Void> sorted;
+
+        private final List<CompletableFuture<Void>> tasks = new ArrayList<>();
+
+        /*
+         * Memory of the chunk which is being read.
+         */
+        private MemoryBroker.Reservation reservation;
+
+        private ChunkSorter(Executor sortExecutor,
+                Consumer<File> runConsumer, CompletableFuture<Void> sorted) {
+            this.sortExecutor = sortExecutor;
+            this.runConsumer = runConsumer;
+            this.sorted = sorted;
         }
 
-        if (Utils.numberOfSplittingIntervals.get() == numberOfSortedChunks.get()
-                && Utils.allChunksSorted.compareAndSet(false, true)) {
-            allChanksSortedSemaphore.release();
-            setOfChunksReadySemaphore.release();
-            if (Utils.isVerbose())
-                System.out.println("mergesort: " + new Date()
-                        + " : SplitterSorter completely splitted and sorted all chunks of file");
+        @Override
+        public long nextChunkLength(long chunkLength)
+                throws InterruptedException {
+            long memory = chunkMemory(chunkLength);
+            try {
+                reservation = memoryBroker
+                        .reserve(memory / MAX_CHUNK_SHRINK, memory).get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+            return Math.max(1, (long) ((double) chunkLength
+                    * reservation.getBytes() / memory));
+        }
+
+        @Override
+        public void accept(ByteBuffer chunk) throws InterruptedException {
+            MemoryBroker.Reservation chunkReservation = reservation;
+            reservation = null;
+            if (sorted.isDone()) {
+                chunkReservation.close();
+                throw new InterruptedException("Sorting is failed");
+            }
+            tasks.add(submit(sortExecutor, sorted,
+                    CompletableFuture.completedFuture(chunkReservation),
+                    r -> publishChunk(sortChunk(chunk, r),
+                            Integer.toString(chunk.remaining()),
+                            runConsumer)));
+        }
+
+        /*
+         * Releases memory of the last buffer if it was not passed to sorter.
+         */
+        private void release() {
+            if (reservation != null)
+                reservation.close();
         }
+    }
+
+    /*
+     * Sort task is started when memory is reserved, memory is released when
+     * task ends. Task fails sorting of all chunks at once.
+     */
+    private CompletableFuture<Void> submit(Executor executor,
+            CompletableFuture<Void> sorted,
+            CompletableFuture<MemoryBroker.Reservation> memory,
+            SortTask task) {
+        return memory.thenAcceptAsync(reservation -> {
+            try (MemoryBroker.Reservation r = reservation) {
+                task.run(r);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }, executor).whenComplete((result, e) -> {
+            if (e != null)
+                complete(sorted, e);
+        });
+    }
 
-        synchronized (threadSet) {
-            threadSet.remove(thread);
+    private void complete(CompletableFuture<Void> sorted,
+            Throwable e) {
+        shutdownSortPool();
+        if (e != null) {
+            sorted.completeExceptionally(e);
+            return;
         }
+        if (sorted.complete(null) && config.isVerbose())
+            System.out.println("mergesort: " + new Date()
+                    + " : SplitterSorter completely splitted and sorted all chunks of file"
+                    + (arenaPool == null ? ""
+                            : ", direct arenas (Byte): "
+                                    + arenaPool.getAllocatedBytes()));
+    }
 
+    private interface SortTask {
+
+        void run(MemoryBroker.Reservation reservation) throws IOException;
+    }
+
+    /*
+     * Passes sorted chunk to merger.
+     */
+    private void publishChunk(File chunkOfFile, String chunkDescription,
+            Consumer<File> runConsumer) {
+        numberOfSortedChunks.getAndIncrement();
+        if (config.isVerbose())
+            System.out.println("mergesort: " + new Date()
+                    + " : SplitterSorter made and sorted chunk: "
+                    + chunkDescription + " " + chunkOfFile);
+        runConsumer.accept(chunkOfFile);
+    }
+
+    /*
+     * Reads whole source (standard input if file is null) and makes runs by
+     * replacement selection. Number of runs is known at the end only.
+     */
+    private void generateRuns(File file, Consumer<File> runConsumer,
+            long memory) {
+        ReplacementSelection replacementSelection = new ReplacementSelection(
+                memory, config.getChunkSortAlgorithm(), config.isUnique(),
+                runFiles);
+        int numberOfRuns;
+        try (InputStream in = openSource(file)) {
+            numberOfRuns = replacementSelection.generateRuns(in,
+                    run -> publishChunk(run, "replacement selection run",
+                            runConsumer));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        job.addDuplicates(replacementSelection.getDuplicates());
+        job.setNumberOfSplittingIntervals(numberOfRuns);
     }
 
     public static long findStartOfNextLine(long startPosition, File testFile)
@@ -210,11 +772,9 @@ public class SplitterSorter implements Runnable {
         try (LimitedBufferedFilterInputStream lfis = new LimitedBufferedFilterInputStream(
                 new FileInputStream(testFile))) {
             lfis.setPosition(startPosition);
-            int readedByte;
-            while ((readedByte = lfis.read()) != -1 && readedByte != '\n')
-                ;
-            if (readedByte == -1)
+            if (!lfis.skipLine())
                 return -1;
+            int readedByte;
             while ((readedByte = lfis.read()) != -1 && readedByte < ' ')
                 ;
             if (readedByte == -1)
@@ -0,0 +1,230 @@
+package mergesort.concurrent;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mergesort.concurrent.io.IoMeter;
+import mergesort.concurrent.io.MeteredInputStream;
+import mergesort.concurrent.io.MeteredOutputStream;
+
+/**
+ * Directories for temporary runs (-t), usually on different devices. Runs
+ * are striped across directories: new run is created in the directory with
+ * the least number of runs which are being written, then with the least
+ * written bytes, directories are tried in turn. Merged run is created
+ * outside of directories of its inputs if it is possible, so reads and
+ * writes of merge go to different devices. Bytes and time of reads and
+ * writes are counted for every directory. Directory whose file system
+ * rejects direct I/O is remembered, its runs are read and written through
+ * page cache.
+ *
+ * @version 0.4
+ */
+public class TempDirectories {
+
+    private final List<Directory> directories;
+
+    private final Map<File, Directory> directoriesByFile = new HashMap<>();
+
+    private final AtomicInteger nextDirectory = new AtomicInteger();
+
+    /**
+     * @param files
+     *            - directories, system temporary directory is used if list
+     *            is empty
+     */
+    public TempDirectories(List<File> files) {
+        if (files.isEmpty())
+            files = Collections.singletonList(
+                    new File(System.getProperty("java.io.tmpdir")));
+        List<Directory> directories = new ArrayList<>();
+        for (File file : files) {
+            File absoluteFile = file.getAbsoluteFile();
+            if (directoriesByFile.containsKey(absoluteFile))
+                continue;
+            Directory directory = new Directory(absoluteFile);
+            directories.add(directory);
+            directoriesByFile.put(absoluteFile, directory);
+        }
+        this.directories = Collections.unmodifiableList(directories);
+    }
+
+    public List<Directory> getDirectories() {
+        return directories;
+    }
+
+    /**
+     * Creates empty temporary run in the least loaded directory.
+     */
+    public File createTempFile(String prefix) throws IOException {
+        return createTempFile(prefix, Collections.<File> emptyList());
+    }
+
+    /**
+     * Creates empty temporary run in the least loaded directory which does
+     * not contain inputs. If all directories contain inputs, any directory
+     * is chosen.
+     *
+     * @param inputs
+     *            - runs which are read while the new run is written
+     */
+    public File createTempFile(String prefix, Collection<File> inputs)
+            throws IOException {
+        Set<Directory> avoided = new HashSet<>();
+        for (File input : inputs) {
+            Directory directory = directoryOf(input);
+            if (directory != null)
+                avoided.add(directory);
+        }
+        if (avoided.size() == directories.size())
+            avoided.clear();
+        return File.createTempFile(prefix, null, choose(avoided).file);
+    }
+
+    private Directory choose(Set<Directory> avoided) {
+        int size = directories.size();
+        int first = Math.floorMod(nextDirectory.getAndIncrement(), size);
+        Directory chosen = null;
+        for (int i = 0; i < size; i++) {
+            Directory directory = directories.get((first + i) % size);
+            if (avoided.contains(directory))
+                continue;
+            if (chosen == null || directory.isLessLoaded(chosen))
+                chosen = directory;
+        }
+        return chosen;
+    }
+
+    /**
+     * @return directory of run or null if run is not in one of directories
+     */
+    public Directory directoryOf(File run) {
+        File parent = run.getAbsoluteFile().getParentFile();
+        return parent == null ? null : directoriesByFile.get(parent);
+    }
+
+    /**
+     * @return true if run is in one of directories and file system of
+     *         directory did not reject direct I/O
+     */
+    boolean isDirectIoAllowed(File run) {
+        Directory directory = directoryOf(run);
+        return directory != null && !directory.directIoRejected;
+    }
+
+    /**
+     * Remembers that file system of directory of run rejects direct I/O.
+     */
+    void rejectDirectIo(File run) {
+        Directory directory = directoryOf(run);
+        if (directory != null)
+            directory.directIoRejected = true;
+    }
+
+    /**
+     * Counts writes of stream if run is in one of directories.
+     */
+    OutputStream meter(File run, OutputStream out) {
+        Directory directory = directoryOf(run);
+        if (directory == null)
+            return out;
+        directory.runs.incrementAndGet();
+        directory.writers.incrementAndGet();
+        return new MeteredOutputStream(out, directory.written) {
+
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (!closed) {
+                        closed = true;
+                        directory.writers.decrementAndGet();
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Counts reads of stream if run is in one of directories.
+     */
+    InputStream meter(File run, InputStream in) {
+        Directory directory = directoryOf(run);
+        if (directory == null)
+            return in;
+        return new MeteredInputStream(in, directory.read);
+    }
+
+    /**
+     * Directory for temporary runs and its counters.
+     */
+    public static final class Directory {
+
+        private final File file;
+
+        private final IoMeter written = new IoMeter();
+
+        private final IoMeter read = new IoMeter();
+
+        private final AtomicInteger runs = new AtomicInteger();
+
+        /*
+         * Runs which are being written.
+         */
+        private final AtomicInteger writers = new AtomicInteger();
+
+        private volatile boolean directIoRejected;
+
+        private Directory(File file) {
+            this.file = file;
+        }
+
+        private boolean isLessLoaded(Directory other) {
+            int writers = this.writers.get();
+            int otherWriters = other.writers.get();
+            if (writers != otherWriters)
+                return writers < otherWriters;
+            return written.getBytes() < other.written.getBytes();
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * @return number of runs which were written to directory
+         */
+        public int getNumberOfRuns() {
+            return runs.get();
+        }
+
+        public IoMeter getWritten() {
+            return written;
+        }
+
+        public IoMeter getRead() {
+            return read;
+        }
+
+        /**
+         * @return true if file system of directory rejected direct I/O
+         */
+        public boolean isDirectIoRejected() {
+            return directIoRejected;
+        }
+    }
+}
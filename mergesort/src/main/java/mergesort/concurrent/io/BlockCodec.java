@@ -0,0 +1,32 @@
+package mergesort.concurrent.io;
+
+import java.io.IOException;
+
+/**
+ * Compression of one block of bytes. Codec instance keeps its working memory
+ * between blocks and is used by one thread.
+ *
+ * @version 0.4
+ */
+public interface BlockCodec {
+
+    /**
+     * @return size of destination array which is enough for compressed block
+     *         of given length
+     */
+    int maxCompressedLength(int length);
+
+    /**
+     * @return length of compressed data in dst
+     */
+    int compress(byte[] src, int srcLength, byte[] dst);
+
+    /**
+     * Decompresses block, dstLength is the length of uncompressed block.
+     *
+     * @throws IOException
+     *             if compressed data is corrupted
+     */
+    void decompress(byte[] src, int srcLength, byte[] dst, int dstLength)
+            throws IOException;
+}
@@ -0,0 +1,204 @@
+package mergesort.concurrent.io;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads data written by {@link BlockCompressedOutputStream}. Blocks which are
+ * skipped entirely are not decoded, stream can start at any block (see
+ * {@link BlockCompressedReader#openRegion}) and can be limited to a number of
+ * uncompressed bytes, so regions of compressed runs are read without
+ * decoding of the whole run.
+ *
+ * @version 0.4
+ */
+public class BlockCompressedInputStream extends InputStream {
+
+    private final DataInputStream in;
+
+    private final BlockCodec codec;
+
+    private byte[] block = new byte[BlockCompressedOutputStream.BLOCK_SIZE];
+
+    private byte[] compressed = new byte[0];
+
+    private int position;
+
+    private int limit;
+
+    /*
+     * Uncompressed bytes which can be read yet.
+     */
+    private long remaining;
+
+    private boolean endOfBlocks;
+
+    /*
+     * Header of the next block: length of uncompressed data and length of
+     * stored data with the flag of stored block.
+     */
+    private int nextLength;
+
+    private int nextStoredLength;
+
+    private boolean headerRead;
+
+    public BlockCompressedInputStream(InputStream in, BlockCodec codec) {
+        this(in, codec, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param in
+     *            - stream which is positioned at header of a block
+     * @param length
+     *            - maximum number of uncompressed bytes which are read
+     */
+    public BlockCompressedInputStream(InputStream in, BlockCodec codec,
+            long length) {
+        if (length < 0)
+            throw new IllegalArgumentException(
+                    "Length should not be negative");
+        this.in = new DataInputStream(in);
+        this.codec = codec;
+        this.remaining = length;
+    }
+
+    /*
+     * @return false at the end of blocks
+     */
+    private boolean readHeader() throws IOException {
+        if (headerRead)
+            return true;
+        if (endOfBlocks)
+            return false;
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            endOfBlocks = true;
+            return false;
+        }
+        if (length == BlockCompressedOutputStream.END_OF_BLOCKS) {
+            endOfBlocks = true;
+            return false;
+        }
+        int storedLength = in.readInt();
+        int storedBytes = storedLength
+                & ~BlockCompressedOutputStream.STORED_FLAG;
+        if (length < 0 || storedBytes > codec.maxCompressedLength(length))
+            throw new IOException("Corrupted block header");
+        nextLength = length;
+        nextStoredLength = storedLength;
+        headerRead = true;
+        return true;
+    }
+
+    /*
+     * @return false at the end of stream
+     */
+    private boolean readBlock() throws IOException {
+        if (!readHeader())
+            return false;
+        headerRead = false;
+        int length = nextLength;
+        boolean stored = (nextStoredLength
+                & BlockCompressedOutputStream.STORED_FLAG) != 0;
+        int storedLength = nextStoredLength
+                & ~BlockCompressedOutputStream.STORED_FLAG;
+        if (block.length < length)
+            block = new byte[length];
+        if (stored) {
+            in.readFully(block, 0, length);
+        } else {
+            if (compressed.length < storedLength)
+                compressed = new byte[codec.maxCompressedLength(block.length)];
+            in.readFully(compressed, 0, storedLength);
+            codec.decompress(compressed, storedLength, block, length);
+        }
+        position = 0;
+        limit = length;
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (remaining == 0)
+            return -1;
+        while (position == limit) {
+            if (!readBlock())
+                return -1;
+        }
+        remaining--;
+        return block[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        if (remaining == 0)
+            return -1;
+        while (position == limit) {
+            if (!readBlock())
+                return -1;
+        }
+        int count = (int) Math.min(Math.min(len, limit - position),
+                remaining);
+        System.arraycopy(block, position, b, off, count);
+        position += count;
+        remaining -= count;
+        return count;
+    }
+
+    /**
+     * Skips n bytes or less at the end of stream. Blocks which are skipped
+     * entirely are not decoded.
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        n = Math.min(n, remaining);
+        while (skipped < n) {
+            if (position < limit) {
+                int count = (int) Math.min(n - skipped, limit - position);
+                position += count;
+                skipped += count;
+            } else if (!readHeader()) {
+                break;
+            } else if (nextLength <= n - skipped) {
+                headerRead = false;
+                skipStored(nextStoredLength
+                        & ~BlockCompressedOutputStream.STORED_FLAG);
+                skipped += nextLength;
+            } else {
+                readBlock();
+            }
+        }
+        remaining -= skipped;
+        return skipped;
+    }
+
+    private void skipStored(int n) throws IOException {
+        while (n > 0) {
+            long skipped = in.skip(n);
+            if (skipped <= 0) {
+                if (in.read() == -1)
+                    throw new EOFException("Block is truncated");
+                skipped = 1;
+            }
+            n -= skipped;
+        }
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(limit - position, remaining);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
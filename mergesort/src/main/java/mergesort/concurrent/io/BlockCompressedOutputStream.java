@@ -0,0 +1,160 @@
+package mergesort.concurrent.io;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Writes data as a sequence of independently compressed blocks. Every block
+ * has header of two big-endian ints: length of uncompressed data and length
+ * of stored data, the high bit of the second int is set if block is stored
+ * uncompressed (compression didn't make it shorter). Block can be decoded
+ * without decoding of other blocks.
+ *
+ * Blocks are followed by the end marker (header with length -1) and the
+ * index of blocks: offset of every block in file and offset of its
+ * uncompressed data (two longs per block), then length of uncompressed data
+ * (long), number of blocks (int) and {@link #INDEX_MAGIC} (int). So
+ * {@link BlockCompressedReader} finds the block of any position of
+ * uncompressed data by the end of file.
+ *
+ * @version 0.4
+ */
+public class BlockCompressedOutputStream extends OutputStream {
+
+    public static final int BLOCK_SIZE = 256 * 1024;
+
+    static final int STORED_FLAG = 0x80000000;
+
+    /*
+     * Length in header of the end marker which follows the last block.
+     */
+    static final int END_OF_BLOCKS = -1;
+
+    static final int INDEX_MAGIC = 0x4D524958;
+
+    /*
+     * Length of uncompressed data, number of blocks and magic.
+     */
+    static final int INDEX_FOOTER_SIZE = 16;
+
+    /*
+     * Offset in file and offset of uncompressed data of block.
+     */
+    static final int INDEX_ENTRY_SIZE = 16;
+
+    private final DataOutputStream out;
+
+    private final BlockCodec codec;
+
+    private final byte[] block;
+
+    private final byte[] compressed;
+
+    private int length;
+
+    private boolean closed;
+
+    /*
+     * Bytes which were written to out.
+     */
+    private long storedPosition;
+
+    private long uncompressedPosition;
+
+    private long[] blockOffsets = new long[16];
+
+    private long[] blockUncompressedOffsets = new long[16];
+
+    private int numberOfBlocks;
+
+    public BlockCompressedOutputStream(OutputStream out, BlockCodec codec) {
+        this.out = new DataOutputStream(out);
+        this.codec = codec;
+        block = new byte[BLOCK_SIZE];
+        compressed = new byte[codec.maxCompressedLength(BLOCK_SIZE)];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (length == block.length)
+            writeBlock();
+        block[length++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (length == block.length)
+                writeBlock();
+            int count = Math.min(len, block.length - length);
+            System.arraycopy(b, off, block, length, count);
+            length += count;
+            off += count;
+            len -= count;
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        if (closed)
+            throw new IOException("Stream is closed");
+        if (length == 0)
+            return;
+        if (numberOfBlocks == blockOffsets.length) {
+            blockOffsets = Arrays.copyOf(blockOffsets, 2 * numberOfBlocks);
+            blockUncompressedOffsets = Arrays.copyOf(blockUncompressedOffsets,
+                    2 * numberOfBlocks);
+        }
+        blockOffsets[numberOfBlocks] = storedPosition;
+        blockUncompressedOffsets[numberOfBlocks] = uncompressedPosition;
+        numberOfBlocks++;
+        int compressedLength = codec.compress(block, length, compressed);
+        out.writeInt(length);
+        if (compressedLength < length) {
+            out.writeInt(compressedLength);
+            out.write(compressed, 0, compressedLength);
+            storedPosition += 8 + compressedLength;
+        } else {
+            out.writeInt(length | STORED_FLAG);
+            out.write(block, 0, length);
+            storedPosition += 8 + length;
+        }
+        uncompressedPosition += length;
+        length = 0;
+    }
+
+    /**
+     * Writes incomplete block, so blocks are shorter than BLOCK_SIZE after
+     * flush.
+     */
+    @Override
+    public void flush() throws IOException {
+        writeBlock();
+        out.flush();
+    }
+
+    private void writeIndex() throws IOException {
+        out.writeInt(END_OF_BLOCKS);
+        for (int i = 0; i < numberOfBlocks; i++) {
+            out.writeLong(blockOffsets[i]);
+            out.writeLong(blockUncompressedOffsets[i]);
+        }
+        out.writeLong(uncompressedPosition);
+        out.writeInt(numberOfBlocks);
+        out.writeInt(INDEX_MAGIC);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        try {
+            writeBlock();
+            writeIndex();
+        } finally {
+            closed = true;
+            out.close();
+        }
+    }
+}
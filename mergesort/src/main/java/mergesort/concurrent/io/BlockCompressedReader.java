@@ -0,0 +1,179 @@
+package mergesort.concurrent.io;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.function.UnaryOperator;
+
+/**
+ * Random access to file written by {@link BlockCompressedOutputStream}. Index
+ * of blocks is read from the end of file, so byte at any position of
+ * uncompressed data is read by decoding of one block, and region of
+ * uncompressed data is read from the block which contains its start. The
+ * last decoded block is kept for reads of near positions. Reader is not
+ * thread safe, but streams of regions are independent and can be read by
+ * different threads at the same time.
+ *
+ * @version 0.4
+ */
+public class BlockCompressedReader {
+
+    private final FileChannel channel;
+
+    private final BlockCodec codec;
+
+    private final long length;
+
+    /*
+     * Offset of the end marker which follows the last block.
+     */
+    private final long endOfBlocks;
+
+    private final long[] blockOffsets;
+
+    private final long[] blockUncompressedOffsets;
+
+    /*
+     * The last decoded block.
+     */
+    private int cachedBlock = -1;
+
+    private byte[] block = new byte[0];
+
+    private int blockLength;
+
+    /**
+     * Reads index of blocks, channel is not closed by reader.
+     */
+    public BlockCompressedReader(FileChannel channel, BlockCodec codec)
+            throws IOException {
+        this.channel = channel;
+        this.codec = codec;
+        long size = channel.size();
+        if (size < BlockCompressedOutputStream.INDEX_FOOTER_SIZE + 4)
+            throw new IOException("There is no index of blocks");
+        ByteBuffer footer = read(
+                size - BlockCompressedOutputStream.INDEX_FOOTER_SIZE,
+                BlockCompressedOutputStream.INDEX_FOOTER_SIZE);
+        length = footer.getLong();
+        int numberOfBlocks = footer.getInt();
+        if (footer.getInt() != BlockCompressedOutputStream.INDEX_MAGIC
+                || numberOfBlocks < 0 || length < 0)
+            throw new IOException("Corrupted index of blocks");
+        long indexOffset = size - BlockCompressedOutputStream.INDEX_FOOTER_SIZE
+                - (long) numberOfBlocks
+                        * BlockCompressedOutputStream.INDEX_ENTRY_SIZE;
+        endOfBlocks = indexOffset - 4;
+        if (endOfBlocks < 0)
+            throw new IOException("Corrupted index of blocks");
+        ByteBuffer index = read(indexOffset, numberOfBlocks
+                * BlockCompressedOutputStream.INDEX_ENTRY_SIZE);
+        blockOffsets = new long[numberOfBlocks];
+        blockUncompressedOffsets = new long[numberOfBlocks];
+        for (int i = 0; i < numberOfBlocks; i++) {
+            blockOffsets[i] = index.getLong();
+            blockUncompressedOffsets[i] = index.getLong();
+        }
+    }
+
+    /**
+     * @return length of uncompressed data
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * @return number of blocks
+     */
+    public int getNumberOfBlocks() {
+        return blockOffsets.length;
+    }
+
+    /*
+     * @return block which contains position of uncompressed data, position
+     * must be less than length
+     */
+    private int blockOf(long position) {
+        int i = Arrays.binarySearch(blockUncompressedOffsets, position);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    /**
+     * Reads uncompressed bytes from position as FileChannel.read does.
+     *
+     * @return number of read bytes or -1 if position is not less than length
+     */
+    public int read(ByteBuffer destination, long position)
+            throws IOException {
+        if (position >= length)
+            return -1;
+        int i = blockOf(position);
+        if (i != cachedBlock) {
+            decode(i);
+        }
+        int offset = (int) (position - blockUncompressedOffsets[i]);
+        int count = Math.min(destination.remaining(), blockLength - offset);
+        destination.put(block, offset, count);
+        return count;
+    }
+
+    private void decode(int i) throws IOException {
+        boolean last = i + 1 == blockOffsets.length;
+        long end = last ? endOfBlocks : blockOffsets[i + 1];
+        blockLength = (int) ((last ? length : blockUncompressedOffsets[i + 1])
+                - blockUncompressedOffsets[i]);
+        if (block.length < blockLength)
+            block = new byte[blockLength];
+        try (DataInputStream in = new DataInputStream(
+                new BlockCompressedInputStream(new FileRegionInputStream(
+                        channel, blockOffsets[i], end), codec))) {
+            in.readFully(block, 0, blockLength);
+        }
+        cachedBlock = i;
+    }
+
+    /**
+     * Opens stream of uncompressed data from start (inclusive) to end
+     * (exclusive), it reads file from the block of start.
+     *
+     * @param codec
+     *            - codec of stream, codecs are not shared between threads
+     * @param stored
+     *            - wraps stream of stored blocks, for example to read them
+     *            ahead
+     */
+    public InputStream openRegion(long start, long end, BlockCodec codec,
+            UnaryOperator<InputStream> stored) throws IOException {
+        if (start < 0 || end < start || end > length)
+            throw new IllegalArgumentException(
+                    "Wrong region: " + start + " " + end);
+        if (start == end)
+            return new BlockCompressedInputStream(
+                    new FileRegionInputStream(channel, endOfBlocks,
+                            endOfBlocks),
+                    codec, 0);
+        int i = blockOf(start);
+        InputStream in = new BlockCompressedInputStream(
+                stored.apply(new FileRegionInputStream(channel,
+                        blockOffsets[i], endOfBlocks)),
+                codec, end - blockUncompressedOffsets[i]);
+        long skip = start - blockUncompressedOffsets[i];
+        if (in.skip(skip) != skip)
+            throw new IOException("Block is truncated");
+        return in;
+    }
+
+    private ByteBuffer read(long position, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("Index of blocks is truncated");
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
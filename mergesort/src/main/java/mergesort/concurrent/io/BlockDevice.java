@@ -0,0 +1,69 @@
+package mergesort.concurrent.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Properties of block device of file which are read from sysfs of Linux.
+ *
+ * @version 0.4
+ */
+public final class BlockDevice {
+
+    private static final String DEVICE_DIRECTORY = "/dev/";
+
+    private static final Path SYS_CLASS_BLOCK = Paths.get("/sys/class/block");
+
+    private BlockDevice() {
+    }
+
+    /**
+     * @return true if file is on rotational disk, false if it is not or it is
+     *         unknown: other OS, network or virtual file system
+     */
+    public static boolean isRotational(File file) {
+        try {
+            String device = Files.getFileStore(file.toPath()).name();
+            if (!device.startsWith(DEVICE_DIRECTORY))
+                return false;
+            Path devicePath = Paths.get(device);
+            /*
+             * Names of device mapper (/dev/mapper/...) are links to dm-N.
+             */
+            if (Files.exists(devicePath))
+                devicePath = devicePath.toRealPath();
+            return isRotational(devicePath.getFileName().toString(),
+                    SYS_CLASS_BLOCK);
+        } catch (IOException | SecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param deviceName
+     *            - name of disk or partition (sda, sda1, dm-0)
+     * @param sysClassBlock
+     *            - directory with links to block devices
+     */
+    static boolean isRotational(String deviceName, Path sysClassBlock)
+            throws IOException {
+        Path block = sysClassBlock.resolve(deviceName);
+        if (!Files.exists(block))
+            return false;
+        Path rotational = block.resolve("queue/rotational");
+        /*
+         * Partition has no queue, it is in directory of its disk.
+         */
+        if (!Files.exists(rotational))
+            rotational = block.toRealPath().getParent()
+                    .resolve("queue/rotational");
+        if (!Files.exists(rotational))
+            return false;
+        return "1".equals(new String(Files.readAllBytes(rotational),
+                StandardCharsets.US_ASCII).trim());
+    }
+}
@@ -0,0 +1,57 @@
+package mergesort.concurrent.io;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Block codec based on JDK {@link Deflater} with the fastest level.
+ *
+ * @version 0.4
+ */
+public class DeflateCodec implements BlockCodec {
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+
+    private final Inflater inflater = new Inflater(true);
+
+    @Override
+    public int maxCompressedLength(int length) {
+        return length + (length >> 12) + (length >> 14) + (length >> 25) + 64;
+    }
+
+    @Override
+    public int compress(byte[] src, int srcLength, byte[] dst) {
+        deflater.reset();
+        deflater.setInput(src, 0, srcLength);
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            length += deflater.deflate(dst, length, dst.length - length);
+        }
+        return length;
+    }
+
+    @Override
+    public void decompress(byte[] src, int srcLength, byte[] dst,
+            int dstLength) throws IOException {
+        inflater.reset();
+        inflater.setInput(src, 0, srcLength);
+        try {
+            int length = 0;
+            while (length < dstLength && !inflater.finished()) {
+                int inflated = inflater.inflate(dst, length,
+                        dstLength - length);
+                if (inflated == 0 && (inflater.needsInput()
+                        || inflater.needsDictionary()))
+                    break;
+                length += inflated;
+            }
+            if (length != dstLength)
+                throw new IOException("Corrupted block");
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        }
+    }
+}
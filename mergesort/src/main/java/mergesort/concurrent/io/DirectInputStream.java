@@ -0,0 +1,93 @@
+package mergesort.concurrent.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Stream which reads file with direct I/O bypassing page cache. File is read
+ * by whole blocks into aligned buffer, only the end of file can be shorter
+ * than block.
+ *
+ * @version 0.4
+ */
+public class DirectInputStream extends InputStream {
+
+    private final FileChannel channel;
+
+    private final int blockSize;
+
+    private final ByteBuffer buffer;
+
+    private long position;
+
+    private boolean endOfFile;
+
+    /**
+     * @param bufferSize
+     *            - size of buffer, it is rounded up to block size
+     * @throws IOException
+     *             if file system does not support direct I/O
+     */
+    public DirectInputStream(Path file, int bufferSize) throws IOException {
+        blockSize = DirectIo.getBlockSize(file.toAbsolutePath().getParent());
+        buffer = DirectIo.allocateAligned(
+                (Math.max(bufferSize, 1) + blockSize - 1) / blockSize
+                        * blockSize,
+                blockSize);
+        buffer.flip();
+        channel = DirectIo.open(file, StandardOpenOption.READ);
+    }
+
+    /*
+     * Fills buffer by whole blocks, read which is not a multiple of block is
+     * the end of file.
+     */
+    private boolean fill() throws IOException {
+        if (endOfFile)
+            return false;
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            int length = channel.read(buffer, position);
+            if (length <= 0 || length % blockSize != 0) {
+                endOfFile = true;
+                position += Math.max(length, 0);
+                break;
+            }
+            position += length;
+        }
+        buffer.flip();
+        return buffer.hasRemaining();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!buffer.hasRemaining() && !fill())
+            return -1;
+        return buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        if (!buffer.hasRemaining() && !fill())
+            return -1;
+        int length = Math.min(len, buffer.remaining());
+        buffer.get(b, off, length);
+        return length;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
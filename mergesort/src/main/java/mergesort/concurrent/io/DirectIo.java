@@ -0,0 +1,117 @@
+package mergesort.concurrent.io;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Direct I/O (O_DIRECT) which bypasses page cache, so temporary runs do not
+ * evict pages of other files. It uses ExtendedOpenOption.DIRECT, block size
+ * of file store and aligned slices of buffers of JDK 10 and later, they are
+ * found by reflection, so program still runs on Java 8 without direct I/O.
+ * Positions and lengths of reads and writes and addresses of buffers should
+ * be multiples of block size.
+ *
+ * @version 0.4
+ */
+public final class DirectIo {
+
+    private static final OpenOption DIRECT = findDirectOption();
+
+    private static final Method GET_BLOCK_SIZE = findMethod(FileStore.class,
+            "getBlockSize");
+
+    private static final Method ALIGNED_SLICE = findMethod(ByteBuffer.class,
+            "alignedSlice", int.class);
+
+    private DirectIo() {
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static OpenOption findDirectOption() {
+        try {
+            Class<?> options = Class
+                    .forName("com.sun.nio.file.ExtendedOpenOption");
+            return (OpenOption) Enum.valueOf((Class<Enum>) options, "DIRECT");
+        } catch (ClassNotFoundException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static Method findMethod(Class<?> type, String name,
+            Class<?>... parameterTypes) {
+        try {
+            return type.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true if JDK supports direct I/O, file system can still reject
+     *         it when file is opened
+     */
+    public static boolean isSupported() {
+        return DIRECT != null && GET_BLOCK_SIZE != null
+                && ALIGNED_SLICE != null;
+    }
+
+    /**
+     * @return block size of file store of file, reads and writes are aligned
+     *         to it
+     */
+    public static int getBlockSize(Path file) throws IOException {
+        checkSupported();
+        try {
+            return (int) (long) (Long) GET_BLOCK_SIZE
+                    .invoke(Files.getFileStore(file));
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("Block size is unknown: " + file, e);
+        }
+    }
+
+    /**
+     * Opens channel which reads and writes bypassing page cache.
+     *
+     * @throws IOException
+     *             if file system does not support direct I/O, for example
+     *             tmpfs
+     */
+    public static FileChannel open(Path file, OpenOption... options)
+            throws IOException {
+        checkSupported();
+        OpenOption[] directOptions = Arrays.copyOf(options,
+                options.length + 1);
+        directOptions[options.length] = DIRECT;
+        return FileChannel.open(file, directOptions);
+    }
+
+    /**
+     * @return direct buffer of capacity which address is aligned to
+     *         alignment
+     */
+    public static ByteBuffer allocateAligned(int capacity, int alignment) {
+        checkSupported();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(capacity + alignment);
+        try {
+            ByteBuffer aligned = (ByteBuffer) ALIGNED_SLICE.invoke(buffer,
+                    alignment);
+            aligned.limit(capacity);
+            return aligned.slice();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void checkSupported() {
+        if (!isSupported())
+            throw new UnsupportedOperationException(
+                    "Direct I/O is not supported by JDK");
+    }
+}
@@ -0,0 +1,108 @@
+package mergesort.concurrent.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Stream which writes file with direct I/O bypassing page cache. Bytes are
+ * collected in aligned buffer which is written when it is full, the last
+ * block is padded and file is truncated to the written length when stream
+ * is closed.
+ *
+ * @version 0.4
+ */
+public class DirectOutputStream extends OutputStream {
+
+    private final FileChannel channel;
+
+    private final int blockSize;
+
+    private final ByteBuffer buffer;
+
+    private long position;
+
+    private boolean closed;
+
+    /**
+     * Creates or truncates file.
+     *
+     * @param bufferSize
+     *            - size of buffer, it is rounded up to block size
+     * @throws IOException
+     *             if file system does not support direct I/O
+     */
+    public DirectOutputStream(Path file, int bufferSize) throws IOException {
+        blockSize = DirectIo.getBlockSize(file.toAbsolutePath().getParent());
+        buffer = DirectIo.allocateAligned(roundUp(bufferSize), blockSize);
+        channel = DirectIo.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private int roundUp(int length) {
+        return (Math.max(length, 1) + blockSize - 1) / blockSize * blockSize;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (!buffer.hasRemaining())
+            flushBuffer();
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (!buffer.hasRemaining())
+                flushBuffer();
+            int length = Math.min(len, buffer.remaining());
+            buffer.put(b, off, length);
+            off += length;
+            len -= length;
+        }
+    }
+
+    /*
+     * Writes full buffer, or whole blocks of buffer and padding of the last
+     * one when stream is closed.
+     */
+    private void flushBuffer() throws IOException {
+        int length = buffer.position();
+        if (length == 0)
+            return;
+        buffer.limit(roundUp(length));
+        for (int i = length; i < buffer.limit(); i++) {
+            buffer.put(i, (byte) 0);
+        }
+        buffer.position(0);
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        position -= buffer.limit() - length;
+        buffer.clear();
+    }
+
+    /**
+     * Does nothing: only whole blocks can be written.
+     */
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            flushBuffer();
+            channel.truncate(position);
+        } finally {
+            channel.close();
+        }
+    }
+}
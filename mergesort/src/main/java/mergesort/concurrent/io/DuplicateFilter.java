@@ -0,0 +1,46 @@
+package mergesort.concurrent.io;
+
+import mergesort.concurrent.sort.UnsignedBytes;
+
+/**
+ * Filter of equal neighbours in sorted lines: line is a duplicate if it is
+ * equal byte by byte to the previous line which passed the filter. Passed
+ * line is copied, because cursors reuse their buffers.
+ *
+ * @version 0.4
+ */
+public class DuplicateFilter {
+
+    private byte[] previous = new byte[128];
+
+    /*
+     * Length of the previous line, -1 before the first line.
+     */
+    private int previousLength = -1;
+
+    private long duplicates;
+
+    /**
+     * @return true if line is equal to the previous passed line, otherwise
+     *         line becomes the previous one
+     */
+    public boolean isDuplicate(byte[] buffer, int offset, int length) {
+        if (length == previousLength && UnsignedBytes.compare(buffer, offset,
+                length, previous, 0, previousLength) == 0) {
+            duplicates++;
+            return true;
+        }
+        if (previous.length < length)
+            previous = new byte[Math.max(length, 2 * previous.length)];
+        System.arraycopy(buffer, offset, previous, 0, length);
+        previousLength = length;
+        return false;
+    }
+
+    /**
+     * @return number of lines which were found to be duplicates
+     */
+    public long getDuplicates() {
+        return duplicates;
+    }
+}
@@ -0,0 +1,61 @@
+package mergesort.concurrent.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads region of file from startPosition (inclusive) to endPosition
+ * (exclusive) with positional reads, so several streams can share one
+ * channel. Stream is not buffered and does not close the channel.
+ *
+ * @version 0.4
+ */
+public class FileRegionInputStream extends InputStream {
+
+    private final FileChannel channel;
+
+    private final long endPosition;
+
+    private long position;
+
+    public FileRegionInputStream(FileChannel channel, long startPosition,
+            long endPosition) {
+        if (startPosition < 0 || endPosition < startPosition)
+            throw new IllegalArgumentException("Wrong region: "
+                    + startPosition + " " + endPosition);
+        this.channel = channel;
+        this.position = startPosition;
+        this.endPosition = endPosition;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] oneByte = new byte[1];
+        int readBytes = read(oneByte, 0, 1);
+        return readBytes == -1 ? -1 : oneByte[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] byteArray, int off, int len) throws IOException {
+        if (position >= endPosition)
+            return -1;
+        if (len == 0)
+            return 0;
+        int proposedLength = (int) Math.min(len, endPosition - position);
+        int readBytes = channel.read(
+                ByteBuffer.wrap(byteArray, off, proposedLength), position);
+        if (readBytes == -1)
+            return -1;
+        position += readBytes;
+        return readBytes;
+    }
+
+    @Override
+    public long skip(long n) {
+        long skipped = Math.max(0, Math.min(n, endPosition - position));
+        position += skipped;
+        return skipped;
+    }
+}
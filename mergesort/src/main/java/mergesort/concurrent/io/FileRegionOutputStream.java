@@ -0,0 +1,66 @@
+package mergesort.concurrent.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Buffered stream which writes to file starting from given position with
+ * positional writes, so several streams can fill different regions of one
+ * file concurrently. Stream does not close the channel.
+ *
+ * @version 0.4
+ */
+public class FileRegionOutputStream extends OutputStream {
+
+    private final FileChannel channel;
+
+    private final ByteBuffer buffer;
+
+    private long position;
+
+    public FileRegionOutputStream(FileChannel channel, long startPosition,
+            int bufferSize) {
+        this.channel = channel;
+        this.position = startPosition;
+        buffer = ByteBuffer.allocate(bufferSize);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (!buffer.hasRemaining())
+            flushBuffer();
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] byteArray, int off, int len) throws IOException {
+        while (len > 0) {
+            if (!buffer.hasRemaining())
+                flushBuffer();
+            int length = Math.min(len, buffer.remaining());
+            buffer.put(byteArray, off, length);
+            off += length;
+            len -= length;
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flushBuffer();
+    }
+}
@@ -0,0 +1,116 @@
+package mergesort.concurrent.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import mergesort.concurrent.sort.UnsignedBytes;
+
+/**
+ * Writes sorted lines in front coded format. Lines are written to the stream
+ * as text terminated by '\n', every line is stored as length of the prefix
+ * shared with the previous line, length of the rest of line (both are
+ * unsigned LEB128 varints) and the rest of line itself. Every
+ * {@link #RESTART_INTERVAL}-th line is a restart point, it is stored entirely
+ * (shared length is 0), so the line can be restored without preceding lines.
+ * The last line without '\n' is stored as a complete line.
+ *
+ * @version 0.4
+ */
+public class FrontCodedOutputStream extends OutputStream {
+
+    public static final int RESTART_INTERVAL = 16;
+
+    private final OutputStream out;
+
+    private byte[] line = new byte[256];
+
+    private int lineLength;
+
+    private byte[] previous = new byte[256];
+
+    private int previousLength;
+
+    private int numberOfLines;
+
+    /*
+     * Two varints are encoded here before writing.
+     */
+    private final byte[] header = new byte[10];
+
+    public FrontCodedOutputStream(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (b == '\n') {
+            writeLine();
+            return;
+        }
+        if (lineLength == line.length)
+            line = Arrays.copyOf(line, line.length * 2);
+        line[lineLength++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        int end = off + len;
+        while (off < end) {
+            int index = off;
+            while (index < end && b[index] != '\n') {
+                index++;
+            }
+            int count = index - off;
+            if (lineLength + count > line.length)
+                line = Arrays.copyOf(line,
+                        Math.max(line.length * 2, lineLength + count));
+            System.arraycopy(b, off, line, lineLength, count);
+            lineLength += count;
+            if (index < end)
+                writeLine();
+            off = index + 1;
+        }
+    }
+
+    private void writeLine() throws IOException {
+        int shared = numberOfLines % RESTART_INTERVAL == 0 ? 0
+                : UnsignedBytes.mismatch(previous, 0, previousLength, line, 0,
+                        lineLength, 0);
+        int length = putVarInt(header, 0, shared);
+        length = putVarInt(header, length, lineLength - shared);
+        out.write(header, 0, length);
+        out.write(line, shared, lineLength - shared);
+        numberOfLines++;
+
+        byte[] tmp = previous;
+        previous = line;
+        previousLength = lineLength;
+        line = tmp;
+        lineLength = 0;
+    }
+
+    private static int putVarInt(byte[] buffer, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return position;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (lineLength > 0)
+                writeLine();
+        } finally {
+            out.close();
+        }
+    }
+}
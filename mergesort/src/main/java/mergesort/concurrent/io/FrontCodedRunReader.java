@@ -0,0 +1,154 @@
+package mergesort.concurrent.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import mergesort.concurrent.sort.UnsignedBytes;
+
+/**
+ * Reads lines written by {@link FrontCodedOutputStream}. Only the rest of a
+ * line is copied, its shared prefix stays in the buffer from the previous
+ * line. Length of the prefix shared with the previous line is available for
+ * the merge, for restart points it is computed.
+ *
+ * @version 0.4
+ */
+public class FrontCodedRunReader implements SharedPrefixCursor {
+
+    public static final int BUFFER_SIZE_DEFAULT = 64 * 1024;
+
+    private InputStream in;
+
+    private final byte[] buff;
+
+    private int position;
+
+    private int limit;
+
+    private byte[] line = new byte[256];
+
+    private int lineLength;
+
+    /*
+     * Buffer for restart points, current line is compared with it.
+     */
+    private byte[] spare = new byte[256];
+
+    private int sharedLength;
+
+    private boolean firstLine = true;
+
+    public FrontCodedRunReader(InputStream in) {
+        this(in, BUFFER_SIZE_DEFAULT);
+    }
+
+    public FrontCodedRunReader(InputStream in, int bufferSize) {
+        if (bufferSize < 1)
+            throw new IllegalArgumentException(
+                    "Buffer size shuld be greater than 0");
+        this.in = in;
+        buff = new byte[bufferSize];
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        if (in == null)
+            throw new IllegalStateException("Stream is closed");
+        if (position == limit && !fill())
+            return false;
+        int shared = readVarInt();
+        int suffix = readVarInt();
+        if (shared > lineLength || suffix < 0)
+            throw new IOException("Corrupted front coded run");
+        int length = shared + suffix;
+        if (shared == 0 && !firstLine) {
+            if (spare.length < length)
+                spare = new byte[Math.max(spare.length * 2, length)];
+            readFully(spare, 0, length);
+            sharedLength = UnsignedBytes.mismatch(line, 0, lineLength, spare,
+                    0, length, 0);
+            byte[] tmp = line;
+            line = spare;
+            spare = tmp;
+        } else {
+            if (line.length < length)
+                line = Arrays.copyOf(line, Math.max(line.length * 2, length));
+            readFully(line, shared, suffix);
+            sharedLength = shared;
+        }
+        lineLength = length;
+        firstLine = false;
+        return true;
+    }
+
+    /*
+     * @return false at the end of stream
+     */
+    private boolean fill() throws IOException {
+        int readBytes = in.read(buff, 0, buff.length);
+        if (readBytes == -1)
+            return false;
+        position = 0;
+        limit = readBytes;
+        return true;
+    }
+
+    private int readByte() throws IOException {
+        if (position == limit && !fill())
+            throw new EOFException("Unexpected end of front coded run");
+        return buff[position++] & 0xFF;
+    }
+
+    private int readVarInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Corrupted front coded run");
+    }
+
+    private void readFully(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (position == limit && !fill())
+                throw new EOFException("Unexpected end of front coded run");
+            int count = Math.min(len, limit - position);
+            System.arraycopy(buff, position, b, off, count);
+            position += count;
+            off += count;
+            len -= count;
+        }
+    }
+
+    @Override
+    public int getSharedLength() {
+        return sharedLength;
+    }
+
+    @Override
+    public byte[] getBuffer() {
+        return line;
+    }
+
+    @Override
+    public int getOffset() {
+        return 0;
+    }
+
+    @Override
+    public int getLength() {
+        return lineLength;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (in != null) {
+            in.close();
+            in = null;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package mergesort.concurrent.io;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counter of bytes and of time spent in reads or writes of metered streams.
+ *
+ * @version 0.4
+ */
+public class IoMeter {
+
+    private final AtomicLong bytes = new AtomicLong();
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    public void add(long bytes, long nanos) {
+        this.bytes.addAndGet(bytes);
+        this.nanos.addAndGet(nanos);
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public long getNanos() {
+        return nanos.get();
+    }
+
+    /**
+     * @return bytes per second of time spent in reads or writes, 0 if
+     *         nothing is counted
+     */
+    public double getThroughput() {
+        long time = nanos.get();
+        return time == 0 ? 0 : bytes.get() * 1e9 / time;
+    }
+}
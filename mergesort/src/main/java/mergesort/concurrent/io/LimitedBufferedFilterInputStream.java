@@ -3,23 +3,42 @@ package mergesort.concurrent.io;
 import java.io.FileInputStream;
 import java.io.FilterInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * @author Nikolay Kirdin 2016-07-15
  * @version 0.2.1
  */
-public class LimitedBufferedFilterInputStream extends FilterInputStream {
+public class LimitedBufferedFilterInputStream extends FilterInputStream
+        implements LineCursor {
 
     public static final int BUFFER_SIZE_DEFAULT = 64 * 1024;
 
     private static final int MAX_STRING_ARRAY_LENGTH = 4 * 1024 * 1024;
 
-    private static final int BYTE_ARRAY_EXT_LENGTH = 80;
-
     private int bufferSize;
 
     private byte[] buff;
 
+    /*
+     * Little-endian view of buff for word at a time search of '\n'.
+     */
+    private ByteBuffer buffWords;
+
+    /*
+     * Collects lines which cross the end of buff.
+     */
+    private final LineBuffer lineBuffer = new LineBuffer();
+
+    /*
+     * Current line: slice of buff or of lineBuffer.
+     */
+    private byte[] lineArray;
+
+    private int lineOffset;
+
+    private int lineLength;
+
     private long effectiveStreamPosition = 0;
 
     private int currentBuffIndex;
@@ -37,6 +56,7 @@ public class LimitedBufferedFilterInputStream extends FilterInputStream {
         super(in);
         this.bufferSize = bufferSize;
         buff = new byte[bufferSize];
+        buffWords = ByteScanner.wrap(buff);
         currentBuffIndex = bufferSize;
         lastIndexInBuff = currentBuffIndex;
     }
@@ -58,25 +78,40 @@ public class LimitedBufferedFilterInputStream extends FilterInputStream {
 
     @Override
     public synchronized int read() throws IOException {
-        if (effectiveStreamPosition == endOfStreamPosition) {
-            currentBuffIndex = buff.length;
-            lastIndexInBuff = 0;
+        if (fillBuffer() == -1)
+            return -1;
+        effectiveStreamPosition++;
+        return buff[currentBuffIndex++] & 0xFF;
+    }
+
+    /*
+     * Reads next portion of stream if buffer is empty.
+     * 
+     * @return number of bytes which can be consumed from buffer without
+     * crossing end of stream position or -1 at the end of stream.
+     */
+    private int fillBuffer() throws IOException {
+        if (effectiveStreamPosition >= endOfStreamPosition) {
+            currentBuffIndex = lastIndexInBuff;
             return -1;
         }
 
         if (currentBuffIndex == lastIndexInBuff) {
             int readBytes = super.read(buff, 0, buff.length);
             if (readBytes == -1) {
-                currentBuffIndex = buff.length;
-                lastIndexInBuff = 0;
+                currentBuffIndex = lastIndexInBuff;
                 return -1;
             }
             currentBuffIndex = 0;
             lastIndexInBuff = readBytes;
-
         }
-        effectiveStreamPosition++;
-        return buff[currentBuffIndex++];
+        return (int) Math.min(lastIndexInBuff - currentBuffIndex,
+                endOfStreamPosition - effectiveStreamPosition);
+    }
+
+    private void consume(int length) {
+        currentBuffIndex += length;
+        effectiveStreamPosition += length;
     }
 
     @Override
@@ -88,8 +123,7 @@ public class LimitedBufferedFilterInputStream extends FilterInputStream {
     public synchronized int read(byte[] byteArray, int off, int len)
             throws IOException {
         if (effectiveStreamPosition == endOfStreamPosition) {
-            currentBuffIndex = buff.length;
-            lastIndexInBuff = 0;
+            currentBuffIndex = lastIndexInBuff;
             return -1;
         }
 
@@ -190,47 +224,116 @@ public class LimitedBufferedFilterInputStream extends FilterInputStream {
      *             if read String is greater than MAX_STRING_ARRAY_LENGTH
      */
     public synchronized String readLine() throws IOException {
-        byte[] byteArray = new byte[512];
-        int index = 0;
+        if (!scanLine(lineBuffer))
+            return null;
+        return new String(lineArray, lineOffset, lineLength);
+    }
 
-        int readByte;
-        while ((readByte = read()) != -1) {
-            if (readByte == '\n') {
-                break;
-            }
+    /**
+     * Reads next line without '\n' into reusable buffer of caller.
+     * 
+     * @return false at the end of stream
+     * @throws StringExceedMaxmumLengthException
+     *             if line is greater than MAX_STRING_ARRAY_LENGTH
+     */
+    public synchronized boolean readLine(LineBuffer target)
+            throws IOException {
+        if (!scanLine(target))
+            return false;
+        if (lineArray != target.getData()) {
+            target.clear();
+            target.append(lineArray, lineOffset, lineLength,
+                    MAX_STRING_ARRAY_LENGTH);
+        }
+        return true;
+    }
 
-            if (index == byteArray.length) {
+    /**
+     * Moves to next line. Line is returned as slice of internal buffer, which
+     * is valid until next read from this stream.
+     * 
+     * @return false at the end of stream
+     * @throws StringExceedMaxmumLengthException
+     *             if line is greater than MAX_STRING_ARRAY_LENGTH
+     */
+    @Override
+    public synchronized boolean next() throws IOException {
+        return scanLine(lineBuffer);
+    }
 
-                if (index + BYTE_ARRAY_EXT_LENGTH > MAX_STRING_ARRAY_LENGTH) {
-                    throw new StringExceedMaxmumLengthException(
-                            "String exceed: " + MAX_STRING_ARRAY_LENGTH
-                                    + " byte");
-                } else {
-                    byteArray = extendByteArray(byteArray,
-                            BYTE_ARRAY_EXT_LENGTH);
-                }
-            }
+    @Override
+    public synchronized byte[] getBuffer() {
+        return lineArray;
+    }
 
-            byteArray[index++] = (byte) readByte;
+    @Override
+    public synchronized int getOffset() {
+        return lineOffset;
+    }
 
-        }
-        return readByte != -1 ? new String(byteArray, 0, index)
-                : index != 0 ? new String(byteArray, 0, index) : null;
+    @Override
+    public synchronized int getLength() {
+        return lineLength;
     }
 
     /**
-     * Extend byte Array
+     * Skips bytes up to and including next '\n'.
      * 
-     * @param byteArray
-     *            - extending array
-     * @param extLength
-     *            - additional length
-     * @return new byte array with new length. New array is a copy of source
-     *         array.
+     * @return false if the end of stream was reached before '\n'
      */
-    private byte[] extendByteArray(byte[] byteArray, int extLength) {
-        byte[] newArray = new byte[byteArray.length + extLength];
-        System.arraycopy(byteArray, 0, newArray, 0, extLength);
-        return newArray;
+    public synchronized boolean skipLine() throws IOException {
+        int available;
+        while ((available = fillBuffer()) != -1) {
+            int index = ByteScanner.indexOf(buffWords, currentBuffIndex,
+                    currentBuffIndex + available, (byte) '\n');
+            if (index != -1) {
+                consume(index + 1 - currentBuffIndex);
+                return true;
+            }
+            consume(available);
+        }
+        return false;
+    }
+
+    /*
+     * Finds next '\n' in buffer. Line which is placed in buff entirely is
+     * returned as slice of buff, otherwise its parts are collected in
+     * collector.
+     */
+    private boolean scanLine(LineBuffer collector) throws IOException {
+        collector.clear();
+        boolean collected = false;
+        int available;
+        while ((available = fillBuffer()) != -1) {
+            int from = currentBuffIndex;
+            int index = ByteScanner.indexOf(buffWords, from, from + available,
+                    (byte) '\n');
+            if (index == -1) {
+                collector.append(buff, from, available,
+                        MAX_STRING_ARRAY_LENGTH);
+                collected = true;
+                consume(available);
+                continue;
+            }
+            consume(index + 1 - from);
+            if (!collected) {
+                setLine(buff, from, index - from);
+                return true;
+            }
+            collector.append(buff, from, index - from,
+                    MAX_STRING_ARRAY_LENGTH);
+            setLine(collector.getData(), 0, collector.getLength());
+            return true;
+        }
+        if (!collected)
+            return false;
+        setLine(collector.getData(), 0, collector.getLength());
+        return true;
+    }
+
+    private void setLine(byte[] array, int offset, int length) {
+        lineArray = array;
+        lineOffset = offset;
+        lineLength = length;
     }
 }
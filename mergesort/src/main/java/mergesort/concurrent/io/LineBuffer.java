@@ -0,0 +1,65 @@
+package mergesort.concurrent.io;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Reusable buffer for bytes of one line. Buffer grows geometrically and is
+ * not shrunk, so reading of lines with one buffer does not allocate memory
+ * after the longest line was read.
+ *
+ * @version 0.4
+ */
+public class LineBuffer {
+
+    private byte[] data;
+
+    private int length;
+
+    public LineBuffer() {
+        this(512);
+    }
+
+    public LineBuffer(int capacity) {
+        data = new byte[Math.max(1, capacity)];
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public void clear() {
+        length = 0;
+    }
+
+    /**
+     * @throws StringExceedMaxmumLengthException
+     *             if length of line becomes greater than maxLength
+     */
+    void append(byte[] source, int offset, int count, int maxLength) {
+        int newLength = length + count;
+        if (newLength > maxLength)
+            throw new StringExceedMaxmumLengthException(
+                    "String exceed: " + maxLength + " byte");
+        if (newLength > data.length) {
+            data = Arrays.copyOf(data,
+                    (int) Math.min(maxLength,
+                            Math.max(newLength, 2L * data.length)));
+        }
+        System.arraycopy(source, offset, data, length, count);
+        length = newLength;
+    }
+
+    public String toString(Charset charset) {
+        return new String(data, 0, length, charset);
+    }
+
+    @Override
+    public String toString() {
+        return new String(data, 0, length);
+    }
+}
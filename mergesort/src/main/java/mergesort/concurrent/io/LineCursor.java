@@ -0,0 +1,28 @@
+package mergesort.concurrent.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Sequential access to lines which are kept as bytes. After successful
+ * {@link #next()} current line is placed in {@link #getBuffer()} from
+ * {@link #getOffset()} and has {@link #getLength()} bytes without '\n'. The
+ * buffer can be reused by next call of {@link #next()}.
+ *
+ * @version 0.4
+ */
+public interface LineCursor extends Closeable {
+
+    /**
+     * Moves to next line.
+     * 
+     * @return false if there are no more lines
+     */
+    boolean next() throws IOException;
+
+    byte[] getBuffer();
+
+    int getOffset();
+
+    int getLength();
+}
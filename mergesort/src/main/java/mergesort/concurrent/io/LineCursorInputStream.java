@@ -0,0 +1,81 @@
+package mergesort.concurrent.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Text view of lines of a cursor, every line is terminated by '\n'. It is
+ * used for reading of runs in binary format by readers of text.
+ *
+ * @version 0.4
+ */
+public class LineCursorInputStream extends InputStream {
+
+    private final LineCursor cursor;
+
+    /*
+     * Position in the current line, line length means '\n'.
+     */
+    private int position;
+
+    private int length = -1;
+
+    private boolean endOfStream;
+
+    public LineCursorInputStream(LineCursor cursor) {
+        this.cursor = cursor;
+    }
+
+    /*
+     * @return false at the end of stream
+     */
+    private boolean nextLine() throws IOException {
+        if (endOfStream)
+            return false;
+        if (length == -1 || position > length) {
+            if (!cursor.next()) {
+                endOfStream = true;
+                return false;
+            }
+            position = 0;
+            length = cursor.getLength();
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextLine())
+            return -1;
+        if (position == length) {
+            position++;
+            return '\n';
+        }
+        return cursor.getBuffer()[cursor.getOffset() + position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        int count = 0;
+        while (count < len && nextLine()) {
+            if (position == length) {
+                b[off + count++] = '\n';
+                position++;
+                continue;
+            }
+            int n = Math.min(len - count, length - position);
+            System.arraycopy(cursor.getBuffer(), cursor.getOffset() + position,
+                    b, off + count, n);
+            position += n;
+            count += n;
+        }
+        return count == 0 ? -1 : count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        cursor.close();
+    }
+}
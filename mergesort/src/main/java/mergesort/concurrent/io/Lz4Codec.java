@@ -0,0 +1,157 @@
+package mergesort.concurrent.io;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Block codec with LZ4 block format: sequences of literals and matches, every
+ * sequence begins with token (length of literals in high 4 bits, length of
+ * match minus 4 in low 4 bits), longer lengths are continued by bytes of 255,
+ * offset of match is 2 bytes little-endian. The last sequence has literals
+ * only. Matches are found with hash table of 4-byte sequences, compression is
+ * fast and suits sorted text with many repeated prefixes.
+ *
+ * @version 0.4
+ */
+public class Lz4Codec implements BlockCodec {
+
+    private static final int MIN_MATCH = 4;
+
+    private static final int HASH_LOG = 14;
+
+    private static final int MAX_OFFSET = 65535;
+
+    private static final int RUN_MASK = 15;
+
+    /*
+     * Positions of the last 4-byte sequences with the same hash.
+     */
+    private final int[] hashTable = new int[1 << HASH_LOG];
+
+    @Override
+    public int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    @Override
+    public int compress(byte[] src, int srcLength, byte[] dst) {
+        Arrays.fill(hashTable, -1);
+        int anchor = 0;
+        int position = 0;
+        int dstPosition = 0;
+        while (position + MIN_MATCH <= srcLength) {
+            int sequence = readInt(src, position);
+            int hash = (sequence * -1640531535) >>> (32 - HASH_LOG);
+            int reference = hashTable[hash];
+            hashTable[hash] = position;
+            if (reference < 0 || position - reference > MAX_OFFSET
+                    || readInt(src, reference) != sequence) {
+                position++;
+                continue;
+            }
+            int matchLength = MIN_MATCH;
+            while (position + matchLength < srcLength
+                    && src[reference + matchLength] == src[position
+                            + matchLength]) {
+                matchLength++;
+            }
+            dstPosition = writeSequence(src, anchor, position - anchor, dst,
+                    dstPosition, position - reference, matchLength);
+            position += matchLength;
+            anchor = position;
+        }
+        return writeSequence(src, anchor, srcLength - anchor, dst,
+                dstPosition, 0, 0);
+    }
+
+    /*
+     * Writes literals and match, match with length 0 is not written.
+     */
+    private static int writeSequence(byte[] src, int literalsStart,
+            int literalsLength, byte[] dst, int dstPosition, int offset,
+            int matchLength) {
+        int tokenPosition = dstPosition++;
+        int token = Math.min(literalsLength, RUN_MASK) << 4;
+        if (literalsLength >= RUN_MASK)
+            dstPosition = writeLength(literalsLength - RUN_MASK, dst,
+                    dstPosition);
+        System.arraycopy(src, literalsStart, dst, dstPosition, literalsLength);
+        dstPosition += literalsLength;
+        if (matchLength > 0) {
+            dst[dstPosition++] = (byte) offset;
+            dst[dstPosition++] = (byte) (offset >>> 8);
+            int length = matchLength - MIN_MATCH;
+            token |= Math.min(length, RUN_MASK);
+            if (length >= RUN_MASK)
+                dstPosition = writeLength(length - RUN_MASK, dst,
+                        dstPosition);
+        }
+        dst[tokenPosition] = (byte) token;
+        return dstPosition;
+    }
+
+    private static int writeLength(int length, byte[] dst, int dstPosition) {
+        while (length >= 255) {
+            dst[dstPosition++] = (byte) 255;
+            length -= 255;
+        }
+        dst[dstPosition++] = (byte) length;
+        return dstPosition;
+    }
+
+    @Override
+    public void decompress(byte[] src, int srcLength, byte[] dst,
+            int dstLength) throws IOException {
+        int position = 0;
+        int dstPosition = 0;
+        try {
+            while (true) {
+                int token = src[position++] & 0xFF;
+                int literalsLength = token >>> 4;
+                if (literalsLength == RUN_MASK) {
+                    int b;
+                    do {
+                        b = src[position++] & 0xFF;
+                        literalsLength += b;
+                    } while (b == 255);
+                }
+                System.arraycopy(src, position, dst, dstPosition,
+                        literalsLength);
+                position += literalsLength;
+                dstPosition += literalsLength;
+                if (position >= srcLength)
+                    break;
+
+                int offset = (src[position] & 0xFF)
+                        | (src[position + 1] & 0xFF) << 8;
+                position += 2;
+                int matchLength = token & RUN_MASK;
+                if (matchLength == RUN_MASK) {
+                    int b;
+                    do {
+                        b = src[position++] & 0xFF;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                matchLength += MIN_MATCH;
+                if (offset == 0 || offset > dstPosition
+                        || dstPosition + matchLength > dstLength)
+                    throw new IOException("Corrupted block");
+                for (int i = 0; i < matchLength; i++) {
+                    dst[dstPosition + i] = dst[dstPosition - offset + i];
+                }
+                dstPosition += matchLength;
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Corrupted block", e);
+        }
+        if (position != srcLength || dstPosition != dstLength)
+            throw new IOException("Corrupted block");
+    }
+
+    private static int readInt(byte[] src, int position) {
+        return (src[position] & 0xFF) | (src[position + 1] & 0xFF) << 8
+                | (src[position + 2] & 0xFF) << 16
+                | (src[position + 3] & 0xFF) << 24;
+    }
+}
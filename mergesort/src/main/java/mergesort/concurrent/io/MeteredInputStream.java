@@ -0,0 +1,45 @@
+package mergesort.concurrent.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Stream which counts read bytes and time spent in reads of underlying
+ * stream.
+ *
+ * @version 0.4
+ */
+public class MeteredInputStream extends FilterInputStream {
+
+    private final IoMeter meter;
+
+    public MeteredInputStream(InputStream in, IoMeter meter) {
+        super(in);
+        this.meter = meter;
+    }
+
+    @Override
+    public int read() throws IOException {
+        long start = System.nanoTime();
+        int b = in.read();
+        meter.add(b < 0 ? 0 : 1, System.nanoTime() - start);
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        long start = System.nanoTime();
+        int n = in.read(b, off, len);
+        meter.add(Math.max(n, 0), System.nanoTime() - start);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long start = System.nanoTime();
+        long skipped = in.skip(n);
+        meter.add(0, System.nanoTime() - start);
+        return skipped;
+    }
+}
@@ -0,0 +1,52 @@
+package mergesort.concurrent.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Stream which counts written bytes and time spent in writes, flushes and
+ * closing of underlying stream.
+ *
+ * @version 0.4
+ */
+public class MeteredOutputStream extends FilterOutputStream {
+
+    private final IoMeter meter;
+
+    public MeteredOutputStream(OutputStream out, IoMeter meter) {
+        super(out);
+        this.meter = meter;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        long start = System.nanoTime();
+        out.write(b);
+        meter.add(1, System.nanoTime() - start);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        long start = System.nanoTime();
+        out.write(b, off, len);
+        meter.add(len, System.nanoTime() - start);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        long start = System.nanoTime();
+        out.flush();
+        meter.add(0, System.nanoTime() - start);
+    }
+
+    @Override
+    public void close() throws IOException {
+        long start = System.nanoTime();
+        try {
+            out.close();
+        } finally {
+            meter.add(0, System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package mergesort.concurrent.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Double-buffered input stream. While the consumer reads one buffer, the
+ * other buffer is filled from the underlying stream by a task of executor, so
+ * reading of a sorted run overlaps with merging and every refill is one large
+ * sequential read instead of many small ones.
+ *
+ * @version 0.4
+ */
+public class ReadAheadInputStream extends InputStream {
+
+    private final InputStream in;
+
+    private final ExecutorService executor;
+
+    /*
+     * Buffer which is read by consumer.
+     */
+    private byte[] current;
+
+    /*
+     * Buffer which is filled by background task.
+     */
+    private byte[] next;
+
+    private Future<Integer> pendingFill;
+
+    private int position;
+
+    private int limit;
+
+    private boolean endOfStream;
+
+    private boolean closed;
+
+    public ReadAheadInputStream(InputStream in, int bufferSize,
+            ExecutorService executor) {
+        if (bufferSize < 1)
+            throw new IllegalArgumentException(
+                    "Buffer size shuld be greater than 0");
+        this.in = in;
+        this.executor = executor;
+        current = new byte[bufferSize];
+        next = new byte[bufferSize];
+        startFill();
+    }
+
+    /*
+     * Fills next buffer by background task.
+     */
+    private void startFill() {
+        final byte[] buffer = next;
+        pendingFill = executor.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws IOException {
+                int length = 0;
+                while (length < buffer.length) {
+                    int readBytes = in.read(buffer, length,
+                            buffer.length - length);
+                    if (readBytes == -1)
+                        break;
+                    length += readBytes;
+                }
+                return length;
+            }
+        });
+    }
+
+    /*
+     * Waits for background task and swaps buffers.
+     *
+     * @return false if there are no more bytes
+     */
+    private boolean swapBuffers() throws IOException {
+        if (endOfStream)
+            return false;
+        int length = awaitFill();
+        pendingFill = null;
+        byte[] filled = next;
+        next = current;
+        current = filled;
+        position = 0;
+        limit = length;
+        if (length < current.length)
+            endOfStream = true;
+        else
+            startFill();
+        return length > 0;
+    }
+
+    private int awaitFill() throws IOException {
+        try {
+            return pendingFill.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (closed)
+            throw new IOException("Stream is closed");
+        if (position == limit && !swapBuffers())
+            return -1;
+        return current[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (closed)
+            throw new IOException("Stream is closed");
+        if (len == 0)
+            return 0;
+        if (position == limit && !swapBuffers())
+            return -1;
+        int count = Math.min(len, limit - position);
+        System.arraycopy(current, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return limit - position;
+    }
+
+    /**
+     * Waits for background task and closes underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            if (pendingFill != null)
+                awaitFill();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package mergesort.concurrent.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads lines of sorted run without decoding them. Lines are returned as
+ * slices of internal buffer, so no objects are allocated per line. Buffer is
+ * grown only if a line is longer than the buffer.
+ *
+ * @version 0.4
+ */
+public class RunReader implements LineCursor {
+
+    public static final int BUFFER_SIZE_DEFAULT = 64 * 1024;
+
+    private InputStream in;
+
+    private byte[] buff;
+
+    /*
+     * Little-endian view of buff for word at a time search of '\n'.
+     */
+    private ByteBuffer buffWords;
+
+    /*
+     * Start of unread data in buffer.
+     */
+    private int position;
+
+    /*
+     * End of valid data in buffer.
+     */
+    private int limit;
+
+    private boolean endOfStream;
+
+    private int lineOffset;
+
+    private int lineLength;
+
+    public RunReader(InputStream in) {
+        this(in, BUFFER_SIZE_DEFAULT);
+    }
+
+    public RunReader(InputStream in, int bufferSize) {
+        if (bufferSize < 1)
+            throw new IllegalArgumentException(
+                    "Buffer size shuld be greater than 0");
+        this.in = in;
+        buff = new byte[bufferSize];
+        buffWords = ByteScanner.wrap(buff);
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        if (in == null)
+            throw new IllegalStateException("Stream is closed");
+        int scanFrom = position;
+        while (true) {
+            int index = ByteScanner.indexOf(buffWords, scanFrom, limit,
+                    (byte) '\n');
+            if (index != -1) {
+                lineOffset = position;
+                lineLength = index - position;
+                position = index + 1;
+                return true;
+            }
+            if (endOfStream) {
+                if (position == limit)
+                    return false;
+                lineOffset = position;
+                lineLength = limit - position;
+                position = limit;
+                return true;
+            }
+            scanFrom = limit - position;
+            fill();
+        }
+    }
+
+    /*
+     * Moves unread data to the start of buffer and reads next portion of
+     * stream.
+     */
+    private void fill() throws IOException {
+        int unread = limit - position;
+        if (unread == buff.length) {
+            byte[] newBuff = new byte[buff.length * 2];
+            System.arraycopy(buff, position, newBuff, 0, unread);
+            buff = newBuff;
+            buffWords = ByteScanner.wrap(buff);
+        } else if (position > 0) {
+            System.arraycopy(buff, position, buff, 0, unread);
+        }
+        position = 0;
+        limit = unread;
+        int readBytes = in.read(buff, limit, buff.length - limit);
+        if (readBytes == -1)
+            endOfStream = true;
+        else
+            limit += readBytes;
+    }
+
+    @Override
+    public byte[] getBuffer() {
+        return buff;
+    }
+
+    @Override
+    public int getOffset() {
+        return lineOffset;
+    }
+
+    @Override
+    public int getLength() {
+        return lineLength;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (in != null) {
+            in.close();
+            in = null;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package mergesort.concurrent.io;
+
+/**
+ * Cursor which knows how many leading bytes of the current line are equal to
+ * the previous line. Lines of the cursor should be in ascending unsigned byte
+ * order.
+ *
+ * @version 0.4
+ */
+public interface SharedPrefixCursor extends LineCursor {
+
+    /**
+     * @return length of the longest common prefix of the current and the
+     *         previous line, 0 for the first line
+     */
+    int getSharedLength();
+}
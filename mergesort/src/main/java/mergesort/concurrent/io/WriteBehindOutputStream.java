@@ -0,0 +1,217 @@
+package mergesort.concurrent.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Output stream which hands filled buffers through bounded queue to a writer
+ * task, the task writes them to file with large positional writes. Sorting or
+ * merging thread fills the next buffer while the previous one is written, so
+ * CPU work and disk I/O overlap. Thread waits only if all buffers are in the
+ * queue (disk is slower than producer) and on close, when the rest of data is
+ * written.
+ *
+ * Bytes and times of waiting for free buffer (stalls), of writing and of
+ * close (flush latency) are added to {@link WriteBehindStatistics} which is
+ * shared by streams of one job.
+ *
+ * @version 0.4
+ */
+public class WriteBehindOutputStream extends OutputStream {
+
+    public static final int BUFFER_SIZE = 1024 * 1024;
+
+    /*
+     * Number of filled buffers which can wait for writing.
+     */
+    public static final int QUEUE_CAPACITY = 4;
+
+    /*
+     * Marker of the end of data.
+     */
+    private static final ByteBuffer END_OF_DATA = ByteBuffer.allocate(0);
+
+    private final FileChannel channel;
+
+    private final boolean ownChannel;
+
+    private final WriteBehindStatistics statistics;
+
+    private final BlockingQueue<ByteBuffer> filledBuffers = new ArrayBlockingQueue<>(
+            QUEUE_CAPACITY + 1);
+
+    private final BlockingQueue<ByteBuffer> freeBuffers = new ArrayBlockingQueue<>(
+            QUEUE_CAPACITY + 1);
+
+    private final Future<Void> writer;
+
+    private ByteBuffer buffer;
+
+    private boolean closed;
+
+    /**
+     * Creates or truncates file, stream closes it.
+     */
+    public WriteBehindOutputStream(File file, ExecutorService executor,
+            WriteBehindStatistics statistics) throws IOException {
+        this(FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING), 0L, true, executor,
+                statistics);
+    }
+
+    /**
+     * Writes to channel from position, stream does not close channel.
+     */
+    public WriteBehindOutputStream(FileChannel channel, long position,
+            ExecutorService executor, WriteBehindStatistics statistics) {
+        this(channel, position, false, executor, statistics);
+    }
+
+    private WriteBehindOutputStream(final FileChannel channel,
+            final long startPosition, boolean ownChannel,
+            ExecutorService executor, WriteBehindStatistics statistics) {
+        this.channel = channel;
+        this.ownChannel = ownChannel;
+        this.statistics = statistics;
+        for (int i = 0; i < QUEUE_CAPACITY; i++) {
+            freeBuffers.add(ByteBuffer.allocate(BUFFER_SIZE));
+        }
+        buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        writer = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException, InterruptedException {
+                long position = startPosition;
+                ByteBuffer filled;
+                while ((filled = filledBuffers.take()) != END_OF_DATA) {
+                    long start = System.nanoTime();
+                    while (filled.hasRemaining()) {
+                        position += channel.write(filled, position);
+                    }
+                    statistics.addWriteNanos(System.nanoTime() - start);
+                    filled.clear();
+                    freeBuffers.put(filled);
+                }
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (!buffer.hasRemaining())
+            handOff();
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (!buffer.hasRemaining())
+                handOff();
+            int count = Math.min(len, buffer.remaining());
+            buffer.put(b, off, count);
+            off += count;
+            len -= count;
+        }
+    }
+
+    /**
+     * Hands buffer to writer, data is not forced to disk.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (buffer.position() > 0)
+            handOff();
+    }
+
+    /*
+     * Places filled buffer into queue and takes free one.
+     */
+    private void handOff() throws IOException {
+        if (closed)
+            throw new IOException("Stream is closed");
+        buffer.flip();
+        statistics.addBytes(buffer.remaining());
+        put(buffer);
+        long start = System.nanoTime();
+        try {
+            while ((buffer = freeBuffers.poll(100,
+                    TimeUnit.MILLISECONDS)) == null) {
+                checkWriter();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        statistics.addStallNanos(System.nanoTime() - start);
+    }
+
+    private void put(ByteBuffer filled) throws IOException {
+        try {
+            while (!filledBuffers.offer(filled, 100, TimeUnit.MILLISECONDS)) {
+                checkWriter();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    /*
+     * Rethrows error of writer.
+     */
+    private void checkWriter() throws IOException {
+        if (writer.isDone())
+            awaitWriter();
+    }
+
+    private void awaitWriter() throws IOException {
+        try {
+            writer.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+        if (!closed)
+            throw new IOException("Writer is finished");
+    }
+
+    /**
+     * Waits until all data is written.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        long start = System.nanoTime();
+        try {
+            flush();
+            closed = true;
+            put(END_OF_DATA);
+            awaitWriter();
+        } finally {
+            closed = true;
+            writer.cancel(true);
+            if (ownChannel)
+                channel.close();
+            statistics.addCloseNanos(System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package mergesort.concurrent.io;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bytes and times of {@link WriteBehindOutputStream}s of one job: times of
+ * waiting for free buffer (stalls), of writing and of close (flush latency)
+ * are summed over all streams which share statistics.
+ *
+ * @version 0.4
+ */
+public class WriteBehindStatistics {
+
+    private final AtomicLong bytes = new AtomicLong();
+
+    private final AtomicLong stallNanos = new AtomicLong();
+
+    private final AtomicLong writeNanos = new AtomicLong();
+
+    private final AtomicLong closeNanos = new AtomicLong();
+
+    void addBytes(long bytes) {
+        this.bytes.addAndGet(bytes);
+    }
+
+    void addStallNanos(long nanos) {
+        stallNanos.addAndGet(nanos);
+    }
+
+    void addWriteNanos(long nanos) {
+        writeNanos.addAndGet(nanos);
+    }
+
+    void addCloseNanos(long nanos) {
+        closeNanos.addAndGet(nanos);
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public long getStallNanos() {
+        return stallNanos.get();
+    }
+
+    public long getWriteNanos() {
+        return writeNanos.get();
+    }
+
+    public long getCloseNanos() {
+        return closeNanos.get();
+    }
+
+    /**
+     * @return bytes and times in milliseconds
+     */
+    @Override
+    public String toString() {
+        return "write-behind bytes: " + bytes.get() + " stalls (ms): "
+                + stallNanos.get() / 1000000 + " writes (ms): "
+                + writeNanos.get() / 1000000 + " flush on close (ms): "
+                + closeNanos.get() / 1000000;
+    }
+}
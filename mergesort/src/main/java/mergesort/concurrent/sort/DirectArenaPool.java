@@ -0,0 +1,76 @@
+package mergesort.concurrent.sort;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of direct buffers for arenas of chunks. Bytes of chunks are kept out
+ * of heap, so they are not copied by garbage collector, and buffers are
+ * reused by the next chunks, so memory of process is about number of sorters
+ * multiplied by length of chunk. Buffer which is too short for chunk is
+ * dropped and freed by garbage collector.
+ *
+ * @version 0.4
+ */
+public class DirectArenaPool {
+
+    private final int minCapacity;
+
+    private final Queue<ByteBuffer> freeArenas = new ConcurrentLinkedQueue<>();
+
+    /*
+     * Bytes of allocated buffers.
+     */
+    private final AtomicLong allocatedBytes = new AtomicLong();
+
+    /**
+     * @param minCapacity
+     *            - capacity of new buffers, buffer is longer only if chunk is
+     *            longer
+     */
+    public DirectArenaPool(int minCapacity) {
+        if (minCapacity < 1 || minCapacity > LineChunk.MAX_ARENA_LENGTH)
+            throw new IllegalArgumentException(
+                    "Wrong capacity of arena: " + minCapacity);
+        this.minCapacity = minCapacity;
+    }
+
+    /**
+     * @return free buffer which is not shorter than length
+     */
+    public ByteBuffer acquire(int length) {
+        ByteBuffer arena;
+        while ((arena = freeArenas.poll()) != null) {
+            if (arena.capacity() >= length) {
+                arena.clear();
+                return arena;
+            }
+        }
+        int capacity = Math.max(minCapacity, length);
+        allocatedBytes.addAndGet(capacity);
+        return ByteBuffer.allocateDirect(capacity);
+    }
+
+    /**
+     * Returns buffer to pool, chunk of buffer should not be used after that.
+     */
+    public void release(ByteBuffer arena) {
+        freeArenas.add(arena);
+    }
+
+    /**
+     * Drops free buffers, they are freed by garbage collector.
+     */
+    public void clear() {
+        freeArenas.clear();
+    }
+
+    /**
+     * @return bytes of all buffers which were allocated by pool
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+}
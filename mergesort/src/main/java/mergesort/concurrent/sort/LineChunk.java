@@ -0,0 +1,563 @@
+package mergesort.concurrent.sort;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import mergesort.concurrent.io.ByteScanner;
+import mergesort.concurrent.io.LineCursor;
+import mergesort.concurrent.io.StringExceedMaxmumLengthException;
+
+/**
+ * Chunk of a source file kept as raw bytes in one arena. Arena is a heap
+ * array, a direct buffer or a region of file mapped into memory. Lines are
+ * not decoded into strings, instead every line is described by one long value
+ * in the index: start of line in arena in high 32 bits and length of line
+ * (without '\n') in low 32 bits. Sorting permutes the index only, the arena
+ * is written back untouched.
+ *
+ * Every entry of index is a pair: the first 8 bytes of line as big-endian
+ * long (padded with zero bytes) and description of line. Most comparisons
+ * are decided by unsigned comparison of prefixes without access to arena,
+ * bytes of lines are compared only if prefixes are equal.
+ *
+ * @version 0.4
+ */
+public final class LineChunk {
+
+    public static final int SUPPOSED_AVERAGE_STRING_LENGTH_IN_BYTES = 80;
+
+    /*
+     * Maximum length of chunk which can be placed in one byte array or in one
+     * mapped buffer.
+     */
+    public static final int MAX_ARENA_LENGTH = Integer.MAX_VALUE - 8;
+
+    /*
+     * Length of subarrays which are sorted by insertion sort.
+     */
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    /*
+     * Number of leading bytes of line which are kept in index.
+     */
+    private static final int PREFIX_LENGTH = 8;
+
+    /*
+     * Number of values of byte for radix sort.
+     */
+    private static final int RADIX = 256;
+
+    /*
+     * Length of ranges which are sorted by insertion sort in radix sort.
+     */
+    private static final int RADIX_INSERTION_SORT_THRESHOLD = 32;
+
+    /*
+     * Chunks with less lines are sorted by one thread.
+     */
+    public static final int MIN_PARALLEL_SORT_LENGTH = 8 * 1024;
+
+    /*
+     * Big-endian buffer with bytes of chunk. Only absolute positions are used.
+     */
+    private final ByteBuffer arena;
+
+    private final int arenaLength;
+
+    /*
+     * Pairs of prefix and description of line.
+     */
+    private long[] lines;
+
+    private int size;
+
+    /*
+     * Length of the longest line.
+     */
+    private int maxLineLength;
+
+    private LineChunk(ByteBuffer arena, int arenaLength) {
+        this.arena = arena;
+        this.arenaLength = arenaLength;
+        lines = new long[2 * (arenaLength
+                / SUPPOSED_AVERAGE_STRING_LENGTH_IN_BYTES + 1)];
+        indexLines();
+    }
+
+    /**
+     * Reads bytes of file from startPosition (inclusive) to endPosition
+     * (exclusive) into heap array and indexes lines.
+     */
+    public static LineChunk read(File file, long startPosition,
+            long endPosition) throws IOException {
+        long length = endPosition - startPosition;
+        if (length < 0 || length > MAX_ARENA_LENGTH)
+            throw new IllegalArgumentException(
+                    "Wrong length of chunk: " + length);
+        return read(file, startPosition, endPosition,
+                ByteBuffer.wrap(new byte[(int) length]));
+    }
+
+    /**
+     * Reads bytes of file from startPosition (inclusive) to endPosition
+     * (exclusive) into the beginning of given arena and indexes lines. Arena
+     * can be a direct buffer, then bytes of chunk are not in heap.
+     *
+     * @param arena
+     *            - buffer which is not shorter than chunk, its position and
+     *            limit are changed
+     */
+    public static LineChunk read(File file, long startPosition,
+            long endPosition, ByteBuffer arena) throws IOException {
+        long length = endPosition - startPosition;
+        if (length < 0 || length > arena.capacity())
+            throw new IllegalArgumentException(
+                    "Wrong length of chunk: " + length);
+        arena.clear().limit((int) length);
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            long position = startPosition;
+            while (arena.hasRemaining()) {
+                int readBytes = channel.read(arena, position);
+                if (readBytes == -1)
+                    throw new EOFException("Unexpected end of file: " + file
+                            + " at position: " + position);
+                position += readBytes;
+            }
+        }
+        arena.flip();
+        return wrap(arena);
+    }
+
+    /**
+     * Wraps bytes which are already in memory. Array is not copied.
+     */
+    public static LineChunk wrap(byte[] arena, int arenaLength) {
+        return new LineChunk(ByteBuffer.wrap(arena), arenaLength);
+    }
+
+    /**
+     * Wraps bytes of buffer from its position to its limit. Bytes are not
+     * copied.
+     */
+    public static LineChunk wrap(ByteBuffer buffer) {
+        return new LineChunk(buffer.slice(), buffer.remaining());
+    }
+
+    /**
+     * Maps region of file from startPosition (inclusive) to endPosition
+     * (exclusive) into memory. Region is divided into pieces not longer than
+     * maxPieceLength on line boundaries, every piece is a separate chunk.
+     * Lines are read directly from page cache, bytes are not copied into heap.
+     *
+     * @throws StringExceedMaxmumLengthException
+     *             if a line is longer than maxPieceLength
+     */
+    public static List<LineChunk> map(File file, long startPosition,
+            long endPosition, int maxPieceLength) throws IOException {
+        if (startPosition < 0 || endPosition < startPosition)
+            throw new IllegalArgumentException("Wrong region: "
+                    + startPosition + " " + endPosition);
+        if (maxPieceLength < 1 || maxPieceLength > MAX_ARENA_LENGTH)
+            throw new IllegalArgumentException(
+                    "Wrong length of piece: " + maxPieceLength);
+        List<LineChunk> pieces = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            long pieceStart = startPosition;
+            while (pieceStart < endPosition) {
+                int length = (int) Math.min(maxPieceLength,
+                        endPosition - pieceStart);
+                ByteBuffer piece = channel.map(FileChannel.MapMode.READ_ONLY,
+                        pieceStart, length);
+                if (pieceStart + length < endPosition) {
+                    int lineEnd = length - 1;
+                    while (lineEnd >= 0 && piece.get(lineEnd) != '\n')
+                        lineEnd--;
+                    if (lineEnd < 0)
+                        throw new StringExceedMaxmumLengthException(
+                                "String exceed: " + maxPieceLength + " byte");
+                    length = lineEnd + 1;
+                }
+                pieces.add(new LineChunk(piece, length));
+                pieceStart += length;
+            }
+        }
+        return pieces;
+    }
+
+    private void indexLines() {
+        ByteBuffer arenaWords = arena.duplicate()
+                .order(ByteOrder.LITTLE_ENDIAN);
+        int start = 0;
+        int index;
+        while ((index = ByteScanner.indexOf(arenaWords, start, arenaLength,
+                (byte) '\n')) != -1) {
+            addLine(start, index - start);
+            start = index + 1;
+        }
+        if (start < arenaLength)
+            addLine(start, arenaLength - start);
+    }
+
+    private void addLine(int start, int length) {
+        if (2 * size == lines.length) {
+            long[] newLines = new long[2
+                    * (size + (size >> 1) + 1)];
+            System.arraycopy(lines, 0, newLines, 0, 2 * size);
+            lines = newLines;
+        }
+        lines[2 * size] = prefix(start, length);
+        lines[2 * size + 1] = ((long) start << 32) | length;
+        size++;
+        maxLineLength = Math.max(maxLineLength, length);
+    }
+
+    /*
+     * First 8 bytes of line as big-endian long, short lines are padded with
+     * zero bytes.
+     */
+    private long prefix(int start, int length) {
+        if (length >= PREFIX_LENGTH)
+            return arena.getLong(start);
+        long prefix = 0;
+        for (int i = 0; i < PREFIX_LENGTH; i++) {
+            prefix <<= 8;
+            if (i < length)
+                prefix |= arena.get(start + i) & 0xFF;
+        }
+        return prefix;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getArenaLength() {
+        return arenaLength;
+    }
+
+    /**
+     * @return bytes of heap which are used while chunk is sorted by
+     *         {@link #sort()}: heap arena, index of lines and buffer of merge
+     *         sort. Mapped arena is not in heap.
+     */
+    public long getMemoryFootprint() {
+        long arenaBytes = arena.hasArray() ? arena.array().length : 0;
+        return arenaBytes + 8L * lines.length + 16L * size;
+    }
+
+    /**
+     * Sorts lines in unsigned byte order.
+     */
+    public void sort() {
+        long[] buffer = new long[2 * size];
+        mergeSort(lines, buffer, 0, size);
+    }
+
+    /**
+     * Sorts lines in unsigned byte order with threads of pool. Halves of index
+     * are sorted by separate tasks and merged, small ranges are sorted
+     * sequentially.
+     *
+     * @param pool
+     *            - pool for sorting or null for sorting by current thread
+     */
+    public void sort(ForkJoinPool pool) {
+        if (pool == null || pool.getParallelism() == 1
+                || size <= MIN_PARALLEL_SORT_LENGTH) {
+            sort();
+            return;
+        }
+        long[] buffer = new long[2 * size];
+        int leafLength = Math.max(MIN_PARALLEL_SORT_LENGTH,
+                size / (4 * pool.getParallelism()));
+        pool.invoke(new SortTask(buffer, 0, size, leafLength));
+    }
+
+    /**
+     * Sorts lines with in-place MSD radix sort (American flag sort). Lines of
+     * range are distributed into buckets by byte at current depth, buckets
+     * with more than one line are sorted by the next byte. Lines which end at
+     * current depth go first, so order is the same as for {@link #sort()}.
+     * Small ranges are sorted by insertion sort. Ranges are kept on explicit
+     * stack, so long common prefixes don't overflow thread stack.
+     */
+    public void sortRadix() {
+        int[] counts = new int[RADIX + 1];
+        int[] nexts = new int[RADIX + 1];
+        int[] ends = new int[RADIX + 1];
+        /*
+         * Triples of from, to and depth.
+         */
+        int[] stack = new int[3 * 64];
+        int stackSize = 0;
+        stack[stackSize++] = 0;
+        stack[stackSize++] = size;
+        stack[stackSize++] = 0;
+        while (stackSize > 0) {
+            int depth = stack[--stackSize];
+            int to = stack[--stackSize];
+            int from = stack[--stackSize];
+            if (to - from <= RADIX_INSERTION_SORT_THRESHOLD) {
+                insertionSort(lines, from, to);
+                continue;
+            }
+
+            Arrays.fill(counts, 0);
+            for (int i = from; i < to; i++) {
+                counts[bucket(i, depth)]++;
+            }
+            if (counts[0] == to - from)
+                continue;
+
+            int end = from;
+            for (int b = 0; b <= RADIX; b++) {
+                nexts[b] = end;
+                end += counts[b];
+                ends[b] = end;
+            }
+            for (int b = 0; b <= RADIX; b++) {
+                while (nexts[b] < ends[b]) {
+                    int i = nexts[b];
+                    int c = bucket(i, depth);
+                    if (c == b) {
+                        nexts[b]++;
+                    } else {
+                        swap(i, nexts[c]++);
+                    }
+                }
+            }
+
+            /*
+             * Lines of bucket 0 are equal, other buckets are sorted by the
+             * next byte.
+             */
+            for (int b = 1; b <= RADIX; b++) {
+                int bucketFrom = ends[b] - counts[b];
+                if (counts[b] > 1) {
+                    if (stackSize + 3 > stack.length)
+                        stack = Arrays.copyOf(stack, 2 * stack.length);
+                    stack[stackSize++] = bucketFrom;
+                    stack[stackSize++] = ends[b];
+                    stack[stackSize++] = depth + 1;
+                }
+            }
+        }
+    }
+
+    /*
+     * Bucket of line at depth: 0 if line is shorter than depth + 1, otherwise
+     * byte at depth plus 1. The first bytes are taken from prefix.
+     */
+    private int bucket(int index, int depth) {
+        long line = lines[2 * index + 1];
+        if (length(line) <= depth)
+            return 0;
+        if (depth < PREFIX_LENGTH)
+            return (int) (lines[2 * index] >>> (8 * (PREFIX_LENGTH - 1
+                    - depth)) & 0xFF) + 1;
+        return (arena.get(start(line) + depth) & 0xFF) + 1;
+    }
+
+    private void swap(int index1, int index2) {
+        long prefix = lines[2 * index1];
+        long line = lines[2 * index1 + 1];
+        lines[2 * index1] = lines[2 * index2];
+        lines[2 * index1 + 1] = lines[2 * index2 + 1];
+        lines[2 * index2] = prefix;
+        lines[2 * index2 + 1] = line;
+    }
+
+    private final class SortTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long[] buffer;
+
+        private final int from;
+
+        private final int to;
+
+        private final int leafLength;
+
+        private SortTask(long[] buffer, int from, int to, int leafLength) {
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+            this.leafLength = leafLength;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= leafLength) {
+                mergeSort(lines, buffer, from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new SortTask(buffer, from, middle, leafLength),
+                    new SortTask(buffer, middle, to, leafLength));
+            merge(lines, buffer, from, middle, to);
+        }
+    }
+
+    /*
+     * Top-down merge sort. Sorted range is placed in src.
+     */
+    private void mergeSort(long[] src, long[] buffer, int from, int to) {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            insertionSort(src, from, to);
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(src, buffer, from, middle);
+        mergeSort(src, buffer, middle, to);
+        merge(src, buffer, from, middle, to);
+    }
+
+    /*
+     * Merges sorted ranges [from, middle) and [middle, to) of src.
+     */
+    private void merge(long[] src, long[] buffer, int from, int middle,
+            int to) {
+        if (compare(src, middle - 1, src, middle) <= 0)
+            return;
+        System.arraycopy(src, 2 * from, buffer, 2 * from, 2 * (to - from));
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            int next;
+            if (right >= to || left < middle
+                    && compare(buffer, left, buffer, right) <= 0)
+                next = left++;
+            else
+                next = right++;
+            src[2 * i] = buffer[2 * next];
+            src[2 * i + 1] = buffer[2 * next + 1];
+        }
+    }
+
+    private void insertionSort(long[] src, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            long prefix = src[2 * i];
+            long line = src[2 * i + 1];
+            int j = i - 1;
+            while (j >= from && compare(src[2 * j], src[2 * j + 1], prefix,
+                    line) > 0) {
+                src[2 * j + 2] = src[2 * j];
+                src[2 * j + 3] = src[2 * j + 1];
+                j--;
+            }
+            src[2 * j + 2] = prefix;
+            src[2 * j + 3] = line;
+        }
+    }
+
+    private int compare(long[] entries1, int index1, long[] entries2,
+            int index2) {
+        return compare(entries1[2 * index1], entries1[2 * index1 + 1],
+                entries2[2 * index2], entries2[2 * index2 + 1]);
+    }
+
+    private int compare(long prefix1, long line1, long prefix2, long line2) {
+        if (prefix1 != prefix2)
+            return Long.compareUnsigned(prefix1, prefix2);
+        int length1 = length(line1);
+        int length2 = length(line2);
+        /*
+         * If a line is shorter than prefix, it is a prefix of the other line.
+         */
+        if (length1 < PREFIX_LENGTH || length2 < PREFIX_LENGTH)
+            return Integer.compare(length1, length2);
+        return UnsignedBytes.compare(arena, start(line1) + PREFIX_LENGTH,
+                length1 - PREFIX_LENGTH, arena, start(line2) + PREFIX_LENGTH,
+                length2 - PREFIX_LENGTH);
+    }
+
+    private static int start(long line) {
+        return (int) (line >>> 32);
+    }
+
+    private static int length(long line) {
+        return (int) line;
+    }
+
+    /**
+     * Writes lines in current order. Every line is terminated by '\n'.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        LineCursor cursor = cursor();
+        while (cursor.next()) {
+            out.write(cursor.getBuffer(), cursor.getOffset(),
+                    cursor.getLength());
+            out.write('\n');
+        }
+    }
+
+    /**
+     * @return cursor over lines in current order. Lines of heap arena are
+     *         returned as slices of arena, lines of direct or mapped arena
+     *         are copied into reusable buffer.
+     */
+    public LineCursor cursor() {
+        return new LineCursor() {
+
+            private final ByteBuffer view = arena.duplicate();
+
+            private final byte[] lineArray = arena.hasArray() ? arena.array()
+                    : new byte[maxLineLength];
+
+            private int index = -1;
+
+            private int offset;
+
+            private int length;
+
+            @Override
+            public boolean next() {
+                if (index + 1 >= size)
+                    return false;
+                long line = lines[2 * ++index + 1];
+                length = length(line);
+                if (arena.hasArray()) {
+                    offset = arena.arrayOffset() + start(line);
+                } else {
+                    offset = 0;
+                    view.position(start(line));
+                    view.get(lineArray, 0, length);
+                }
+                return true;
+            }
+
+            @Override
+            public byte[] getBuffer() {
+                return lineArray;
+            }
+
+            @Override
+            public int getOffset() {
+                return offset;
+            }
+
+            @Override
+            public int getLength() {
+                return length;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
@@ -0,0 +1,92 @@
+package mergesort.concurrent.sort;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Merge sort of object array with threads of fork/join pool. Array is divided
+ * into halves until ranges are small enough, ranges are sorted by
+ * {@link Arrays#sort(Object[], int, int, Comparator)} and merged back. Sort
+ * is stable.
+ *
+ * @version 0.4
+ */
+public final class ParallelMergeSort<T> extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    /*
+     * Arrays with less elements are sorted by one thread.
+     */
+    public static final int MIN_PARALLEL_SORT_LENGTH = 8 * 1024;
+
+    private final T[] array;
+
+    private final T[] buffer;
+
+    private final Comparator<? super T> comparator;
+
+    private final int from;
+
+    private final int to;
+
+    private final int leafLength;
+
+    private ParallelMergeSort(T[] array, T[] buffer,
+            Comparator<? super T> comparator, int from, int to,
+            int leafLength) {
+        this.array = array;
+        this.buffer = buffer;
+        this.comparator = comparator;
+        this.from = from;
+        this.to = to;
+        this.leafLength = leafLength;
+    }
+
+    /**
+     * Sorts array with threads of pool.
+     *
+     * @param pool
+     *            - pool for sorting or null for sorting by current thread
+     */
+    public static <T> void sort(T[] array, Comparator<? super T> comparator,
+            ForkJoinPool pool) {
+        if (pool == null || pool.getParallelism() == 1
+                || array.length <= MIN_PARALLEL_SORT_LENGTH) {
+            Arrays.sort(array, comparator);
+            return;
+        }
+        int leafLength = Math.max(MIN_PARALLEL_SORT_LENGTH,
+                array.length / (4 * pool.getParallelism()));
+        pool.invoke(new ParallelMergeSort<T>(array, array.clone(), comparator,
+                0, array.length, leafLength));
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= leafLength) {
+            Arrays.sort(array, from, to, comparator);
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        invokeAll(
+                new ParallelMergeSort<T>(array, buffer, comparator, from,
+                        middle, leafLength),
+                new ParallelMergeSort<T>(array, buffer, comparator, middle, to,
+                        leafLength));
+        if (comparator.compare(array[middle - 1], array[middle]) <= 0)
+            return;
+        System.arraycopy(array, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || left < middle
+                    && comparator.compare(buffer[left], buffer[right]) <= 0)
+                array[i] = buffer[left++];
+            else
+                array[i] = buffer[right++];
+        }
+    }
+}
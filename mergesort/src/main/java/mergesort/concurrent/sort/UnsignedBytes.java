@@ -0,0 +1,75 @@
+package mergesort.concurrent.sort;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Lexicographical comparison of byte sequences, where every byte is treated as
+ * an unsigned value. For UTF-8 encoded strings this order is the same as the
+ * order of Unicode code points.
+ * 
+ * @version 0.4
+ */
+public final class UnsignedBytes {
+
+    private UnsignedBytes() {
+    }
+
+    /**
+     * @return negative value, zero or positive value if the first sequence is
+     *         less than, equal to or greater than the second sequence
+     */
+    public static int compare(byte[] a, int aOffset, int aLength, byte[] b,
+            int bOffset, int bLength) {
+        int length = Math.min(aLength, bLength);
+        for (int i = 0; i < length; i++) {
+            int aByte = a[aOffset + i] & 0xFF;
+            int bByte = b[bOffset + i] & 0xFF;
+            if (aByte != bByte)
+                return aByte - bByte;
+        }
+        return aLength - bLength;
+    }
+
+    /**
+     * @param from
+     *            - index from which sequences are compared, preceding bytes
+     *            are known to be equal
+     * @return length of the common prefix of sequences, it is the index of
+     *         the first different byte or length of the shorter sequence
+     */
+    public static int mismatch(byte[] a, int aOffset, int aLength, byte[] b,
+            int bOffset, int bLength, int from) {
+        int length = Math.min(aLength, bLength);
+        int i = from;
+        while (i < length && a[aOffset + i] == b[bOffset + i]) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Compares sequences placed in buffers with absolute positions. Buffers
+     * should have big-endian byte order, eight bytes are compared at a time.
+     * 
+     * @return negative value, zero or positive value if the first sequence is
+     *         less than, equal to or greater than the second sequence
+     */
+    public static int compare(ByteBuffer a, int aOffset, int aLength,
+            ByteBuffer b, int bOffset, int bLength) {
+        int length = Math.min(aLength, bLength);
+        int i = 0;
+        for (; i + Long.BYTES <= length; i += Long.BYTES) {
+            long aWord = a.getLong(aOffset + i);
+            long bWord = b.getLong(bOffset + i);
+            if (aWord != bWord)
+                return Long.compareUnsigned(aWord, bWord);
+        }
+        for (; i < length; i++) {
+            int aByte = a.get(aOffset + i) & 0xFF;
+            int bByte = b.get(bOffset + i) & 0xFF;
+            if (aByte != bByte)
+                return aByte - bByte;
+        }
+        return aLength - bLength;
+    }
+}
@@ -0,0 +1,71 @@
+package mergesort.concurrent;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.junit.Test;
+
+/**
+ * @version 0.4
+ */
+public class ChunkProducerTest {
+
+    @Test
+    public void cutOnLinesTest() throws IOException, InterruptedException {
+        byte[] source = "aaa\nbb\ncccc\nd\neeeee\nff".getBytes();
+        BlockingQueue<ByteBuffer> queue = new LinkedBlockingQueue<>();
+
+        int numberOfChunks = new ChunkProducer(new ByteArrayInputStream(source),
+                8, queue::put).produce();
+
+        assertEquals(4, numberOfChunks);
+        assertArrayEquals(source, join(queue));
+    }
+
+    @Test
+    public void longLineTest() throws IOException, InterruptedException {
+        byte[] source = "a\nbbbbbbbbbbbbbbbbbbbb\ncc\n".getBytes();
+        BlockingQueue<ByteBuffer> queue = new LinkedBlockingQueue<>();
+
+        int numberOfChunks = new ChunkProducer(new ByteArrayInputStream(source),
+                4, queue::put).produce();
+
+        assertEquals(queue.size(), numberOfChunks);
+        assertArrayEquals(source, join(queue));
+    }
+
+    @Test
+    public void emptyStreamTest() throws IOException, InterruptedException {
+        BlockingQueue<ByteBuffer> queue = new LinkedBlockingQueue<>();
+
+        int numberOfChunks = new ChunkProducer(
+                new ByteArrayInputStream(new byte[0]), 4, queue::put).produce();
+
+        assertEquals(1, numberOfChunks);
+        assertEquals(0, queue.poll().remaining());
+    }
+
+    /*
+     * Every chunk except the last one should end with '\n'.
+     */
+    private static byte[] join(BlockingQueue<ByteBuffer> queue)
+            throws IOException {
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        ByteBuffer chunk;
+        while ((chunk = queue.poll()) != null) {
+            byte[] bytes = new byte[chunk.remaining()];
+            chunk.get(bytes);
+            if (!queue.isEmpty())
+                assertEquals('\n', bytes[bytes.length - 1]);
+            joined.write(bytes);
+        }
+        return joined.toByteArray();
+    }
+}
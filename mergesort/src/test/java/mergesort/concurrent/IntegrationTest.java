@@ -8,11 +8,8 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.util.Date;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.PriorityBlockingQueue;
-import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -30,10 +27,11 @@ public class IntegrationTest {
 
     @Test
     public void test() throws Exception {
-        Utils.setVerbose(true);
+        SortConfig config = new SortConfig();
+        config.setVerbose(true);
         long startTime = System.currentTimeMillis();
-        Utils.setChunkFileLength(4 * 1024);
-        Utils.setMaxNumberOfConcurrentThreads(5);
+        config.setChunkFileLength(4 * 1024);
+        config.setMaxNumberOfConcurrentThreads(5);
 //        String testPath = ClassLoader
 //                .getSystemResource("IntegrationTest_500M.txt").getPath();
 
@@ -45,24 +43,22 @@ public class IntegrationTest {
 
         File testFile = new File(testPath);
 
-        Utils.setSourceFile(testFile);
+        config.setSourceFile(testFile);
 
-        SplitterSorter splitterSorter = new SplitterSorter();
+        SortJob job = new SortJob(config);
+        SplitterSorter splitterSorter = job.getSplitterSorter();
 
         int numberOfSplittingIntervals = SplitterSorter.makePointsForSplitting(
-                testFile, Utils.getMaxChunkFileLength(),
-                Utils.getPointsForSplittingQueue());
-        Utils.numberOfSplittingIntervals.set(numberOfSplittingIntervals);
+                testFile, config.getMaxChunkFileLength(),
+                job.getPointsForSplittingQueue());
+        job.setNumberOfSplittingIntervals(numberOfSplittingIntervals);
 
-        System.out.println(Utils.getPointsForSplittingQueue());
-        System.out.println("Splitting intervals: " + Utils.getPointsForSplittingQueue().size());
-
-        Utils.setSortedChunksQueue(new PriorityBlockingQueue<File>(
-                numberOfSplittingIntervals, new FileLengthComparator()));
+        System.out.println(job.getPointsForSplittingQueue());
+        System.out.println("Splitting intervals: " + job.getPointsForSplittingQueue().size());
 
         MergerSortThreadFactory mergerSortThreadFactory = new MergerSortThreadFactory();
         ExecutorService executorService = Executors.newFixedThreadPool(
-                Utils.getMaxNumberOfConcurrentThreads(),
+                config.getMaxNumberOfConcurrentThreads(),
                 mergerSortThreadFactory);
 
         // ThreadPoolExecutor executorService = new ThreadPoolExecutor(9, 9, 5,
@@ -72,54 +68,31 @@ public class IntegrationTest {
 
         int maxSplitterThreads = 10;
         int maxMergerThreads = 2;
-        Utils.setMaxNumOfMergingChunks(20);
-
-        Utils.setMaxSplitterThreads(maxSplitterThreads); // -p
-        Utils.setMaxMergerThreads(maxMergerThreads); // -r
-
-        for (int i = 0; i < maxSplitterThreads; i++) {
-            executorService.execute(splitterSorter);
-        }
-
-        Merger merger = new Merger();
-        for (int i = 0; i < maxMergerThreads; i++) {
-            executorService.execute(merger);
-        }
+        config.setMaxNumOfMergingChunks(20);
 
-        try {
-            Utils.checkSemaphoreAndHelth(
-                    splitterSorter.getAllChanksSortedSemaphore(),
-                    splitterSorter.getThreadSet(), "Splitting");
+        config.setMaxSplitterThreads(maxSplitterThreads); // -p
+        config.setMaxMergerThreads(maxMergerThreads); // -r
 
-            if (Utils.isVerbose())
-                System.out.println("mergesort: " + new Date()
-                        + " : Ack end of splitting and sorting file");
+        Merger merger = new Merger(job, executorService);
+        splitterSorter.sortAll(executorService, merger::addRun)
+                .whenComplete((v, e) -> {
+                    if (e != null)
+                        merger.getResult().completeExceptionally(e);
+                    else
+                        merger.allRunsAdded();
+                });
 
-            Utils.checkSemaphoreAndHelth(merger.getAllChanksMergedSemaphore(),
-                    merger.getThreadSet(), "Merging");
+        File mergedFile = merger.getResult().get();
 
-            if (Utils.isVerbose())
-                System.out.println("mergesort: " + new Date()
-                        + " : Ack end of merging file");
+        if (config.isVerbose())
+            System.out.println("mergesort: " + new Date()
+                    + " : Ack end of merging file");
 
-        } catch (InternalInconsistencyException e) {
-            e.printStackTrace();
-            System.out.println("ERROR: mergesort. Inconsistency error.");
-            // System.exit(254);
-            fail();
-        }
-
-        BlockingQueue<File> sortedChunksQueue = Utils.getSortedChunksQueue();
-
-        File mergedFile = sortedChunksQueue.poll(1, TimeUnit.SECONDS);
-
-        assertEquals(Utils.numberOfSplittingIntervals.get(),
+        assertEquals(job.getNumberOfSplittingIntervals(),
                 splitterSorter.getNumberOfSortedChunks());
-        assertEquals(1L, Utils.numberOfChunksForMerging.get());
-        // assertEquals(0, sortedChunksQueue.size());
 
-        int intervals = Utils.numberOfSplittingIntervals.get();
-        int chunks = Utils.getMaxNumOfMergingChunks();
+        int intervals = job.getNumberOfSplittingIntervals();
+        int chunks = config.getMaxNumOfMergingChunks();
         int numberOfMerges = 0;
         if (intervals > 1) {
             int nextRound = intervals;
@@ -131,13 +104,12 @@ public class IntegrationTest {
             } while (nextRound >= chunks);
             if (nextRound > 1) numberOfMerges++;
         }
+        assertEquals(numberOfMerges, merger.getNumberOfMerges());
+        assertEquals(numberOfMerges, job.getMergeNumber());
 
-        assertEquals(numberOfMerges, Merger.getMergeNumber());
-
-        if (Utils.numberOfSplittingIntervals.get() != splitterSorter
+        if (job.getNumberOfSplittingIntervals() != splitterSorter
                 .getNumberOfSortedChunks()
-                || Utils.numberOfChunksForMerging.get() != 1
-                || numberOfMerges != Merger.getMergeNumber()
+                || numberOfMerges != job.getMergeNumber()
                 || mergedFile == null) {
             System.out.println("ERROR: mergesort. Integral internal error.");
             fail("Internal error");
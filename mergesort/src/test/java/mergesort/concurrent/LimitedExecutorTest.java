@@ -0,0 +1,63 @@
+package mergesort.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * @version 0.4
+ */
+public class LimitedExecutorTest {
+
+    @Test
+    public void limitTest() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        LimitedExecutor executor = new LimitedExecutor(pool, 2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(50);
+        try {
+            for (int i = 0; i < 50; i++) {
+                executor.execute(() -> {
+                    int current = running.incrementAndGet();
+                    maxRunning.accumulateAndGet(current, Math::max);
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                    done.countDown();
+                });
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertTrue(maxRunning.get() <= 2);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /*
+     * Failed task should free its slot.
+     */
+    @Test
+    public void failedTaskTest() throws InterruptedException {
+        LimitedExecutor executor = new LimitedExecutor(Runnable::run, 1);
+        AtomicInteger completed = new AtomicInteger();
+        try {
+            executor.execute(() -> {
+                throw new IllegalStateException("Task is failed");
+            });
+        } catch (IllegalStateException e) {
+        }
+        executor.execute(completed::incrementAndGet);
+        assertEquals(1, completed.get());
+    }
+}
@@ -0,0 +1,122 @@
+package mergesort.concurrent;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import mergesort.concurrent.io.FrontCodedOutputStream;
+import mergesort.concurrent.io.FrontCodedRunReader;
+import mergesort.concurrent.io.LineCursor;
+import mergesort.concurrent.io.RunReader;
+
+/**
+ * @version 0.4
+ */
+public class LoserTreeTest {
+
+    private static String merge(List<List<String>> runs) throws IOException {
+        return merge(runs, false);
+    }
+
+    private static String merge(List<List<String>> runs, boolean frontCoded)
+            throws IOException {
+        LineCursor[] cursors = new LineCursor[runs.size()];
+        for (int i = 0; i < cursors.length; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (String line : runs.get(i)) {
+                sb.append(line).append('\n');
+            }
+            byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+            if (frontCoded) {
+                ByteArrayOutputStream run = new ByteArrayOutputStream();
+                try (FrontCodedOutputStream out = new FrontCodedOutputStream(
+                        run)) {
+                    out.write(bytes);
+                }
+                cursors[i] = new FrontCodedRunReader(
+                        new ByteArrayInputStream(run.toByteArray()), 16);
+            } else
+                cursors[i] = new RunReader(new ByteArrayInputStream(bytes),
+                        16);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new LoserTree(cursors).mergeTo(out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void mergeTest() throws IOException {
+        Random random = new Random(17);
+        for (int k = 1; k <= 21; k++) {
+            List<List<String>> runs = new ArrayList<>();
+            List<String> all = new ArrayList<>();
+            for (int i = 0; i < k; i++) {
+                List<String> run = new ArrayList<>();
+                int lines = random.nextInt(50);
+                for (int j = 0; j < lines; j++) {
+                    run.add(String.format("%06d", random.nextInt(1000)));
+                }
+                Collections.sort(run);
+                runs.add(run);
+                all.addAll(run);
+            }
+            Collections.sort(all);
+            StringBuilder expected = new StringBuilder();
+            for (String line : all) {
+                expected.append(line).append('\n');
+            }
+            assertEquals("k = " + k, expected.toString(), merge(runs));
+        }
+    }
+
+    /*
+     * Short lines of two letters have many common prefixes, duplicates and
+     * lines which are prefixes of other lines.
+     */
+    @Test
+    public void frontCodedMergeTest() throws IOException {
+        Random random = new Random(19);
+        for (int k = 1; k <= 21; k++) {
+            List<List<String>> runs = new ArrayList<>();
+            List<String> all = new ArrayList<>();
+            for (int i = 0; i < k; i++) {
+                List<String> run = new ArrayList<>();
+                int lines = random.nextInt(60);
+                for (int j = 0; j < lines; j++) {
+                    StringBuilder line = new StringBuilder();
+                    int length = random.nextInt(7);
+                    for (int l = 0; l < length; l++) {
+                        line.append(random.nextBoolean() ? 'a' : 'b');
+                    }
+                    run.add(line.toString());
+                }
+                Collections.sort(run);
+                runs.add(run);
+                all.addAll(run);
+            }
+            Collections.sort(all);
+            StringBuilder expected = new StringBuilder();
+            for (String line : all) {
+                expected.append(line).append('\n');
+            }
+            assertEquals("k = " + k, expected.toString(), merge(runs, true));
+        }
+    }
+
+    @Test
+    public void emptyRunsTest() throws IOException {
+        List<List<String>> runs = new ArrayList<>();
+        runs.add(new ArrayList<String>());
+        runs.add(new ArrayList<String>());
+        assertEquals("", merge(runs));
+    }
+}
@@ -0,0 +1,99 @@
+package mergesort.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+/**
+ * @version 0.4
+ */
+public class MemoryBrokerTest {
+
+    @Test
+    public void reserveTest() {
+        MemoryBroker broker = new MemoryBroker(100);
+        CompletableFuture<MemoryBroker.Reservation> first = broker.reserve(60);
+        CompletableFuture<MemoryBroker.Reservation> second = broker
+                .reserve(60);
+
+        assertTrue(first.isDone());
+        assertFalse(second.isDone());
+        assertEquals(1, broker.getNumberOfWaits());
+
+        first.join().close();
+        assertTrue(second.isDone());
+        assertEquals(60, broker.getReserved());
+        second.join().close();
+        assertEquals(0, broker.getReserved());
+        assertEquals(60, broker.getPeakReserved());
+    }
+
+    /*
+     * Request gets less than preferred if there is at least its minimum.
+     */
+    @Test
+    public void shrinkTest() {
+        MemoryBroker broker = new MemoryBroker(100);
+        MemoryBroker.Reservation first = broker.reserve(70).join();
+        MemoryBroker.Reservation second = broker.reserve(20, 80).join();
+
+        assertEquals(30, second.getBytes());
+        first.close();
+        second.close();
+        second.close();
+        assertEquals(0, broker.getReserved());
+    }
+
+    /*
+     * Small request doesn't overtake waiting big one.
+     */
+    @Test
+    public void orderTest() {
+        MemoryBroker broker = new MemoryBroker(100);
+        MemoryBroker.Reservation first = broker.reserve(50).join();
+        CompletableFuture<MemoryBroker.Reservation> big = broker.reserve(80);
+        CompletableFuture<MemoryBroker.Reservation> small = broker
+                .reserve(10);
+
+        assertFalse(big.isDone());
+        assertFalse(small.isDone());
+        first.close();
+        assertTrue(big.isDone());
+        assertTrue(small.isDone());
+    }
+
+    /*
+     * Allocated memory can exceed budget, next requests wait for it.
+     */
+    @Test
+    public void resizeTest() {
+        MemoryBroker broker = new MemoryBroker(100);
+        MemoryBroker.Reservation reservation = broker.reserve(50).join();
+        reservation.resize(120);
+        CompletableFuture<MemoryBroker.Reservation> next = broker.reserve(0,
+                10);
+
+        assertFalse(next.isDone());
+        reservation.resize(40);
+        assertEquals(10, next.join().getBytes());
+        assertEquals(120, broker.getPeakReserved());
+    }
+
+    /*
+     * Request which is greater than budget waits for all memory.
+     */
+    @Test
+    public void requestGreaterThanBudgetTest() {
+        MemoryBroker broker = new MemoryBroker(100);
+        MemoryBroker.Reservation first = broker.reserve(1).join();
+        CompletableFuture<MemoryBroker.Reservation> big = broker.reserve(500);
+
+        assertFalse(big.isDone());
+        first.close();
+        assertEquals(100, big.join().getBytes());
+    }
+}
@@ -0,0 +1,87 @@
+package mergesort.concurrent;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @version 0.4
+ */
+public class MergePlanTest {
+
+    @Test
+    public void oneRunTest() {
+        MergePlan plan = MergePlan.build(new long[] { 10 }, 4);
+        assertEquals(0, plan.getSteps().size());
+        assertEquals(0, plan.getPlannedBytes());
+    }
+
+    @Test
+    public void oneMergeTest() {
+        MergePlan plan = MergePlan.build(new long[] { 3, 1, 2 }, 4);
+        assertEquals(1, plan.getSteps().size());
+        assertArrayEquals(new int[] { 1, 2, 0 },
+                plan.getSteps().get(0).getInputs());
+        assertEquals(6, plan.getPlannedBytes());
+    }
+
+    /*
+     * Two dummy runs: the first merge takes two shortest runs, greedy merge
+     * of four shortest runs would rewrite 25 bytes.
+     */
+    @Test
+    public void dummyRunsTest() {
+        assertEquals(2, MergePlan.numberOfDummyRuns(5, 4));
+        assertEquals(0, MergePlan.numberOfDummyRuns(7, 4));
+        assertEquals(0, MergePlan.numberOfDummyRuns(9, 2));
+
+        MergePlan plan = MergePlan.build(new long[] { 5, 4, 3, 2, 1 }, 4);
+        List<MergePlan.Step> steps = plan.getSteps();
+        assertEquals(2, steps.size());
+        assertArrayEquals(new int[] { 4, 3 }, steps.get(0).getInputs());
+        assertEquals(5, steps.get(0).getNode());
+        assertArrayEquals(new int[] { 2, 5, 1, 0 }, steps.get(1).getInputs());
+        assertEquals(15, steps.get(1).getLength());
+        assertEquals(18, plan.getPlannedBytes());
+    }
+
+    /*
+     * Planned merger makes as many merges as the default one, finished job
+     * checks the number of merges for both of them.
+     */
+    @Test
+    public void numberOfMergesTest() {
+        for (int c = 2; c <= 6; c++) {
+            for (int n = 1; n <= 50; n++) {
+                assertEquals(SortJob.numberOfMerges(n, c),
+                        MergePlan.build(new long[n], c).getSteps().size());
+            }
+        }
+    }
+
+    @Test
+    public void inputsAreMergedBeforeTest() {
+        long[] lengths = new long[100];
+        for (int i = 0; i < lengths.length; i++) {
+            lengths[i] = (i * 37) % 101;
+        }
+        MergePlan plan = MergePlan.build(lengths, 3);
+        List<MergePlan.Step> steps = plan.getSteps();
+        boolean[] made = new boolean[lengths.length + steps.size()];
+        for (int i = 0; i < lengths.length; i++) {
+            made[i] = true;
+        }
+        for (MergePlan.Step step : steps) {
+            for (int input : step.getInputs()) {
+                assertEquals(true, made[input]);
+                made[input] = false;
+            }
+            made[step.getNode()] = true;
+        }
+        assertEquals(true, made[made.length - 1]);
+        assertEquals(50, steps.size());
+    }
+}
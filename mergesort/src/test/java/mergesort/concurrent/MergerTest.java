@@ -5,14 +5,14 @@ import static org.junit.Assert.assertEquals;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -22,18 +22,104 @@ import org.junit.Test;
  * @version 0.2.1
  */
 public class MergerTest {
-    
+
+    private SortConfig config;
+
     @Before
     public void setup() {
-        Utils.setSortedChunksQueue(new PriorityBlockingQueue<File>(10,
-                new FileLengthComparator()));
+        config = new SortConfig();
     }
 
     @Test
     public void test() throws Exception {
+        mergeTestFiles();
+    }
+
+    @Test
+    public void loserTreeTest() throws Exception {
+        config.setChunkSortAlgorithm(ChunkSortAlgorithm.BYTES);
+        config.setMergeEngine(MergeEngine.LOSER_TREE);
+        mergeTestFiles();
+    }
+
+    @Test
+    public void readAheadTest() throws Exception {
+        config.setReadAheadBudget(1024 * 1024);
+        mergeTestFiles();
+    }
+
+    @Test
+    public void writeBehindTest() throws Exception {
+        config.setWriteBehind(true);
+        mergeTestFiles();
+    }
+
+    /*
+     * Two of three chunks are merged into compressed run at first, the final
+     * merge reads it and writes plain result.
+     */
+    @Test
+    public void compressionTest() throws Exception {
+        config.setMaxNumOfMergingChunks(2);
+        for (RunCompression runCompression : new RunCompression[] {
+                RunCompression.DEFLATE, RunCompression.LZ4 }) {
+            config.setRunCompression(runCompression);
+            assertEquals(2, mergeTestFiles().getMergeNumber());
+        }
+    }
+
+    @Test
+    public void frontCodingTest() throws Exception {
+        config.setMaxNumOfMergingChunks(2);
+        config.setFrontCoding(true);
+        for (MergeEngine mergeEngine : MergeEngine.values()) {
+            config.setChunkSortAlgorithm(mergeEngine.isByteLevel()
+                    ? ChunkSortAlgorithm.BYTES : ChunkSortAlgorithm.STRING);
+            config.setMergeEngine(mergeEngine);
+            mergeTestFiles();
+        }
+    }
+
+    @Test
+    public void plannedMergeTest() throws Exception {
+        config.setMaxNumOfMergingChunks(2);
+        List<File> runs = new ArrayList<>();
+        for (String name : new String[] { "MergerTest01.txt",
+                "MergerTest02.txt", "MergerTest03.txt" }) {
+            File run = File.createTempFile(name, null, config.getTmpDirFile());
+            Files.copy(new File(ClassLoader.getSystemResource(name).getPath())
+                    .toPath(), run.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            runs.add(run);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        PlannedMerger plannedMerger = new PlannedMerger(new SortJob(config),
+                executor);
+        File mergedFile = plannedMerger.merge(runs).get();
+        executor.shutdown();
+        assertEquals(2, plannedMerger.getPlan().getSteps().size());
+
+        List<String> sortedList = Files.readAllLines(mergedFile.toPath());
+        assertArrayEquals(
+                new String[] { "00", "01", "02", "03", "04", "05", "06", "07",
+                        "08", "09", "10", "11", "12", "13", "14" },
+                sortedList.toArray(new String[0]));
+        mergedFile.delete();
+    }
+
+    /*
+     * Runs are added while merges are running, merger should not wait for
+     * -c runs at the end.
+     */
+    @Test
+    public void eventDrivenMergeTest() throws Exception {
+        config.setMaxNumOfMergingChunks(2);
+        config.setMaxMergerThreads(2);
+        mergeTestFiles();
+    }
+
+    private SortJob mergeTestFiles() throws Exception {
 
-        Queue<File> sortedChunksQueue = Utils.getSortedChunksQueue();
-        
         File[] testFiles = new File[] {
                 new File(ClassLoader.getSystemResource("MergerTest01.txt")
                         .getPath()),
@@ -41,39 +127,30 @@ public class MergerTest {
                         .getPath()),
                 new File(ClassLoader.getSystemResource("MergerTest03.txt")
                         .getPath()) };
-        File[] chunkOfFiles = new File[3];
 
-        Utils.numberOfChunksForMerging.set(chunkOfFiles.length);
-        
+        SortJob job = new SortJob(config);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Merger merger = new Merger(job, executor);
         for (int i = 0; i < 3; i++) {
-            chunkOfFiles[i] = File.createTempFile(testFiles[i].getName(), null,
-                    Utils.getTmpDirFile());
-            Files.copy(testFiles[i].toPath(), chunkOfFiles[i].toPath(),
+            File chunkOfFile = File.createTempFile(testFiles[i].getName(),
+                    null, config.getTmpDirFile());
+            Files.copy(testFiles[i].toPath(), chunkOfFile.toPath(),
                     StandardCopyOption.REPLACE_EXISTING);
-            sortedChunksQueue.offer(chunkOfFiles[i]);
+            merger.addRun(chunkOfFile);
         }
+        merger.allRunsAdded();
 
-        File mergerOutputFile = File.createTempFile("mergerOutputFile", null,
-                Utils.getTmpDirFile());
-        Utils.setSourceFile(mergerOutputFile);
-        Utils.allChunksSorted.set(true);
-        Merger merger = new Merger();
-        Thread  mergerThread = new Thread(merger);
-        mergerThread.start();
-        
-        merger.getAllChanksMergedSemaphore().acquire();
-        
-        Utils.allChunksSorted.set(true);
-        
-        assertEquals(1L, Utils.numberOfChunksForMerging.get());
-        assertEquals(1, sortedChunksQueue.size());
-
-        File mergedFile = sortedChunksQueue.poll();
+        File mergedFile = merger.getResult().get();
+        executor.shutdown();
 
         List<String> sortedList = new ArrayList<>();
 
-        try (BufferedReader br = new BufferedReader(
-                new FileReader(mergedFile))) {
+        /*
+         * Result is a temporary run if the last run was merged before all
+         * runs were added.
+         */
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                job.getRunFiles().openInput(mergedFile, 1)))) {
             String inputLine = null;
             while ((inputLine = br.readLine()) != null) {
                 sortedList.add(inputLine);
@@ -87,7 +164,7 @@ public class MergerTest {
                         "10", "11", "12", "13", "14"},
                 sortedList.toArray(new String[0]));
         mergedFile.delete();
-        mergerOutputFile.delete();
+        return job;
     }
     
 }
@@ -0,0 +1,142 @@
+package mergesort.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+/**
+ * @version 0.4
+ */
+public class PartitionedMergerTest {
+
+    private static String mergeRandomChunks(Executor executor,
+            int numberOfPartitions, int numberOfChunks, int range)
+            throws IOException {
+        return mergeRandomChunks(executor, RunCompression.NONE,
+                numberOfPartitions, numberOfChunks, range, 2000);
+    }
+
+    /*
+     * Chunks are written as temporary runs, so they are compressed if
+     * compression is set.
+     */
+    private static String mergeRandomChunks(Executor executor,
+            RunCompression compression, int numberOfPartitions,
+            int numberOfChunks, int range, int maxLines) throws IOException {
+        SortConfig config = new SortConfig();
+        config.setRunCompression(compression);
+        SortJob job = new SortJob(config);
+        Random random = new Random(numberOfPartitions * 31 + range);
+        List<String> all = new ArrayList<>();
+        List<File> chunks = new ArrayList<>();
+        for (int i = 0; i < numberOfChunks; i++) {
+            List<String> chunk = new ArrayList<>();
+            int lines = random.nextInt(maxLines);
+            for (int j = 0; j < lines; j++) {
+                chunk.add(String.format("%012d:%d", random.nextInt(range),
+                        random.nextInt(10)));
+            }
+            Collections.sort(chunk);
+            all.addAll(chunk);
+            StringBuilder sb = new StringBuilder();
+            for (String line : chunk) {
+                sb.append(line).append('\n');
+            }
+            File chunkFile = File.createTempFile("PartitionedMergerTest", null);
+            try (OutputStream out = job.getRunFiles().openOutput(chunkFile,
+                    true)) {
+                out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            chunks.add(chunkFile);
+        }
+        Collections.sort(all);
+        StringBuilder expected = new StringBuilder();
+        for (String line : all) {
+            expected.append(line).append('\n');
+        }
+
+        File mergedFile = File.createTempFile("PartitionedMergerTest", null);
+        new PartitionedMerger(job, executor, numberOfPartitions)
+                .merge(chunks, mergedFile);
+        for (File chunk : chunks) {
+            assertFalse(chunk.exists());
+        }
+        String merged = new String(Files.readAllBytes(mergedFile.toPath()),
+                StandardCharsets.UTF_8);
+        mergedFile.delete();
+        assertEquals(expected.toString(), merged);
+        return merged;
+    }
+
+    @Test
+    public void mergeTest() throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int partitions = 1; partitions <= 8; partitions++) {
+                mergeRandomChunks(executor, partitions, 5, 100000);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void duplicatesTest() throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            mergeRandomChunks(executor, 4, 3, 3);
+            mergeRandomChunks(executor, 16, 2, 1);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /*
+     * Chunks of several blocks are cut inside blocks and on their bounds.
+     */
+    @Test
+    public void compressedChunksTest() throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (RunCompression compression : new RunCompression[] {
+                    RunCompression.DEFLATE, RunCompression.LZ4 }) {
+                mergeRandomChunks(executor, compression, 1, 3, 100000,
+                        60000);
+                mergeRandomChunks(executor, compression, 7, 4, 100000,
+                        60000);
+                mergeRandomChunks(executor, compression, 4, 3, 3, 60000);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /*
+     * Merge runs in the only thread of the executor, so partitions are
+     * merged by the calling thread.
+     */
+    @Test(timeout = 60000)
+    public void busyExecutorTest() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(() -> mergeRandomChunks(executor, 8, 5, 100000))
+                    .get();
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package mergesort.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * @version 0.4
+ */
+public class ReplacementSelectionTest {
+
+    @Test
+    public void randomLinesTest() throws IOException {
+        Random random = new Random(17);
+        List<String> lines = new ArrayList<>();
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            String line = Integer.toString(random.nextInt(1000000));
+            lines.add(line);
+            source.append(line).append('\n');
+        }
+
+        for (ChunkSortAlgorithm algorithm : ChunkSortAlgorithm.values()) {
+            List<File> runs = new ArrayList<>();
+            int numberOfRuns = new ReplacementSelection(64 * 1024, algorithm,
+                    false, new RunFiles(new SortConfig())).generateRuns(
+                            new ByteArrayInputStream(
+                                    source.toString().getBytes()),
+                            runs::add);
+
+            assertEquals(runs.size(), numberOfRuns);
+            /*
+             * Heap keeps about 64K / (64 + 6) lines, runs should be about
+             * twice longer.
+             */
+            assertTrue(numberOfRuns < 5000 / (64 * 1024 / 70));
+
+            List<String> merged = new ArrayList<>();
+            for (File run : runs) {
+                merged.addAll(readSortedRun(run));
+                run.delete();
+            }
+            Collections.sort(merged);
+            Collections.sort(lines);
+            assertEquals(lines, merged);
+        }
+    }
+
+    /*
+     * Short lines are replaced by long ones, heap keeps only about 64K /
+     * (64 + 4K) long lines, so random long lines give many short runs.
+     */
+    @Test
+    public void longLinesTest() throws IOException {
+        Random random = new Random(19);
+        List<String> lines = new ArrayList<>();
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            String line = Integer.toString(random.nextInt(10));
+            lines.add(line);
+            source.append(line).append('\n');
+        }
+        char[] padding = new char[4 * 1024];
+        Arrays.fill(padding, 'x');
+        for (int i = 0; i < 200; i++) {
+            String line = random.nextInt(1000000) + new String(padding);
+            lines.add(line);
+            source.append(line).append('\n');
+        }
+
+        List<File> runs = new ArrayList<>();
+        int numberOfRuns = new ReplacementSelection(64 * 1024,
+                ChunkSortAlgorithm.BYTES, false,
+                new RunFiles(new SortConfig())).generateRuns(
+                        new ByteArrayInputStream(source.toString().getBytes()),
+                        runs::add);
+
+        assertEquals(runs.size(), numberOfRuns);
+        assertTrue(numberOfRuns >= 4);
+        List<String> merged = new ArrayList<>();
+        for (File run : runs) {
+            merged.addAll(readSortedRun(run));
+            run.delete();
+        }
+        Collections.sort(merged);
+        Collections.sort(lines);
+        assertEquals(lines, merged);
+    }
+
+    @Test
+    public void sortedLinesTest() throws IOException {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            source.append(String.format("%08d", i)).append('\n');
+        }
+        List<File> runs = new ArrayList<>();
+
+        int numberOfRuns = new ReplacementSelection(1024,
+                ChunkSortAlgorithm.BYTES, false, new RunFiles(new SortConfig()))
+                        .generateRuns(
+                        new ByteArrayInputStream(source.toString().getBytes()),
+                        runs::add);
+
+        assertEquals(1, numberOfRuns);
+        assertEquals(source.length(), runs.get(0).length());
+        runs.get(0).delete();
+    }
+
+    /*
+     * Every line is repeated three times in random order, equal lines of one
+     * run are written once.
+     */
+    @Test
+    public void uniqueTest() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            lines.add(String.format("%08d", i % 1000));
+        }
+        Collections.shuffle(lines, new Random(7));
+        StringBuilder source = new StringBuilder();
+        for (String line : lines) {
+            source.append(line).append('\n');
+        }
+        List<File> runs = new ArrayList<>();
+
+        ReplacementSelection replacementSelection = new ReplacementSelection(
+                64 * 1024, ChunkSortAlgorithm.BYTES, true,
+                new RunFiles(new SortConfig()));
+        replacementSelection.generateRuns(
+                new ByteArrayInputStream(source.toString().getBytes()),
+                runs::add);
+
+        Set<String> unique = new HashSet<>();
+        long written = 0;
+        for (File run : runs) {
+            List<String> runLines = readSortedRun(run);
+            assertEquals(new HashSet<>(runLines).size(), runLines.size());
+            unique.addAll(runLines);
+            written += runLines.size();
+            run.delete();
+        }
+        assertEquals(1000, unique.size());
+        assertTrue(replacementSelection.getDuplicates() > 0);
+        assertEquals(3000, written + replacementSelection.getDuplicates());
+    }
+
+    @Test
+    public void emptySourceTest() throws IOException {
+        List<File> runs = new ArrayList<>();
+
+        int numberOfRuns = new ReplacementSelection(1024,
+                ChunkSortAlgorithm.BYTES, false, new RunFiles(new SortConfig()))
+                        .generateRuns(
+                        new ByteArrayInputStream(new byte[0]), runs::add);
+
+        assertEquals(1, numberOfRuns);
+        assertEquals(0L, runs.get(0).length());
+        runs.get(0).delete();
+    }
+
+    private static List<String> readSortedRun(File run) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(run))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (!lines.isEmpty())
+                    assertTrue(lines.get(lines.size() - 1).compareTo(line) <= 0);
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,89 @@
+package mergesort.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @version 0.4
+ */
+public class RunFilesTest {
+
+    private File directory;
+
+    private SortConfig config;
+
+    private RunFiles runFiles;
+
+    @Before
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("mrgsrt_test").toFile();
+        config = new SortConfig();
+        runFiles = new RunFiles(config);
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()),
+                StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void resultFileTest() throws IOException {
+        File output = new File(directory, "sorted.txt");
+        File result = runFiles.createResultFile(output);
+        assertEquals(directory, result.getParentFile());
+        assertTrue(result.getName().startsWith(".sorted.txt.mrgsrt_"));
+    }
+
+    @Test
+    public void moveResultTest() throws IOException {
+        File output = new File(directory, "sorted.txt");
+        Files.write(output.toPath(), "old\n".getBytes(StandardCharsets.UTF_8));
+        File result = runFiles.createResultFile(output);
+        try (OutputStream out = runFiles.openOutput(result)) {
+            out.write("a\nb\n".getBytes(StandardCharsets.UTF_8));
+        }
+        runFiles.moveResult(result, output);
+        assertFalse(result.exists());
+        assertEquals("a\nb\n", read(output));
+        assertEquals(1, directory.listFiles().length);
+    }
+
+    /*
+     * Temporary run is decoded when it is the result.
+     */
+    @Test
+    public void moveEncodedResultTest() throws IOException {
+        config.setRunCompression(RunCompression.LZ4);
+        config.setFrontCoding(true);
+        File output = new File(directory, "sorted.txt");
+        File run = File.createTempFile("mrgsrt_s_", null, directory);
+        try (OutputStream out = runFiles.openOutput(run, true)) {
+            out.write("a\nab\nabc\n".getBytes(StandardCharsets.UTF_8));
+        }
+        assertFalse(runFiles.isPlain(run));
+        runFiles.moveResult(run, output);
+        assertFalse(run.exists());
+        assertTrue(runFiles.isPlain(run));
+        assertEquals("a\nab\nabc\n", read(output));
+        assertEquals(1, directory.listFiles().length);
+    }
+}
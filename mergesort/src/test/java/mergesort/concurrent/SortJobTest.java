@@ -0,0 +1,348 @@
+package mergesort.concurrent;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import mergesort.concurrent.sort.UnsignedBytes;
+
+/**
+ * @version 0.4
+ */
+public class SortJobTest {
+
+    private File directory;
+
+    @Before
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("mrgsrt_test").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private SortConfig newConfig(String source, String output) {
+        SortConfig config = new SortConfig();
+        config.setSourceFile(
+                new File(ClassLoader.getSystemResource(source).getPath()));
+        config.setOutputFile(new File(directory, output));
+        config.setMaxNumOfMergingChunks(3);
+        config.setMaxSplitterThreads(2);
+        config.setMaxMergerThreads(2);
+        return config;
+    }
+
+    /*
+     * Jobs with different options share one pool, every job counts its own
+     * chunks and merges.
+     */
+    @Test
+    public void concurrentJobsTest() throws Exception {
+        SortConfig first = newConfig("SplitterTest_40K.txt", "first.txt");
+        first.setChunkFileLength(4 * 1024);
+        first.setChunkSortAlgorithm(ChunkSortAlgorithm.BYTES);
+        first.setFrontCoding(true);
+        SortConfig second = newConfig("SorterTest_10K.txt", "second.txt");
+        second.setChunkFileLength(1024);
+        second.setRunCompression(RunCompression.LZ4);
+        second.setPlannedMerge(true);
+
+        SortJob firstJob = new SortJob(first);
+        SortJob secondJob = new SortJob(second);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            CompletableFuture<File> firstResult = firstJob.start(executor);
+            CompletableFuture<File> secondResult = secondJob.start(executor);
+            assertSorted(first.getSourceFile(), firstResult.get());
+            assertSorted(second.getSourceFile(), secondResult.get());
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(firstJob.getNumberOfSplittingIntervals(),
+                firstJob.getSplitterSorter().getNumberOfSortedChunks());
+        assertEquals(secondJob.getPlan().getSteps().size(),
+                secondJob.getMergeNumber());
+    }
+
+    /*
+     * Budget is less than memory of two chunks: sequentially read chunks are
+     * shrunk and chunks wait for memory, all memory is released at the end.
+     */
+    @Test
+    public void memoryBudgetTest() throws Exception {
+        MemoryBroker broker = new MemoryBroker(8 * 1024);
+        SortConfig config = newConfig("SplitterTest_40K.txt", "sorted.txt");
+        config.setChunkFileLength(4 * 1024);
+        config.setChunkSortAlgorithm(ChunkSortAlgorithm.BYTES);
+        config.setInputMode(InputMode.SEQUENTIAL);
+        config.setMemoryBroker(broker);
+
+        SortJob job = new SortJob(config);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            assertSorted(config.getSourceFile(), job.start(executor).get());
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(0, broker.getReserved());
+        assertTrue(broker.getNumberOfWaits() > 0);
+    }
+
+    /*
+     * Pipelined chunks wait for memory of small budget.
+     */
+    @Test
+    public void pipelinedTest() throws Exception {
+        MemoryBroker broker = new MemoryBroker(16 * 1024);
+        SortConfig config = newConfig("SplitterTest_40K.txt", "sorted.txt");
+        config.setChunkFileLength(1024);
+        config.setPipelined(true);
+        config.setMemoryBroker(broker);
+
+        SortJob job = new SortJob(config);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            assertSorted(config.getSourceFile(), job.start(executor).get());
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(job.getNumberOfSplittingIntervals(),
+                job.getSplitterSorter().getNumberOfSortedChunks());
+        assertEquals(0, broker.getReserved());
+    }
+
+    /*
+     * Auto input mode is resolved by job when it starts, options are not
+     * changed.
+     */
+    @Test
+    public void autoInputModeTest() throws Exception {
+        SortConfig config = newConfig("SorterTest_10K.txt", "sorted.txt");
+        config.setChunkFileLength(1024);
+        config.setInputMode(InputMode.AUTO);
+
+        SortJob job = new SortJob(config);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            assertSorted(config.getSourceFile(), job.start(executor).get());
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(job.getInputMode() == InputMode.READ
+                || job.getInputMode() == InputMode.SEQUENTIAL);
+        assertEquals(InputMode.AUTO, config.getInputMode());
+    }
+
+    /*
+     * Runs are striped across two directories, both directories get runs.
+     */
+    @Test
+    public void stripedTempDirectoriesTest() throws Exception {
+        File first = new File(directory, "first");
+        File second = new File(directory, "second");
+        first.mkdir();
+        second.mkdir();
+        SortConfig config = newConfig("SplitterTest_40K.txt", "sorted.txt");
+        config.setChunkFileLength(1024);
+        config.setTmpDirFiles(Arrays.asList(first, second));
+
+        SortJob job = new SortJob(config);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            assertSorted(config.getSourceFile(), job.start(executor).get());
+        } finally {
+            executor.shutdown();
+        }
+        for (TempDirectories.Directory tmpDir : job.getRunFiles()
+                .getTempDirectories().getDirectories()) {
+            assertTrue(tmpDir.getNumberOfRuns() > 0);
+            assertTrue(tmpDir.getRead().getBytes() > 0);
+            assertEquals(0, tmpDir.getFile().list().length);
+            tmpDir.getFile().delete();
+        }
+    }
+
+    /*
+     * Runs are written and read with direct I/O, or through page cache if it
+     * is not supported.
+     */
+    @Test
+    public void directIoTest() throws Exception {
+        SortConfig config = newConfig("SplitterTest_40K.txt", "sorted.txt");
+        config.setChunkFileLength(4 * 1024);
+        config.setDirectIo(true);
+        config.setTmpDirFile(directory);
+
+        SortJob job = new SortJob(config);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            assertSorted(config.getSourceFile(), job.start(executor).get());
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, directory.list().length);
+    }
+
+    /*
+     * Every line is repeated, result has every line once. Runs of bytes are
+     * merged by loser tree, runs of strings by priority queue.
+     */
+    @Test
+    public void uniqueTest() throws Exception {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            lines.add(String.format("line %04d", (i * 7) % 300));
+        }
+        File source = new File(directory, "source.txt");
+        Files.write(source.toPath(), lines);
+        List<String> expected = new ArrayList<>(new TreeSet<>(lines));
+
+        for (ChunkSortAlgorithm algorithm : new ChunkSortAlgorithm[] {
+                ChunkSortAlgorithm.BYTES, ChunkSortAlgorithm.STRING }) {
+            SortConfig config = newConfig("SorterTest_10K.txt", "sorted.txt");
+            config.setSourceFile(source);
+            config.setChunkFileLength(1024);
+            config.setChunkSortAlgorithm(algorithm);
+            config.setMergeEngine(algorithm.isByteLevel()
+                    ? MergeEngine.LOSER_TREE : MergeEngine.PRIORITY_QUEUE);
+            config.setFinalMergePartitions(2);
+            config.setUnique(true);
+
+            SortJob job = new SortJob(config);
+            ExecutorService executor = Executors.newFixedThreadPool(3);
+            try {
+                assertEquals(expected, Files
+                        .readAllLines(job.start(executor).get().toPath()));
+            } finally {
+                executor.shutdown();
+            }
+            assertEquals(lines.size() - expected.size(), job.getDuplicates());
+        }
+    }
+
+    /*
+     * U+FFFD is less than U+1F600 in UTF-8 bytes, but greater in UTF-16, so
+     * chunks sorted by bytes are merged by loser tree.
+     */
+    @Test
+    public void byteOrderMergeTest() throws Exception {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            lines.add((i % 2 == 0 ? "\uFFFD" : "\uD83D\uDE00") + (i * 7) % 1000);
+        }
+        File source = new File(directory, "source.txt");
+        Files.write(source.toPath(), lines, StandardCharsets.UTF_8);
+        List<byte[]> expected = new ArrayList<>();
+        for (String line : lines) {
+            expected.add(line.getBytes(StandardCharsets.UTF_8));
+        }
+        Collections.sort(expected, (a, b) -> UnsignedBytes.compare(a, 0,
+                a.length, b, 0, b.length));
+
+        for (ChunkSortAlgorithm algorithm : new ChunkSortAlgorithm[] {
+                ChunkSortAlgorithm.BYTES, ChunkSortAlgorithm.RADIX }) {
+            SortConfig config = newConfig("SorterTest_10K.txt", "sorted.txt");
+            config.setSourceFile(source);
+            config.setChunkFileLength(1024);
+            config.setChunkSortAlgorithm(algorithm);
+
+            SortJob job = new SortJob(config);
+            ExecutorService executor = Executors.newFixedThreadPool(3);
+            try {
+                List<String> sorted = Files.readAllLines(
+                        job.start(executor).get().toPath(),
+                        StandardCharsets.UTF_8);
+                assertEquals(expected.size(), sorted.size());
+                for (int i = 0; i < sorted.size(); i++) {
+                    assertArrayEquals(expected.get(i),
+                            sorted.get(i).getBytes(StandardCharsets.UTF_8));
+                }
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+
+    /*
+     * Partitioned merger compares bytes, so the final merge of chunks sorted
+     * as strings is not partitioned.
+     */
+    @Test
+    public void stringPartitionsTest() throws Exception {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            lines.add((i % 2 == 0 ? "\uFFFD" : "\uD83D\uDE00") + (i * 7) % 1000);
+        }
+        File source = new File(directory, "source.txt");
+        Files.write(source.toPath(), lines, StandardCharsets.UTF_8);
+        SortConfig config = newConfig("SorterTest_10K.txt", "sorted.txt");
+        config.setSourceFile(source);
+        config.setChunkFileLength(1024);
+        config.setFinalMergePartitions(4);
+
+        // lines are decoded and encoded with the default charset
+        Charset charset = Charset.defaultCharset();
+        List<String> expected = Arrays.asList(new String(
+                Files.readAllBytes(source.toPath()), charset).split("\n"));
+        Collections.sort(expected);
+
+        SortJob job = new SortJob(config);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            File sorted = job.start(executor).get();
+            byte[] expectedBytes = (String.join("\n", expected) + "\n")
+                    .getBytes(charset);
+            assertEquals(new String(expectedBytes, charset), new String(
+                    Files.readAllBytes(sorted.toPath()), charset));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void stringMergeOfByteChunksTest() {
+        SortConfig config = newConfig("SorterTest_10K.txt", "sorted.txt");
+        config.setChunkSortAlgorithm(ChunkSortAlgorithm.BYTES);
+        config.setMergeEngine(MergeEngine.PRIORITY_QUEUE);
+        new SortJob(config).start(Runnable::run);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void byteMergeOfStringChunksTest() {
+        SortConfig config = newConfig("SorterTest_10K.txt", "sorted.txt");
+        config.setChunkSortAlgorithm(ChunkSortAlgorithm.STRING);
+        config.setMergeEngine(MergeEngine.LOSER_TREE);
+        new SortJob(config).start(Runnable::run);
+    }
+
+    private static void assertSorted(File source, File output)
+            throws IOException {
+        List<String> expected = new ArrayList<>(
+                Files.readAllLines(source.toPath()));
+        Collections.sort(expected);
+        assertEquals(expected, Files.readAllLines(output.toPath()));
+    }
+}
@@ -1,16 +1,22 @@
 package mergesort.concurrent;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.util.Queue;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -21,26 +27,47 @@ import org.junit.Test;
  */
 public class SplitterSorterTest {
 
+    private SortConfig config;
+
+    private SortJob job;
+
     @Before
     public void setup() {
-        Utils.setChunkFileLength(4096);
-        Utils.getPointsForSplittingQueue().clear();
-        Utils.setSortedChunksQueue(new PriorityBlockingQueue<File>(10,
-                new FileLengthComparator()));
+        config = new SortConfig();
+        config.setChunkFileLength(4096);
+        job = new SortJob(config);
+        sortedChunksQueue = new LinkedBlockingQueue<>();
+    }
+
+    /*
+     * Sorted runs.
+     */
+    private Queue<File> sortedChunksQueue;
+
+    /*
+     * Sorts all chunks and waits for the end of sorting.
+     */
+    private void sortAll(SplitterSorter splitterSorter) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            splitterSorter.sortAll(executor, sortedChunksQueue::offer).get();
+        } finally {
+            executor.shutdown();
+        }
     }
 
     @Test
-    public void splitFileTest() throws InterruptedException {
+    public void splitFileTest() throws Exception {
         int maxChunckSize = 4096;
-        Utils.setChunkFileLength(maxChunckSize);
+        config.setChunkFileLength(maxChunckSize);
 
         String testPath = ClassLoader.getSystemResource("SplitterTest_40K.txt")
                 .getPath();
 
         File testFile = new File(testPath);
 
-        Utils.setSourceFile(testFile);
-        Queue<Tuple<Long, Long>> pointsForSplittingQueue = Utils
+        config.setSourceFile(testFile);
+        Queue<Tuple<Long, Long>> pointsForSplittingQueue = job
                 .getPointsForSplittingQueue();
 
         pointsForSplittingQueue.add(new Tuple<Long, Long>(0L, 10 * 1021L));
@@ -50,15 +77,12 @@ public class SplitterSorterTest {
                 .add(new Tuple<Long, Long>(20 * 1021L, 30 * 1021L));
         pointsForSplittingQueue
                 .add(new Tuple<Long, Long>(30 * 1021L, testFile.length()));
-        Utils.numberOfSplittingIntervals.set(pointsForSplittingQueue.size());
-        SplitterSorter splitterSorter = new SplitterSorter();
-        Thread splitterSorterThread = new Thread(splitterSorter);
-        splitterSorterThread.start();
-        splitterSorterThread.join();
+        job.setNumberOfSplittingIntervals(pointsForSplittingQueue.size());
+        SplitterSorter splitterSorter = new SplitterSorter(job);
+        sortAll(splitterSorter);
 
-        Queue<File> sortedChunksQueue = Utils.getSortedChunksQueue();
         assertEquals(4, sortedChunksQueue.size());
-        assertEquals(4L, Utils.numberOfSplittingIntervals.get());
+        assertEquals(4L, job.getNumberOfSplittingIntervals());
         assertEquals(4L, splitterSorter.getNumberOfSortedChunks());
 
         while (!sortedChunksQueue.isEmpty()) {
@@ -69,14 +93,14 @@ public class SplitterSorterTest {
     @Test
     public void findStartOfLineTest() throws IOException {
         int maxChunckSize = 4096;
-        Utils.setChunkFileLength(maxChunckSize);
+        config.setChunkFileLength(maxChunckSize);
 
         String testPath = ClassLoader.getSystemResource("SplitterTest_40K.txt")
                 .getPath();
 
         File testFile = new File(testPath);
 
-        Utils.setSourceFile(testFile);
+        config.setSourceFile(testFile);
 
         long position = 0;
 
@@ -92,34 +116,30 @@ public class SplitterSorterTest {
 
     @Test
     public void findPointsForSplitting()
-            throws IOException, InterruptedException {
+            throws Exception {
         int maxChunckSize = 10 * 1024;
-        Utils.setChunkFileLength(maxChunckSize);
-        Queue<File> sortedChunksQueue = Utils.getSortedChunksQueue();
+        config.setChunkFileLength(maxChunckSize);
 
         String testPath = ClassLoader.getSystemResource("SplitterTest_40K.txt")
                 .getPath();
 
         File testFile = new File(testPath);
 
-        Utils.setSourceFile(testFile);
+        config.setSourceFile(testFile);
 
-        SplitterSorter splitterSorter = new SplitterSorter();
+        SplitterSorter splitterSorter = new SplitterSorter(job);
 
-        Utils.numberOfSplittingIntervals.set(SplitterSorter.makePointsForSplitting(
-                testFile, Utils.getMaxChunkFileLength(),
-                Utils.getPointsForSplittingQueue()));
+        job.setNumberOfSplittingIntervals(SplitterSorter.makePointsForSplitting(
+                testFile, config.getMaxChunkFileLength(),
+                job.getPointsForSplittingQueue()));
 
-        assertEquals(5, Utils.getPointsForSplittingQueue().size());
+        assertEquals(5, job.getPointsForSplittingQueue().size());
 
-        Utils.numberOfSplittingIntervals
-                .set(Utils.getPointsForSplittingQueue().size());
-        Thread splitterSorterThread = new Thread(splitterSorter);
-        splitterSorterThread.start();
-        splitterSorterThread.join();
+        job.setNumberOfSplittingIntervals(job.getPointsForSplittingQueue().size());
+        sortAll(splitterSorter);
 
         assertEquals(5, sortedChunksQueue.size());
-        assertEquals(5L, Utils.numberOfSplittingIntervals.get());
+        assertEquals(5L, job.getNumberOfSplittingIntervals());
         assertEquals(5L, splitterSorter.getNumberOfSortedChunks());
 
         while (!sortedChunksQueue.isEmpty()) {
@@ -148,30 +168,26 @@ public class SplitterSorterTest {
         File testFile = new File(testPath);
 
         SplitterSorter.makePointsForSplitting(testFile, maxChunckSize,
-                Utils.getPointsForSplittingQueue());
+                job.getPointsForSplittingQueue());
 
-        assertEquals(1, Utils.getPointsForSplittingQueue().size());
+        assertEquals(1, job.getPointsForSplittingQueue().size());
     }
     
     @Test
-    public void withoutSorting() throws IOException, InterruptedException {
-        Utils.numberOfChunksForMerging.set(0);
+    public void withoutSorting() throws Exception {
         int maxChunckSize = 100 * 1024;
-        Utils.setChunkFileLength(maxChunckSize);
-        Utils.setSortedChunksQueue(new PriorityBlockingQueue<File>(10,
-                new FileLengthComparator()));
+        config.setChunkFileLength(maxChunckSize);
 
-        Queue<File> sortedChunksQueue = Utils.getSortedChunksQueue();
 
         String testPath = ClassLoader.getSystemResource("SorterTest_10K.txt")
                 .getPath();
         
         File testFile = new File(testPath);
 
-        Utils.setSourceFile(testFile);
+        config.setSourceFile(testFile);
 
         File chunkOfFile = File.createTempFile(testFile.getName(), null,
-                Utils.getTmpDirFile());
+                config.getTmpDirFile());
         
 
         Files.copy(testFile.toPath(), chunkOfFile.toPath(),
@@ -179,17 +195,15 @@ public class SplitterSorterTest {
         
         //unsortedChunksQueue.offer(chunkOfFile);
 
-        Utils.numberOfSplittingIntervals.set(SplitterSorter.makePointsForSplitting(
-                chunkOfFile, Utils.getMaxChunkFileLength(),
-                Utils.getPointsForSplittingQueue()));
+        job.setNumberOfSplittingIntervals(SplitterSorter.makePointsForSplitting(
+                chunkOfFile, config.getMaxChunkFileLength(),
+                job.getPointsForSplittingQueue()));
 
-        SplitterSorter splitterSorter = new SplitterSorter();
-        Thread thread = new Thread(splitterSorter);
-        thread.start();
-        thread.join();
+        SplitterSorter splitterSorter = new SplitterSorter(job);
+        sortAll(splitterSorter);
 
         assertEquals(1L, splitterSorter.getNumberOfSortedChunks());
-        assertEquals(1L, Utils.numberOfChunksForMerging.get());
+        assertEquals(1, sortedChunksQueue.size());
 
         File sortedFile = sortedChunksQueue.poll();
 
@@ -210,38 +224,32 @@ public class SplitterSorterTest {
     }
 
     @Test
-    public void withSorting() throws IOException, InterruptedException {
-        Utils.setChunkFileLength(64 * 1024);
+    public void withSorting() throws Exception {
+        config.setChunkFileLength(64 * 1024);
 
-        Utils.numberOfChunksForMerging.set(0);
-        Utils.setSortedChunksQueue(new PriorityBlockingQueue<File>(10,
-                new FileLengthComparator()));
 
-        Queue<File> sortedChunksQueue = Utils.getSortedChunksQueue();
 
         String testPath = ClassLoader.getSystemResource("SplitterTest_40K.txt")
                 .getPath();
         File testFile = new File(testPath);
 
-        Utils.setSourceFile(testFile);
+        config.setSourceFile(testFile);
 
         File chunkOfFile = File.createTempFile(testFile.getName(), null,
-                Utils.getTmpDirFile());
+                config.getTmpDirFile());
 
         Files.copy(testFile.toPath(), chunkOfFile.toPath(),
                 StandardCopyOption.REPLACE_EXISTING);
 
-        Utils.numberOfSplittingIntervals.set(SplitterSorter.makePointsForSplitting(
-                chunkOfFile, Utils.getMaxChunkFileLength(),
-                Utils.getPointsForSplittingQueue()));
+        job.setNumberOfSplittingIntervals(SplitterSorter.makePointsForSplitting(
+                chunkOfFile, config.getMaxChunkFileLength(),
+                job.getPointsForSplittingQueue()));
 
-        SplitterSorter splitterSorter = new SplitterSorter();
-        Thread thread = new Thread(splitterSorter);
-        thread.start();
-        thread.join();
+        SplitterSorter splitterSorter = new SplitterSorter(job);
+        sortAll(splitterSorter);
 
-        assertEquals(Utils.numberOfSplittingIntervals.get(), splitterSorter.getNumberOfSortedChunks());
-        assertEquals(Utils.numberOfSplittingIntervals.get(), Utils.numberOfChunksForMerging.get());
+        assertEquals(job.getNumberOfSplittingIntervals(), splitterSorter.getNumberOfSortedChunks());
+        assertEquals(job.getNumberOfSplittingIntervals(), sortedChunksQueue.size());
 
         File sortedFile = sortedChunksQueue.poll();
         int lineCounter = 0;
@@ -260,4 +268,169 @@ public class SplitterSorterTest {
 
     }
 
+    @Test
+    public void withSortingBytesMapped()
+            throws Exception {
+        config.setInputMode(InputMode.MMAP);
+        withSortingBytes();
+    }
+
+    @Test
+    public void withSortingBytesOffHeap() throws Exception {
+        config.setOffHeap(true);
+        withSortingBytes();
+    }
+
+    @Test
+    public void withSortingBytesPipelined() throws Exception {
+        config.setPipelined(true);
+        withSortingBytes();
+    }
+
+    @Test
+    public void withSortingBytes() throws Exception {
+        config.setChunkSortAlgorithm(ChunkSortAlgorithm.BYTES);
+        config.setChunkFileLength(8 * 1024);
+
+
+
+        String testPath = ClassLoader.getSystemResource("SorterTest_10K.txt")
+                .getPath();
+        File testFile = new File(testPath);
+
+        config.setSourceFile(testFile);
+
+        job.setNumberOfSplittingIntervals(SplitterSorter.makePointsForSplitting(
+                testFile, config.getMaxChunkFileLength(),
+                job.getPointsForSplittingQueue()));
+
+        SplitterSorter splitterSorter = new SplitterSorter(job);
+        sortAll(splitterSorter);
+
+        assertEquals(2, job.getNumberOfSplittingIntervals());
+        assertEquals(2, splitterSorter.getNumberOfSortedChunks());
+
+        long sortedLength = 0;
+        while (!sortedChunksQueue.isEmpty()) {
+            File sortedFile = sortedChunksQueue.poll();
+            sortedLength += sortedFile.length();
+            try (BufferedReader br = new BufferedReader(
+                    new FileReader(sortedFile))) {
+                String previous = br.readLine();
+                String inputString = null;
+                while ((inputString = br.readLine()) != null) {
+                    assertTrue(previous.compareTo(inputString) <= 0);
+                    previous = inputString;
+                }
+            }
+            sortedFile.delete();
+        }
+        assertEquals(testFile.length(), sortedLength);
+    }
+
+    @Test
+    public void withSortingSequential()
+            throws Exception {
+        config.setInputMode(InputMode.SEQUENTIAL);
+        config.setChunkFileLength(8 * 1024);
+        job.setNumberOfSplittingIntervals(Integer.MAX_VALUE);
+
+
+        String testPath = ClassLoader.getSystemResource("SorterTest_10K.txt")
+                .getPath();
+        File testFile = new File(testPath);
+
+        config.setSourceFile(testFile);
+
+        SplitterSorter splitterSorter = new SplitterSorter(job);
+        sortAll(splitterSorter);
+
+        assertEquals(2, job.getNumberOfSplittingIntervals());
+        assertEquals(2, splitterSorter.getNumberOfSortedChunks());
+
+        long sortedLength = 0;
+        while (!sortedChunksQueue.isEmpty()) {
+            File sortedFile = sortedChunksQueue.poll();
+            sortedLength += sortedFile.length();
+            try (BufferedReader br = new BufferedReader(
+                    new FileReader(sortedFile))) {
+                String previous = br.readLine();
+                String inputString = null;
+                while ((inputString = br.readLine()) != null) {
+                    assertTrue(previous.compareTo(inputString) <= 0);
+                    previous = inputString;
+                }
+            }
+            sortedFile.delete();
+        }
+        assertEquals(testFile.length(), sortedLength);
+    }
+
+    /*
+     * Standard input is read to the end, but it is not closed.
+     */
+    @Test
+    public void withSortingStandardInput() throws Exception {
+        config.setInputMode(InputMode.SEQUENTIAL);
+        config.setChunkFileLength(8 * 1024);
+        config.setSourceFile(null);
+        job.setNumberOfSplittingIntervals(Integer.MAX_VALUE);
+
+        File testFile = new File(ClassLoader
+                .getSystemResource("SorterTest_10K.txt").getPath());
+        AtomicBoolean closed = new AtomicBoolean();
+        InputStream standardInput = System.in;
+        System.setIn(new ByteArrayInputStream(
+                Files.readAllBytes(testFile.toPath())) {
+
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        });
+        try {
+            sortAll(new SplitterSorter(job));
+        } finally {
+            System.setIn(standardInput);
+        }
+
+        assertFalse(closed.get());
+        assertEquals(2, job.getNumberOfSplittingIntervals());
+        long sortedLength = 0;
+        while (!sortedChunksQueue.isEmpty()) {
+            File sortedFile = sortedChunksQueue.poll();
+            sortedLength += sortedFile.length();
+            sortedFile.delete();
+        }
+        assertEquals(testFile.length(), sortedLength);
+    }
+
+    @Test
+    public void withReplacementSelection()
+            throws Exception {
+        config.setRunGeneration(RunGeneration.REPLACEMENT);
+        config.setChunkFileLength(8 * 1024);
+        job.setNumberOfSplittingIntervals(Integer.MAX_VALUE);
+
+
+        String testPath = ClassLoader.getSystemResource("SplitterTest_40K.txt")
+                .getPath();
+        File testFile = new File(testPath);
+        config.setSourceFile(testFile);
+
+        SplitterSorter splitterSorter = new SplitterSorter(job);
+        sortAll(splitterSorter);
+
+        /*
+         * Source is already sorted.
+         */
+        assertEquals(1, job.getNumberOfSplittingIntervals());
+        assertEquals(1, splitterSorter.getNumberOfSortedChunks());
+        assertEquals(1, sortedChunksQueue.size());
+
+        File sortedFile = sortedChunksQueue.poll();
+        assertEquals(testFile.length(), sortedFile.length());
+        sortedFile.delete();
+    }
+
 }
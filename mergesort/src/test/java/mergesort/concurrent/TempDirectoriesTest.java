@@ -0,0 +1,102 @@
+package mergesort.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @version 0.4
+ */
+public class TempDirectoriesTest {
+
+    private File first;
+
+    private File second;
+
+    @Before
+    public void setup() throws IOException {
+        first = Files.createTempDirectory("mrgsrt_test").toFile();
+        second = Files.createTempDirectory("mrgsrt_test").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        for (File directory : Arrays.asList(first, second)) {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    /*
+     * Run is created in directory without runs which are being written.
+     */
+    @Test
+    public void leastLoadedTest() throws IOException {
+        TempDirectories directories = new TempDirectories(
+                Arrays.asList(first, second, first));
+        assertEquals(2, directories.getDirectories().size());
+
+        File run = directories.createTempFile("mrgsrt_s_");
+        try (OutputStream out = directories.meter(run,
+                Files.newOutputStream(run.toPath()))) {
+            out.write('\n');
+            for (int i = 0; i < 5; i++) {
+                File other = directories.createTempFile("mrgsrt_s_");
+                assertNotEquals(run.getParentFile(), other.getParentFile());
+                other.delete();
+            }
+        }
+        assertNull(directories.directoryOf(new File("mrgsrt_s_")));
+    }
+
+    /*
+     * Merged run is created outside of directory of its inputs.
+     */
+    @Test
+    public void avoidInputsTest() throws IOException {
+        TempDirectories directories = new TempDirectories(
+                Arrays.asList(first, second));
+        File input = directories.createTempFile("mrgsrt_s_");
+        for (int i = 0; i < 5; i++) {
+            File merged = directories.createTempFile("mrgsrt_m_",
+                    Collections.singletonList(input));
+            assertNotEquals(input.getParentFile(), merged.getParentFile());
+            merged.delete();
+        }
+    }
+
+    @Test
+    public void meterTest() throws IOException {
+        TempDirectories directories = new TempDirectories(
+                Collections.singletonList(first));
+        File run = directories.createTempFile("mrgsrt_s_");
+        try (OutputStream out = directories.meter(run,
+                Files.newOutputStream(run.toPath()))) {
+            out.write(new byte[1000]);
+            out.write('\n');
+        }
+        try (InputStream in = directories.meter(run,
+                Files.newInputStream(run.toPath()))) {
+            while (in.read(new byte[100]) >= 0) {
+            }
+        }
+        TempDirectories.Directory directory = directories.directoryOf(run);
+        assertEquals(1, directory.getNumberOfRuns());
+        assertEquals(1001, directory.getWritten().getBytes());
+        assertEquals(1001, directory.getRead().getBytes());
+    }
+}
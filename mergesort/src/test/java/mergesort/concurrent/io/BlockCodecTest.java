@@ -0,0 +1,193 @@
+package mergesort.concurrent.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @version 0.4
+ */
+public class BlockCodecTest {
+
+    private static final BlockCodec[] CODECS = new BlockCodec[] {
+            new DeflateCodec(), new Lz4Codec() };
+
+    private static byte[] text(int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; sb.length() < length; i++) {
+            sb.append(String.format("%012d:%d%d%d\n", i, i % 7, i % 13,
+                    i * 31 % 1000));
+        }
+        return Arrays.copyOf(sb.toString().getBytes(StandardCharsets.UTF_8),
+                length);
+    }
+
+    private static byte[] random(int length) {
+        byte[] bytes = new byte[length];
+        new Random(1).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static void roundTrip(BlockCodec codec, byte[] source)
+            throws IOException {
+        byte[] compressed = new byte[codec.maxCompressedLength(source.length)];
+        int compressedLength = codec.compress(source, source.length,
+                compressed);
+        assertTrue(compressedLength <= compressed.length);
+        byte[] decompressed = new byte[source.length];
+        codec.decompress(compressed, compressedLength, decompressed,
+                source.length);
+        assertArrayEquals(codec.getClass().getSimpleName(), source,
+                decompressed);
+    }
+
+    @Test
+    public void roundTripTest() throws IOException {
+        for (BlockCodec codec : CODECS) {
+            roundTrip(codec, new byte[0]);
+            roundTrip(codec, new byte[] { 'a' });
+            roundTrip(codec, new byte[1000]);
+            roundTrip(codec, text(13));
+            roundTrip(codec, text(100000));
+            roundTrip(codec, random(100000));
+        }
+    }
+
+    @Test
+    public void textIsCompressedTest() {
+        byte[] source = text(BlockCompressedOutputStream.BLOCK_SIZE);
+        for (BlockCodec codec : CODECS) {
+            byte[] compressed = new byte[codec
+                    .maxCompressedLength(source.length)];
+            assertTrue(codec.compress(source, source.length,
+                    compressed) < source.length / 2);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptedBlockTest() throws IOException {
+        byte[] source = text(1000);
+        Lz4Codec codec = new Lz4Codec();
+        byte[] compressed = new byte[codec.maxCompressedLength(source.length)];
+        int compressedLength = codec.compress(source, source.length,
+                compressed);
+        codec.decompress(compressed, compressedLength - 1,
+                new byte[source.length], source.length);
+    }
+
+    @Test
+    public void streamTest() throws IOException {
+        byte[] source = new byte[3 * BlockCompressedOutputStream.BLOCK_SIZE
+                + 100];
+        byte[] text = text(source.length / 2);
+        System.arraycopy(text, 0, source, 0, text.length);
+        byte[] noise = random(source.length - text.length);
+        System.arraycopy(noise, 0, source, text.length, noise.length);
+        for (BlockCodec codec : CODECS) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (OutputStream out = new BlockCompressedOutputStream(bytes,
+                    codec)) {
+                out.write(source, 0, 10);
+                out.write(source[10]);
+                out.write(source, 11, source.length - 11);
+            }
+            ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+            try (InputStream in = new BlockCompressedInputStream(
+                    new ByteArrayInputStream(bytes.toByteArray()), codec)) {
+                decoded.write(in.read());
+                byte[] buffer = new byte[1000];
+                int readBytes;
+                while ((readBytes = in.read(buffer)) != -1) {
+                    decoded.write(buffer, 0, readBytes);
+                }
+            }
+            assertArrayEquals(source, decoded.toByteArray());
+        }
+    }
+
+    /*
+     * Flush makes blocks of different lengths, reader finds block of every
+     * position by index and regions start inside and on bounds of blocks.
+     */
+    @Test
+    public void readerTest() throws IOException {
+        byte[] source = text(3 * BlockCompressedOutputStream.BLOCK_SIZE
+                + 1000);
+        int flushPosition = BlockCompressedOutputStream.BLOCK_SIZE / 3;
+        for (BlockCodec codec : CODECS) {
+            File file = File.createTempFile("mrgsrt_test_", null);
+            try {
+                try (OutputStream out = new BlockCompressedOutputStream(
+                        new FileOutputStream(file), codec)) {
+                    out.write(source, 0, flushPosition);
+                    out.flush();
+                    out.write(source, flushPosition,
+                            source.length - flushPosition);
+                }
+                try (FileChannel channel = FileChannel.open(file.toPath(),
+                        StandardOpenOption.READ)) {
+                    BlockCompressedReader reader = new BlockCompressedReader(
+                            channel, codec);
+                    assertEquals(source.length, reader.length());
+                    assertEquals(4, reader.getNumberOfBlocks());
+                    for (long position : new long[] { 0, flushPosition - 1,
+                            flushPosition, source.length - 1 }) {
+                        ByteBuffer buffer = ByteBuffer.allocate(1);
+                        assertEquals(1, reader.read(buffer, position));
+                        assertEquals(source[(int) position], buffer.get(0));
+                    }
+                    assertEquals(-1, reader.read(ByteBuffer.allocate(1),
+                            source.length));
+                    int[][] regions = new int[][] { { 0, source.length },
+                            { flushPosition, flushPosition + 10 },
+                            { 17, BlockCompressedOutputStream.BLOCK_SIZE * 2 },
+                            { source.length - 5, source.length },
+                            { 100, 100 } };
+                    for (int[] region : regions) {
+                        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+                        try (InputStream in = reader.openRegion(region[0],
+                                region[1], codec, stored -> stored)) {
+                            byte[] buffer = new byte[1000];
+                            int readBytes;
+                            while ((readBytes = in.read(buffer)) != -1) {
+                                decoded.write(buffer, 0, readBytes);
+                            }
+                        }
+                        assertArrayEquals(Arrays.copyOfRange(source,
+                                region[0], region[1]), decoded.toByteArray());
+                    }
+                }
+
+                try (InputStream in = new BlockCompressedInputStream(
+                        new FileInputStream(file), codec)) {
+                    long skip = 2L * BlockCompressedOutputStream.BLOCK_SIZE
+                            + 3;
+                    assertEquals(skip, in.skip(skip));
+                    assertEquals(source[(int) skip], (byte) in.read());
+                    assertEquals(source.length - skip - 1,
+                            in.skip(source.length));
+                    assertEquals(-1, in.read());
+                }
+            } finally {
+                file.delete();
+            }
+        }
+    }
+}
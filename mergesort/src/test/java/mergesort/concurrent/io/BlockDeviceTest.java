@@ -0,0 +1,75 @@
+package mergesort.concurrent.io;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @version 0.4
+ */
+public class BlockDeviceTest {
+
+    private Path sys;
+
+    private Path sysClassBlock;
+
+    /*
+     * Layout of sysfs: class/block/<name> are links to devices, partition
+     * is a subdirectory of its disk.
+     */
+    @Before
+    public void setup() throws IOException {
+        sys = Files.createTempDirectory("mrgsrt_test");
+        sysClassBlock = Files.createDirectories(sys.resolve("class/block"));
+        Path sda = device("sda", "1");
+        Files.createDirectories(sda.resolve("sda1"));
+        Files.createSymbolicLink(sysClassBlock.resolve("sda1"),
+                sda.resolve("sda1"));
+        device("nvme0n1", "0");
+    }
+
+    private Path device(String name, String rotational) throws IOException {
+        Path device = Files.createDirectories(
+                sys.resolve("devices").resolve(name));
+        Files.createDirectories(device.resolve("queue"));
+        Files.write(device.resolve("queue/rotational"),
+                (rotational + "\n").getBytes(StandardCharsets.US_ASCII));
+        Files.createSymbolicLink(sysClassBlock.resolve(name), device);
+        return device;
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(sys)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void rotationalTest() throws IOException {
+        assertTrue(BlockDevice.isRotational("sda", sysClassBlock));
+        assertTrue(BlockDevice.isRotational("sda1", sysClassBlock));
+        assertFalse(BlockDevice.isRotational("nvme0n1", sysClassBlock));
+        assertFalse(BlockDevice.isRotational("sdb", sysClassBlock));
+    }
+
+    /*
+     * File of virtual file system has no block device.
+     */
+    @Test
+    public void unknownDeviceTest() {
+        assertFalse(BlockDevice.isRotational(new File("/proc/self/status")));
+    }
+}
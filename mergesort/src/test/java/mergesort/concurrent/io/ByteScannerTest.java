@@ -0,0 +1,49 @@
+package mergesort.concurrent.io;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @version 0.4
+ */
+public class ByteScannerTest {
+
+    @Test
+    public void indexOfTest() {
+        Random random = new Random(5);
+        for (int n = 0; n < 1000; n++) {
+            byte[] array = new byte[random.nextInt(40)];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = (byte) (random.nextInt(4) == 0 ? '\n'
+                        : random.nextInt(256));
+            }
+            ByteBuffer words = ByteScanner.wrap(array);
+            int from = array.length == 0 ? 0 : random.nextInt(array.length);
+            int to = from + random.nextInt(array.length - from + 1);
+            int expected = -1;
+            for (int i = from; i < to; i++) {
+                if (array[i] == '\n') {
+                    expected = i;
+                    break;
+                }
+            }
+            assertEquals(expected,
+                    ByteScanner.indexOf(words, from, to, (byte) '\n'));
+        }
+    }
+
+    @Test
+    public void highBytesTest() {
+        byte[] array = new byte[] { (byte) 0x8A, (byte) 0x0B, (byte) 0xFF,
+                (byte) 0x09, (byte) 0x80, (byte) 0x8A, (byte) 0x7F, (byte) 0x01,
+                (byte) 0x0A };
+        assertEquals(8, ByteScanner.indexOf(ByteScanner.wrap(array), 0,
+                array.length, (byte) '\n'));
+        assertEquals(2, ByteScanner.indexOf(ByteScanner.wrap(array), 0,
+                array.length, (byte) 0xFF));
+    }
+}
@@ -0,0 +1,90 @@
+package mergesort.concurrent.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests are skipped if JDK or file system of temporary directory does not
+ * support direct I/O.
+ *
+ * @version 0.4
+ */
+public class DirectOutputStreamTest {
+
+    private File file;
+
+    @Before
+    public void setup() throws IOException {
+        Assume.assumeTrue(DirectIo.isSupported());
+        file = File.createTempFile("mrgsrt_test_", null);
+    }
+
+    @After
+    public void tearDown() {
+        if (file != null)
+            file.delete();
+    }
+
+    private OutputStream openOutput(int bufferSize) {
+        try {
+            return new DirectOutputStream(file.toPath(), bufferSize);
+        } catch (IOException e) {
+            Assume.assumeNoException(e);
+            return null;
+        }
+    }
+
+    /*
+     * The last block is padded and file is truncated to written length.
+     */
+    @Test
+    public void writeReadTest() throws IOException {
+        byte[] bytes = new byte[3 * 4096 * 5 + 17];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i * 7);
+        }
+        try (OutputStream out = openOutput(3 * 4096)) {
+            out.write(bytes[0]);
+            int position = 1;
+            while (position < bytes.length) {
+                int count = Math.min(1000, bytes.length - position);
+                out.write(bytes, position, count);
+                position += count;
+            }
+        }
+        assertArrayEquals(bytes, Files.readAllBytes(file.toPath()));
+
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        try (InputStream in = new DirectInputStream(file.toPath(), 1000)) {
+            read.write(in.read());
+            byte[] buffer = new byte[777];
+            int length;
+            while ((length = in.read(buffer)) >= 0) {
+                read.write(buffer, 0, length);
+            }
+            assertEquals(-1, in.read());
+        }
+        assertArrayEquals(bytes, read.toByteArray());
+    }
+
+    @Test
+    public void emptyFileTest() throws IOException {
+        openOutput(1).close();
+        assertEquals(0, file.length());
+        try (InputStream in = new DirectInputStream(file.toPath(), 1)) {
+            assertEquals(-1, in.read());
+        }
+    }
+}
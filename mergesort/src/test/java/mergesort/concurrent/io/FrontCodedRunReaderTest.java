@@ -0,0 +1,96 @@
+package mergesort.concurrent.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * @version 0.4
+ */
+public class FrontCodedRunReaderTest {
+
+    private static byte[] encode(String text) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new FrontCodedOutputStream(bytes)) {
+            byte[] source = text.getBytes(StandardCharsets.UTF_8);
+            int head = Math.min(3, source.length);
+            out.write(source, 0, head);
+            for (int i = head; i < 7 && i < source.length; i++) {
+                out.write(source[i]);
+            }
+            if (source.length > 7)
+                out.write(source, 7, source.length - 7);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String text() {
+        StringBuilder sb = new StringBuilder();
+        sb.append('\n');
+        for (int i = 0; i < 100; i++) {
+            sb.append(String.format("%012d:%d\n", i / 3, i % 3));
+        }
+        sb.append("000000000033:0123456789\n");
+        sb.append("z\n");
+        return sb.toString();
+    }
+
+    @Test
+    public void sharedLengthTest() throws IOException {
+        String[] lines = text().split("\n", -1);
+        byte[] encoded = encode(text());
+        assertTrue(encoded.length < text().length() / 2);
+        try (FrontCodedRunReader reader = new FrontCodedRunReader(
+                new ByteArrayInputStream(encoded), 5)) {
+            String previous = "";
+            for (int i = 0; i < lines.length - 1; i++) {
+                assertTrue(reader.next());
+                String line = new String(reader.getBuffer(),
+                        reader.getOffset(), reader.getLength(),
+                        StandardCharsets.UTF_8);
+                assertEquals(lines[i], line);
+                int shared = 0;
+                while (shared < line.length() && shared < previous.length()
+                        && line.charAt(shared) == previous.charAt(shared)) {
+                    shared++;
+                }
+                assertEquals("line " + i, shared, reader.getSharedLength());
+                previous = line;
+            }
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    public void textTest() throws IOException {
+        for (String text : new String[] { "", "a\n", "a\nab\nab\nb",
+                text() }) {
+            ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+            try (InputStream in = new LineCursorInputStream(
+                    new FrontCodedRunReader(
+                            new ByteArrayInputStream(encode(text))))) {
+                int first = in.read();
+                if (first != -1)
+                    decoded.write(first);
+                byte[] buffer = new byte[7];
+                int readBytes;
+                while ((readBytes = in.read(buffer)) != -1) {
+                    decoded.write(buffer, 0, readBytes);
+                }
+            }
+            String expected = text.isEmpty() || text.endsWith("\n") ? text
+                    : text + "\n";
+            assertEquals(expected, new String(decoded.toByteArray(),
+                    StandardCharsets.UTF_8));
+        }
+    }
+}
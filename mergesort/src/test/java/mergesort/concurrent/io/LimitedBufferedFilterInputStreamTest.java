@@ -1,6 +1,8 @@
 package mergesort.concurrent.io;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
@@ -8,6 +10,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
 import org.junit.Test;
 
@@ -121,4 +125,65 @@ public class LimitedBufferedFilterInputStreamTest {
             }
         }
     }
+
+    @Test
+    public void longLinesTest() throws IOException {
+        StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            longLine.append((char) ('a' + i % 26));
+        }
+        String text = longLine + "\n\u00ff\u044f\n" + longLine;
+        File testFile = File.createTempFile("LimitedBufferedFilterInputStreamTest",
+                null);
+        Files.write(testFile.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        try (LimitedBufferedFilterInputStream lfis = new LimitedBufferedFilterInputStream(
+                new FileInputStream(testFile), 1024)) {
+            LineBuffer lineBuffer = new LineBuffer(16);
+            assertTrue(lfis.readLine(lineBuffer));
+            assertEquals(longLine.toString(),
+                    lineBuffer.toString(StandardCharsets.UTF_8));
+            assertTrue(lfis.readLine(lineBuffer));
+            assertEquals("\u00ff\u044f",
+                    lineBuffer.toString(StandardCharsets.UTF_8));
+            assertTrue(lfis.readLine(lineBuffer));
+            assertEquals(longLine.toString(),
+                    lineBuffer.toString(StandardCharsets.UTF_8));
+            assertFalse(lfis.readLine(lineBuffer));
+
+            lfis.reset();
+            assertEquals('a', lfis.read());
+            lfis.setPosition(longLine.length() + 1);
+            assertEquals(0xC3, lfis.read());
+            lfis.setPosition(longLine.length() + 1);
+            assertTrue(lfis.next());
+            assertEquals("\u00ff\u044f",
+                    new String(lfis.getBuffer(), lfis.getOffset(),
+                            lfis.getLength(), StandardCharsets.UTF_8));
+        } finally {
+            testFile.delete();
+        }
+    }
+
+    @Test
+    public void endOfStreamPositionTest() throws IOException {
+        String testPath = ClassLoader.getSystemResource("SplitterTest_40K.txt")
+                .getPath();
+        File testFile = new File(testPath);
+        try (LimitedBufferedFilterInputStream lfis = new LimitedBufferedFilterInputStream(
+                new FileInputStream(testFile))) {
+            lfis.setPosition(65L);
+            lfis.setEndOfStreamPosition(140L);
+            assertTrue(lfis.next());
+            assertEquals(
+                    "000000000001:456789012345678901234567890123456789012345678901234",
+                    new String(lfis.getBuffer(), lfis.getOffset(),
+                            lfis.getLength(), StandardCharsets.UTF_8));
+            assertEquals("0000000000", lfis.readLine());
+            assertEquals(null, lfis.readLine());
+            assertEquals(-1, lfis.read());
+            lfis.setPosition(0L);
+            assertTrue(lfis.skipLine());
+            assertEquals(65L, lfis.getEffectiveStreamPosition());
+        }
+    }
 }
@@ -0,0 +1,65 @@
+package mergesort.concurrent.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @version 0.4
+ */
+public class ReadAheadInputStreamTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (i * 31);
+        }
+        return bytes;
+    }
+
+    @Test
+    public void readArraysTest() throws IOException {
+        for (int length : new int[] { 0, 1, 15, 16, 17, 64, 1000 }) {
+            byte[] source = bytes(length);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (InputStream in = new ReadAheadInputStream(
+                    new ByteArrayInputStream(source), 16, executor)) {
+                byte[] buffer = new byte[7];
+                int readBytes;
+                while ((readBytes = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, readBytes);
+                }
+            }
+            assertArrayEquals(source, out.toByteArray());
+        }
+    }
+
+    @Test
+    public void readBytesTest() throws IOException {
+        byte[] source = bytes(100);
+        try (InputStream in = new ReadAheadInputStream(
+                new ByteArrayInputStream(source), 8, executor)) {
+            for (byte b : source) {
+                assertEquals(b & 0xFF, in.read());
+            }
+            assertEquals(-1, in.read());
+            assertEquals(-1, in.read());
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package mergesort.concurrent.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * @version 0.4
+ */
+public class RunReaderTest {
+
+    private static String line(RunReader runReader) {
+        return new String(runReader.getBuffer(), runReader.getOffset(),
+                runReader.getLength(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void readLinesTest() throws IOException {
+        StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            longLine.append(i % 10);
+        }
+        String text = "a\n\n" + longLine + "\r\nlast";
+        try (RunReader runReader = new RunReader(new ByteArrayInputStream(
+                text.getBytes(StandardCharsets.UTF_8)), 8)) {
+            assertTrue(runReader.next());
+            assertEquals("a", line(runReader));
+            assertTrue(runReader.next());
+            assertEquals("", line(runReader));
+            assertTrue(runReader.next());
+            assertEquals(longLine + "\r", line(runReader));
+            assertTrue(runReader.next());
+            assertEquals("last", line(runReader));
+            assertFalse(runReader.next());
+            assertFalse(runReader.next());
+        }
+    }
+
+    @Test
+    public void emptyStreamTest() throws IOException {
+        try (RunReader runReader = new RunReader(
+                new ByteArrayInputStream(new byte[0]))) {
+            assertFalse(runReader.next());
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package mergesort.concurrent.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @version 0.4
+ */
+public class WriteBehindOutputStreamTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void writeFileTest() throws IOException {
+        byte[] bytes = new byte[3 * WriteBehindOutputStream.BUFFER_SIZE
+                * WriteBehindOutputStream.QUEUE_CAPACITY + 17];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i * 7);
+        }
+        File file = File.createTempFile("mrgsrt_test_", null);
+        WriteBehindStatistics statistics = new WriteBehindStatistics();
+        try (OutputStream out = new WriteBehindOutputStream(file, executor,
+                statistics)) {
+            out.write(bytes[0]);
+            int position = 1;
+            while (position < bytes.length) {
+                int count = Math.min(1000, bytes.length - position);
+                out.write(bytes, position, count);
+                position += count;
+            }
+        }
+        assertArrayEquals(bytes, Files.readAllBytes(file.toPath()));
+        assertEquals(bytes.length, statistics.getBytes());
+        file.delete();
+    }
+
+    @Test
+    public void writeRegionTest() throws IOException {
+        File file = File.createTempFile("mrgsrt_test_", null);
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE)) {
+            try (OutputStream out = new WriteBehindOutputStream(channel, 3,
+                    executor, new WriteBehindStatistics())) {
+                out.write("def".getBytes());
+            }
+            try (OutputStream out = new WriteBehindOutputStream(channel, 0,
+                    executor, new WriteBehindStatistics())) {
+                out.write("abc".getBytes());
+            }
+        }
+        assertArrayEquals("abcdef".getBytes(),
+                Files.readAllBytes(file.toPath()));
+        file.delete();
+    }
+}
@@ -0,0 +1,126 @@
+package mergesort.concurrent.sort;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Сравнение скорости алгоритмов сортировки части файла в памяти:
+ * Collections.sort для строк String (-a string), сортировки слиянием индекса
+ * строк (-a bytes) и поразрядной сортировки MSD индекса строк (-a radix).
+ * Если файлы не указаны, в памяти создаются данные в формате
+ * {@link mergesort.concurrent.GeneratorOfTestFile} (номер из 12 цифр с
+ * ведущими нулями, двоеточие и случайные цифры, строки перемешаны) и строки с
+ * датами в формате ISO 8601. Каждый алгоритм выполняется несколько раз,
+ * выводится лучшее время в миллисекундах.
+ * 
+ * Параметры командной строки: [-l <length_bytes>] [-r <repeats>] [<file>...]
+ * -l - примерная длина создаваемых данных (32 Мбайт); -r - количество
+ * повторений (5); file - файлы, например созданные GeneratorOfTestFile.
+ * 
+ * @version 0.4
+ */
+public class ChunkSortBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int length = 32 * 1024 * 1024;
+        int repeats = 5;
+        List<String> files = new ArrayList<>();
+        for (int k = 0; k < args.length;) {
+            switch (args[k++]) {
+            case "-l":
+                length = Integer.parseInt(args[k++]);
+                break;
+            case "-r":
+                repeats = Integer.parseInt(args[k++]);
+                break;
+            default:
+                files.add(args[k - 1]);
+            }
+        }
+
+        if (files.isEmpty()) {
+            run("generator", generateNumbered(length), repeats);
+            run("iso-8601", generateTimestamps(length), repeats);
+        }
+        for (String file : files) {
+            run(file, Files.readAllBytes(Paths.get(file)), repeats);
+        }
+    }
+
+    private static void run(String name, byte[] bytes, int repeats) {
+        long stringTime = Long.MAX_VALUE;
+        long bytesTime = Long.MAX_VALUE;
+        long radixTime = Long.MAX_VALUE;
+        int size = 0;
+        for (int r = 0; r < repeats; r++) {
+            List<String> strings = new ArrayList<>();
+            LineChunk lineChunk = LineChunk.wrap(bytes, bytes.length);
+            size = lineChunk.size();
+            for (String string : new String(bytes, StandardCharsets.UTF_8)
+                    .split("\n")) {
+                strings.add(string);
+            }
+            long start = System.nanoTime();
+            Collections.sort(strings);
+            stringTime = Math.min(stringTime, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            lineChunk.sort();
+            bytesTime = Math.min(bytesTime, System.nanoTime() - start);
+
+            lineChunk = LineChunk.wrap(bytes, bytes.length);
+            start = System.nanoTime();
+            lineChunk.sortRadix();
+            radixTime = Math.min(radixTime, System.nanoTime() - start);
+        }
+        System.out.println(name + ": lines: " + size + " string (ms): "
+                + stringTime / 1000000 + " bytes (ms): " + bytesTime / 1000000
+                + " radix (ms): " + radixTime / 1000000);
+    }
+
+    private static byte[] generateNumbered(int length) {
+        Random random = new Random(1);
+        List<String> lines = new ArrayList<>();
+        int total = 0;
+        for (int i = 0; total < length; i++) {
+            StringBuilder line = new StringBuilder(String.format("%012d:", i));
+            for (int j = random.nextInt(80); j > 0; j--) {
+                line.append((char) ('0' + random.nextInt(10)));
+            }
+            lines.add(line.toString());
+            total += line.length() + 1;
+        }
+        Collections.shuffle(lines, random);
+        return join(lines);
+    }
+
+    private static byte[] generateTimestamps(int length) {
+        Random random = new Random(2);
+        List<String> lines = new ArrayList<>();
+        int total = 0;
+        while (total < length) {
+            String line = String.format(
+                    "2016-07-%02dT%02d:%02d:%02d.%03dZ INFO request %d",
+                    1 + random.nextInt(31), random.nextInt(24),
+                    random.nextInt(60), random.nextInt(60),
+                    random.nextInt(1000), random.nextInt(100000));
+            lines.add(line);
+            total += line.length() + 1;
+        }
+        return join(lines);
+    }
+
+    private static byte[] join(List<String> lines) {
+        StringBuilder source = new StringBuilder();
+        for (String line : lines) {
+            source.append(line).append('\n');
+        }
+        return source.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
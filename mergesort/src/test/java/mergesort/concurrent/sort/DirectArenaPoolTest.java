@@ -0,0 +1,36 @@
+package mergesort.concurrent.sort;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * @version 0.4
+ */
+public class DirectArenaPoolTest {
+
+    @Test
+    public void reuseTest() {
+        DirectArenaPool pool = new DirectArenaPool(1024);
+        ByteBuffer first = pool.acquire(100);
+        assertTrue(first.isDirect());
+        assertEquals(1024, first.capacity());
+        pool.release(first);
+
+        assertSame(first, pool.acquire(1000));
+        pool.release(first);
+
+        /*
+         * Short buffer is dropped.
+         */
+        ByteBuffer longer = pool.acquire(2000);
+        assertNotSame(first, longer);
+        assertEquals(2000, longer.capacity());
+        assertEquals(3024, pool.getAllocatedBytes());
+    }
+}
@@ -0,0 +1,232 @@
+package mergesort.concurrent.sort;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import mergesort.concurrent.LoserTree;
+import mergesort.concurrent.io.LineCursor;
+
+/**
+ * @version 0.4
+ */
+public class LineChunkTest {
+
+    @Test
+    public void sortFileTest() throws IOException {
+        String testPath = ClassLoader.getSystemResource("SorterTest_100K.txt")
+                .getPath();
+        File testFile = new File(testPath);
+
+        List<String> expected = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(testFile))) {
+            String s;
+            while ((s = br.readLine()) != null) {
+                expected.add(s);
+            }
+        }
+        Collections.sort(expected);
+
+        LineChunk lineChunk = LineChunk.read(testFile, 0, testFile.length());
+        assertEquals(expected.size(), lineChunk.size());
+        lineChunk.sort();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        lineChunk.writeTo(out);
+        String[] actual = new String(out.toByteArray(), StandardCharsets.UTF_8)
+                .split("\n");
+        assertArrayEquals(expected.toArray(new String[0]), actual);
+    }
+
+    @Test
+    public void parallelSortTest() throws IOException {
+        Random random = new Random(5);
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            source.append(Long.toString(random.nextLong(), 36)).append('\n');
+        }
+        byte[] bytes = source.toString().getBytes(StandardCharsets.UTF_8);
+
+        LineChunk expected = LineChunk.wrap(bytes, bytes.length);
+        expected.sort();
+        ByteArrayOutputStream expectedOut = new ByteArrayOutputStream();
+        expected.writeTo(expectedOut);
+
+        LineChunk lineChunk = LineChunk.wrap(bytes, bytes.length);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        lineChunk.sort(pool);
+        pool.shutdown();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        lineChunk.writeTo(out);
+
+        assertArrayEquals(expectedOut.toByteArray(), out.toByteArray());
+    }
+
+    @Test
+    public void radixSortTest() throws IOException {
+        Random random = new Random(11);
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            switch (random.nextInt(4)) {
+            case 0:
+                source.append(String.format("%012d:%d", random.nextInt(5000),
+                        random.nextInt(100)));
+                break;
+            case 1:
+                source.append("2016-07-1").append(random.nextInt(10))
+                        .append("T12:").append(random.nextInt(60));
+                break;
+            case 2:
+                for (int j = random.nextInt(12); j > 0; j--) {
+                    source.append((char) random.nextInt(3));
+                }
+                break;
+            default:
+                source.append("é\u00ff").append(random.nextInt(1000));
+            }
+            source.append('\n');
+        }
+        byte[] bytes = source.toString().getBytes(StandardCharsets.UTF_8);
+
+        LineChunk expected = LineChunk.wrap(bytes, bytes.length);
+        expected.sort();
+        ByteArrayOutputStream expectedOut = new ByteArrayOutputStream();
+        expected.writeTo(expectedOut);
+
+        LineChunk lineChunk = LineChunk.wrap(bytes, bytes.length);
+        lineChunk.sortRadix();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        lineChunk.writeTo(out);
+
+        assertArrayEquals(expectedOut.toByteArray(), out.toByteArray());
+    }
+
+    @Test
+    public void unsignedOrderTest() throws IOException {
+        byte[] bytes = "b\né\na\n\nab\u0000\nab".getBytes(StandardCharsets.UTF_8);
+        LineChunk lineChunk = LineChunk.wrap(bytes, bytes.length);
+        assertEquals(6, lineChunk.size());
+        lineChunk.sort();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        lineChunk.writeTo(out);
+        assertEquals("\na\nab\nab\u0000\nb\né\n",
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void prefixTiesTest() throws IOException {
+        String[] lines = { "abcdefgh2", "abc\u0000", "abcdefgh", "abc",
+                "abcdefgh10", "abc\u0000\u0000\u0000\u0000\u0000\u0000",
+                "abcdefg\u00ff" };
+        StringBuilder source = new StringBuilder();
+        for (String line : lines) {
+            source.append(line).append('\n');
+        }
+        byte[] bytes = source.toString().getBytes(StandardCharsets.UTF_8);
+        LineChunk lineChunk = LineChunk.wrap(bytes, bytes.length);
+        lineChunk.sort();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        lineChunk.writeTo(out);
+        assertEquals(
+                "abc\nabc\u0000\nabc\u0000\u0000\u0000\u0000\u0000\u0000\n"
+                        + "abcdefgh\nabcdefgh10\nabcdefgh2\nabcdefg\u00ff\n",
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void readRangeTest() throws IOException {
+        String testPath = ClassLoader.getSystemResource("SplitterTest_40K.txt")
+                .getPath();
+        File testFile = new File(testPath);
+
+        LineChunk lineChunk = LineChunk.read(testFile, 65L, 195L);
+        assertEquals(2, lineChunk.size());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        lineChunk.writeTo(out);
+        assertEquals(
+                "000000000001:456789012345678901234567890123456789012345678901234\n"
+                        + "000000000002:456789012345678901234567890123456789012345678901234\n",
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    /*
+     * Chunk in reused direct arena is sorted as chunk in heap.
+     */
+    @Test
+    public void directArenaTest() throws IOException {
+        String testPath = ClassLoader.getSystemResource("SorterTest_100K.txt")
+                .getPath();
+        File testFile = new File(testPath);
+
+        LineChunk heapChunk = LineChunk.read(testFile, 100, 50000);
+        heapChunk.sort();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        heapChunk.writeTo(expected);
+
+        ByteBuffer arena = ByteBuffer.allocateDirect(64 * 1024);
+        LineChunk.read(testFile, 0, 30000, arena);
+        LineChunk directChunk = LineChunk.read(testFile, 100, 50000, arena);
+        assertEquals(heapChunk.size(), directChunk.size());
+        assertEquals(directChunk.getMemoryFootprint(),
+                heapChunk.getMemoryFootprint() - 49900);
+        directChunk.sort();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        directChunk.writeTo(out);
+        assertTrue(Arrays.equals(expected.toByteArray(), out.toByteArray()));
+    }
+
+    @Test
+    public void mapTest() throws IOException {
+        String testPath = ClassLoader.getSystemResource("SorterTest_100K.txt")
+                .getPath();
+        File testFile = new File(testPath);
+
+        LineChunk heapChunk = LineChunk.read(testFile, 100, 50000);
+        heapChunk.sort();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        heapChunk.writeTo(expected);
+
+        List<LineChunk> pieces = LineChunk.map(testFile, 100, 50000, 4096);
+        assertEquals(13, pieces.size());
+        LineCursor[] cursors = new LineCursor[pieces.size()];
+        int lines = 0;
+        for (int i = 0; i < cursors.length; i++) {
+            LineChunk piece = pieces.get(i);
+            assertTrue(piece.getArenaLength() <= 4096);
+            lines += piece.size();
+            piece.sort();
+            cursors[i] = piece.cursor();
+        }
+        assertEquals(heapChunk.size(), lines);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new LoserTree(cursors).mergeTo(out);
+        assertTrue(Arrays.equals(expected.toByteArray(), out.toByteArray()));
+
+        LineChunk wholeChunk = LineChunk
+                .map(testFile, 100, 50000, LineChunk.MAX_ARENA_LENGTH).get(0);
+        wholeChunk.sort();
+        out.reset();
+        wholeChunk.writeTo(out);
+        assertTrue(Arrays.equals(expected.toByteArray(), out.toByteArray()));
+    }
+}
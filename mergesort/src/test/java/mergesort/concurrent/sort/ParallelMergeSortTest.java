@@ -0,0 +1,40 @@
+package mergesort.concurrent.sort;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+/**
+ * @version 0.4
+ */
+public class ParallelMergeSortTest {
+
+    @Test
+    public void sortTest() {
+        Random random = new Random(3);
+        String[] array = new String[100000];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = Integer.toString(random.nextInt());
+        }
+        String[] expected = array.clone();
+        Arrays.sort(expected);
+
+        ForkJoinPool pool = new ForkJoinPool(3);
+        ParallelMergeSort.sort(array, Comparator.naturalOrder(), pool);
+        pool.shutdown();
+
+        assertArrayEquals(expected, array);
+    }
+
+    @Test
+    public void withoutPoolTest() {
+        Integer[] array = { 3, 1, 2 };
+        ParallelMergeSort.sort(array, Comparator.reverseOrder(), null);
+        assertArrayEquals(new Integer[] { 3, 2, 1 }, array);
+    }
+}